@@ -0,0 +1,101 @@
+package trains;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures building a graph: graphSetup on the bundled CSV files, CsvLoader on synthetic
+ * CSV files, and insertVertex/insertEdge without any parsing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark {
+
+    /**
+     * A synthetic network, both as CSV files and as the lists of Cities and railroads in them.
+     */
+    @State(Scope.Benchmark)
+    public static class Synthetic {
+        @Param({"10000", "100000"})
+        int size;
+
+        Path directory;
+        Path citiesFile;
+        Path railroadsFile;
+        City[] cities;
+        City[] sources;
+        City[] targets;
+        int[] weights;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            TrainSelector<City> graph = Networks.grid(size);
+            directory = Files.createTempDirectory("ingest");
+            citiesFile = directory.resolve("cities.csv");
+            railroadsFile = directory.resolve("railroads.csv");
+            Networks.writeCsv(graph, citiesFile, railroadsFile);
+
+            CompactGraph<City> compact = graph.compact();
+            cities = Networks.cities(graph);
+            int m = compact.targets.length / 2;
+            sources = new City[m];
+            targets = new City[m];
+            weights = new int[m];
+            int i = 0;
+            for (int u = 0; u < cities.length; u++)
+                for (int e = compact.offsets[u]; e < compact.offsets[u + 1]; e++)
+                    if (u < compact.targets[e]) {
+                        sources[i] = cities[u];
+                        targets[i] = cities[compact.targets[e]];
+                        weights[i++] = compact.weights[e];
+                    }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(citiesFile);
+            Files.deleteIfExists(railroadsFile);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public TrainSelector<City> graphSetup() {
+        return new TrainSelector<City>().graphSetup();
+    }
+
+    @Benchmark
+    public TrainSelector<City> loadCsv(Synthetic network) throws IOException {
+        TrainSelector<City> graph = new TrainSelector<>();
+        CsvLoader loader = new CsvLoader();
+        loader.loadCities(graph, network.citiesFile);
+        loader.loadRailroads(graph, network.railroadsFile, 1);
+        return graph;
+    }
+
+    @Benchmark
+    public TrainSelector<City> loadCsvParallel(Synthetic network) throws IOException {
+        TrainSelector<City> graph = new TrainSelector<>();
+        CsvLoader loader = new CsvLoader();
+        loader.loadCities(graph, network.citiesFile);
+        loader.loadRailroads(graph, network.railroadsFile, Runtime.getRuntime().availableProcessors());
+        return graph;
+    }
+
+    @Benchmark
+    public TrainSelector<City> insertEdges(Synthetic network) {
+        TrainSelector<City> graph = new TrainSelector<>();
+        for (City city : network.cities) graph.insertVertex(city);
+        for (int i = 0; i < network.weights.length; i++)
+            graph.insertEdge(network.sources[i], network.targets[i], network.weights[i]);
+        return graph;
+    }
+}
@@ -0,0 +1,50 @@
+package trains;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures getCity, looking up Cities by name as typed: with the exact name, and with
+ * the name in upper case, which has to be normalized first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+    @Param({"bundled", "grid-100000"})
+    String network;
+
+    TrainSelector<City> graph;
+    String[] names;
+    String[] upperCaseNames;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        graph = Networks.load(network);
+        City[] cities = Networks.cities(graph);
+        names = new String[cities.length];
+        upperCaseNames = new String[cities.length];
+        for (int i = 0; i < cities.length; i++) {
+            names[i] = cities[i].getName();
+            upperCaseNames[i] = names[i].toUpperCase(Locale.ROOT);
+        }
+    }
+
+    @Benchmark
+    public City getCity() {
+        if (++next == names.length) next = 0;
+        return graph.getCity(names[next]);
+    }
+
+    @Benchmark
+    public City getCityUpperCase() {
+        if (++next == names.length) next = 0;
+        return graph.getCity(upperCaseNames[next]);
+    }
+}
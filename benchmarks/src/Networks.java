@@ -0,0 +1,99 @@
+package trains;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Networks builds the graphs the benchmarks run on: the bundled 35 City network, and
+ * synthetic networks of any size.
+ *
+ * A synthetic network is a grid of Cities spread over the area of Italy, with each City
+ * moved a little off its grid point and joined to its right and lower neighbours, plus
+ * one diagonal in every fourth square. Coordinates have six decimals like real CSV files,
+ * and weights are the great-circle distance in kilometers times a random detour factor
+ * between 1 and 1.3, like real rail lines, so the geographic A* heuristic stays
+ * meaningful. A seed fixes the network, so every run and every routing engine sees the
+ * same graph.
+ */
+final class Networks {
+    private static final long SEED = 42;
+
+    private Networks() { }
+
+    /**
+     * Returns the network called name: "bundled" for the CSV files in ../data,
+     * or "grid-N" for a synthetic network of N Cities.
+     */
+    static TrainSelector<City> load(String name) {
+        if (name.equals("bundled")) return new TrainSelector<City>().graphSetup();
+        if (name.startsWith("grid-")) return grid(Integer.parseInt(name.substring(5)));
+        throw new IllegalArgumentException("Unknown network " + name);
+    }
+
+    /**
+     * Returns a synthetic network of size Cities.
+     */
+    static TrainSelector<City> grid(int size) {
+        int side = (int) Math.ceil(Math.sqrt(size));
+        double step = 10.0 / side; // degrees between neighbouring grid points
+        Random random = new Random(SEED);
+        City[] cities = new City[size];
+        TrainSelector<City> graph = new TrainSelector<>();
+        for (int i = 0; i < size; i++) {
+            int row = i / side;
+            int column = i % side;
+            double lat = Math.round((37 + (row + 0.4 * random.nextDouble()) * step) * 1e6) / 1e6;
+            double lng = Math.round((7 + (column + 0.4 * random.nextDouble()) * step) * 1e6) / 1e6;
+            cities[i] = new City("City " + i, "Region " + (row * 20 / side), 1000 + random.nextInt(1_000_000), lat, lng);
+            graph.insertVertex(cities[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            int column = i % side;
+            if (column + 1 < side && i + 1 < size) connect(graph, cities[i], cities[i + 1], random);
+            if (i + side < size) connect(graph, cities[i], cities[i + side], random);
+            if (column + 1 < side && i + side + 1 < size && random.nextInt(4) == 0)
+                connect(graph, cities[i], cities[i + side + 1], random);
+        }
+        return graph;
+    }
+
+    private static void connect(TrainSelector<City> graph, City a, City b, Random random) {
+        graph.insertEdge(a, b, 1 + (int) (a.distanceTo(b) * (1 + 0.3 * random.nextDouble())));
+    }
+
+    /**
+     * Returns the Cities of graph in vertex number order.
+     */
+    static City[] cities(TrainSelector<City> graph) {
+        CompactGraph<City> compact = graph.compact();
+        City[] cities = new City[compact.getVertexCount()];
+        for (int v = 0; v < cities.length; v++) cities[v] = compact.dataAt(v);
+        return cities;
+    }
+
+    /**
+     * Writes graph as a Cities file and a railroads file in the schemas of the bundled
+     * CSV files, with every railroad once.
+     */
+    static void writeCsv(TrainSelector<City> graph, Path citiesFile, Path railroadsFile) throws IOException {
+        CompactGraph<City> compact = graph.compact();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(citiesFile))) {
+            out.println("city,lat,lng,country,iso2,iso3,Region,population");
+            for (int v = 0; v < compact.getVertexCount(); v++) {
+                City city = compact.dataAt(v);
+                out.println(city.getName() + "," + city.getLat() + "," + city.getLng() + ",Italy,IT,ITA,"
+                        + city.getRegion() + "," + city.getPop());
+            }
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(railroadsFile))) {
+            out.println("start,destination,weight");
+            for (int u = 0; u < compact.getVertexCount(); u++)
+                for (int e = compact.offsets[u]; e < compact.offsets[u + 1]; e++)
+                    if (u < compact.targets[e])
+                        out.println(compact.dataAt(u).getName() + "," + compact.dataAt(compact.targets[e]).getName() + "," + compact.weights[e]);
+        }
+    }
+}
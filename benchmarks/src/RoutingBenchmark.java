@@ -0,0 +1,106 @@
+package trains;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures point to point queries with every routing engine on the same networks and the
+ * same random queries. The route cache is off and preprocessing happens during setup, so
+ * the scores compare the query cost of the engines alone.
+ *
+ * Engines are the SearchMode values of TrainSelector, plus CH for ContractionHierarchy
+ * and HUB_LABELS for HubLabels. Hub labels take long to compute on large networks;
+ * pass -p network=grid-100000 -p engine=... to try them on one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+    private static final int QUERIES = 1024; // a power of two
+
+    @Param({"bundled", "grid-10000"})
+    String network;
+
+    @Param({"DIJKSTRA", "A_STAR", "BIDIRECTIONAL", "ALT", "CH", "HUB_LABELS"})
+    String engine;
+
+    /**
+     * One routing engine, behind the two queries that are measured.
+     */
+    private interface Router {
+        int getPathCost(City start, City end);
+
+        List<City> shortestPath(City start, City end);
+    }
+
+    Router router;
+    City[] starts = new City[QUERIES];
+    City[] ends = new City[QUERIES];
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        TrainSelector<City> graph = Networks.load(network);
+        graph.setRouteCache(0);
+        if (engine.equals("CH")) {
+            ContractionHierarchy hierarchy = new ContractionHierarchy(graph);
+            router = new Router() {
+                public int getPathCost(City start, City end) { return hierarchy.getPathCost(start, end); }
+
+                public List<City> shortestPath(City start, City end) { return hierarchy.shortestPath(start, end); }
+            };
+        }
+        else if (engine.equals("HUB_LABELS")) {
+            HubLabels<City> labels = new HubLabels<>(graph.compact(), true);
+            router = new Router() {
+                public int getPathCost(City start, City end) { return labels.getPathCost(start, end); }
+
+                public List<City> shortestPath(City start, City end) { return labels.shortestPath(start, end); }
+            };
+        }
+        else {
+            SearchMode mode = SearchMode.valueOf(engine);
+            if (mode == SearchMode.ALT) graph.getLandmarks();
+            router = new Router() {
+                public int getPathCost(City start, City end) { return graph.getPathCost(start, end, mode); }
+
+                public List<City> shortestPath(City start, City end) { return graph.shortestPath(start, end, mode); }
+            };
+        }
+
+        // random queries that have a route, the same ones for every engine
+        City[] cities = Networks.cities(graph);
+        Random random = new Random(7);
+        for (int i = 0; i < QUERIES; ) {
+            City start = cities[random.nextInt(cities.length)];
+            City end = cities[random.nextInt(cities.length)];
+            try {
+                graph.getPathCost(start, end);
+            }
+            catch (NoSuchElementException e) {
+                continue;
+            }
+            starts[i] = start;
+            ends[i++] = end;
+        }
+    }
+
+    @Benchmark
+    public int getPathCost() {
+        next = (next + 1) & (QUERIES - 1);
+        return router.getPathCost(starts[next], ends[next]);
+    }
+
+    @Benchmark
+    public List<City> shortestPath() {
+        next = (next + 1) & (QUERIES - 1);
+        return router.shortestPath(starts[next], ends[next]);
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.*;
+
+/**
+ * BidirectionalSearch answers a shortest path query by running Dijkstra's algorithm
+ * forward from the start over a CompactGraph and backward from the destination over
+ * its reverse, always advancing the side whose next vertex is closer.
+ *
+ * Every time an edge connects a vertex reached by one side to a vertex reached by the
+ * other, the length of the path through that edge is compared against the best one found
+ * so far. The search stops once the smallest keys of the two queues add up to at least
+ * that best length, since no path that is still undiscovered can be shorter. The two
+ * searches then usually settle about half as many vertices as a single one would.
+ *
+ * Like ShortestPathSearch, a search object is reusable but not thread safe.
+ *
+ * @param <T> the data type stored at each graph vertex
+ */
+public class BidirectionalSearch<T> {
+    private final CompactGraph<T> graph;
+    private final Side forward;
+    private final Side backward;
+    private int meeting;        // vertex where the best path found crosses from one side to the other
+    private int settledCount;   // vertices settled by the last run, both sides together
+    private int relaxedCount;   // edges relaxed by the last run, both sides together
+
+    /**
+     * Creates a search over graph.
+     *
+     * @param graph the graph to search
+     * @throws NullPointerException if graph is null
+     */
+    public BidirectionalSearch(CompactGraph<T> graph) {
+        if (graph == null) throw new NullPointerException("Cannot search a null graph");
+        this.graph = graph;
+        this.forward = new Side(graph);
+        this.backward = new Side(graph.reverse());
+        this.meeting = -1;
+    }
+
+    /**
+     * Finds the distance from source to target.
+     *
+     * @param source vertex number of the start of the path
+     * @param target vertex number of the end of the path
+     * @return the distance from source to target, or ShortestPathSearch.INFINITY if
+     *     target cannot be reached
+     */
+    public int run(int source, int target) {
+        forward.reset();
+        backward.reset();
+        settledCount = 0;
+        relaxedCount = 0;
+        meeting = -1;
+
+        int best = ShortestPathSearch.INFINITY;
+        forward.start(source);
+        backward.start(target);
+        if (source == target) {
+            meeting = source;
+            return 0;
+        }
+        // once either side runs dry, every path it could be part of has been seen
+        while (!forward.heap.isEmpty() && !backward.heap.isEmpty()) {
+            int topForward = forward.heap.peekKey();
+            int topBackward = backward.heap.peekKey();
+            // stopping rule: no undiscovered path can be shorter than best
+            if (best != ShortestPathSearch.INFINITY && (long) topForward + topBackward >= best) break;
+
+            Side side = topForward <= topBackward ? forward : backward;
+            Side other = side == forward ? backward : forward;
+            int u = side.heap.poll();
+            side.settled[u] = true;
+            settledCount++;
+            int du = side.dist[u];
+            CompactGraph<?> g = side.graph;
+            for (int e = g.offsets[u], end = g.offsets[u + 1]; e < end; e++) {
+                int v = g.targets[e];
+                if (side.settled[v]) continue;
+                relaxedCount++;
+                int d = du + g.weights[e];
+                if (d < side.dist[v]) {
+                    side.reach(v, d, u);
+                    side.heap.offer(v, d);
+                }
+                // the edge joins the two searches, check the path running through it
+                if (other.dist[v] != ShortestPathSearch.INFINITY) {
+                    long length = (long) d + other.dist[v];
+                    if (length < best) {
+                        best = (int) length;
+                        meeting = v;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the number of vertices the last run settled on both sides.
+     *
+     * @return the number of settled vertices
+     */
+    public int getSettledCount() { return settledCount; }
+
+    /**
+     * Returns the number of edges the last run relaxed on both sides.
+     *
+     * @return the number of relaxed edges
+     */
+    public int getRelaxedCount() { return relaxedCount; }
+
+    /**
+     * Returns the data items on the path the last run found, joining the forward half
+     * (start to meeting vertex) and the backward half (meeting vertex to destination).
+     *
+     * @return the data items on the path, from start to destination
+     * @throws NoSuchElementException if the last run found no path
+     */
+    public LinkedList<T> dataPath() {
+        if (meeting == -1) throw new NoSuchElementException("No path exists");
+        LinkedList<T> path = new LinkedList<>();
+        for (int v = meeting; v != -1; v = forward.pred[v])
+            path.addFirst(graph.dataAt(v));
+        for (int v = backward.pred[meeting]; v != -1; v = backward.pred[v])
+            path.addLast(graph.dataAt(v));
+        return path;
+    }
+
+    /**
+     * The state of one direction of the search.
+     */
+    private static class Side {
+        final CompactGraph<?> graph;
+        final int[] dist;
+        final int[] pred;
+        final boolean[] settled;
+        final IndexedMinHeap heap;
+        final int[] touched;
+        int touchedCount;
+
+        Side(CompactGraph<?> graph) {
+            int n = graph.getVertexCount();
+            this.graph = graph;
+            this.dist = new int[n];
+            this.pred = new int[n];
+            this.settled = new boolean[n];
+            this.heap = new IndexedMinHeap(n);
+            this.touched = new int[n];
+            Arrays.fill(dist, ShortestPathSearch.INFINITY);
+            Arrays.fill(pred, -1);
+        }
+
+        void start(int v) {
+            reach(v, 0, -1);
+            heap.add(v, 0);
+        }
+
+        void reach(int v, int d, int from) {
+            if (dist[v] == ShortestPathSearch.INFINITY) touched[touchedCount++] = v;
+            dist[v] = d;
+            pred[v] = from;
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                int v = touched[i];
+                dist[v] = ShortestPathSearch.INFINITY;
+                pred[v] = -1;
+                settled[v] = false;
+            }
+            touchedCount = 0;
+            heap.clear();
+        }
+    }
+}
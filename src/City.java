@@ -1,9 +1,18 @@
 // import java.util.*;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
 
 public class City implements Comparable<City> {
     private String Name;    // Name of City
     private String Region;    // Region that City resides
     private int Pop;    // Population of City
+    private double Lat;    // Latitude of City in degrees, NaN if unknown
+    private double Lng;    // Longitude of City in degrees, NaN if unknown
+
+    private static final double EARTH_RADIUS_KM = 6371.0088; // mean radius of the Earth
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+"); // combining marks left by NFD
 
 
     /**
@@ -15,6 +24,8 @@ public class City implements Comparable<City> {
         this.Name = name;
         this.Region = "Italy";
         this.Pop = Integer.MAX_VALUE;
+        this.Lat = Double.NaN;
+        this.Lng = Double.NaN;
     }
 
     /**
@@ -25,9 +36,24 @@ public class City implements Comparable<City> {
      * @param pop population of city
      */
     public City(String name, String region, int pop) {
+        this(name, region, pop, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Creates a new City with the given name, region, population, and location
+     *
+     * @param name name of city
+     * @param region region that city resides
+     * @param pop population of city
+     * @param lat latitude of city in degrees
+     * @param lng longitude of city in degrees
+     */
+    public City(String name, String region, int pop, double lat, double lng) {
         this.Name = name;
         this.Region = region;
         this.Pop = pop;
+        this.Lat = lat;
+        this.Lng = lng;
     }
 
     /**
@@ -51,6 +77,53 @@ public class City implements Comparable<City> {
      */
     public int getPop() { return this.Pop; }
 
+    /**
+     * Returns the latitude of the City
+     *
+     * @return the latitude of the City in degrees, NaN if unknown
+     */
+    public double getLat() { return this.Lat; }
+
+    /**
+     * Returns the longitude of the City
+     *
+     * @return the longitude of the City in degrees, NaN if unknown
+     */
+    public double getLng() { return this.Lng; }
+
+    /**
+     * Returns whether the location of the City is known
+     *
+     * @return true if both latitude and longitude are known
+     */
+    public boolean hasLocation() { return !Double.isNaN(this.Lat) && !Double.isNaN(this.Lng); }
+
+    /**
+     * Returns the great-circle distance between this City and another one,
+     * computed with the haversine formula
+     *
+     * @param o City to measure the distance to
+     * @return distance between the Cities in kilometers, NaN if either location is unknown
+     */
+    public double distanceTo(City o) {
+        double lat1 = Math.toRadians(this.Lat);
+        double lat2 = Math.toRadians(o.Lat);
+        return haversine(lat1, Math.cos(lat1), Math.toRadians(this.Lng), lat2, Math.cos(lat2), Math.toRadians(o.Lng));
+    }
+
+    /**
+     * Returns the haversine distance between two locations given in radians, with the
+     * cosines of their latitudes so callers measuring many pairs can compute them once
+     *
+     * @return distance between the locations in kilometers
+     */
+    static double haversine(double lat1, double cosLat1, double lng1, double lat2, double cosLat2, double lng2) {
+        double sinLat = Math.sin((lat2 - lat1) / 2);
+        double sinLng = Math.sin((lng2 - lng1) / 2);
+        double a = sinLat * sinLat + cosLat1 * cosLat2 * sinLng * sinLng;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
     /**
      * Checks whether this City equals another object passed as input
      *
@@ -69,6 +142,36 @@ public class City implements Comparable<City> {
                  other.Pop == this.Pop;
     }
 
+    /**
+     * Returns a hash code consistent with equals, built from the name, region, and population
+     *
+     * @return the hash code of this City
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.Name, this.Region, this.Pop);
+    }
+
+    /**
+     * Returns the form of a City name used to look Cities up: surrounding whitespace
+     * removed, accents stripped, and lower case, so "Forl&igrave;", "forli" and " FORLI "
+     * all name the same City
+     *
+     * @param name name of a city
+     * @return the normalized name
+     */
+    public static String normalizeName(String name) {
+        String trimmed = name.trim();
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (trimmed.charAt(i) > 127) {
+                // decompose accented letters and drop the accents
+                trimmed = ACCENTS.matcher(Normalizer.normalize(trimmed, Normalizer.Form.NFD)).replaceAll("");
+                break;
+            }
+        }
+        return trimmed.toLowerCase(Locale.ROOT);
+    }
+
     /**
      * Compares this City to another City based on their name
      *
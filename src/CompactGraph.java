@@ -0,0 +1,382 @@
+import java.util.*;
+
+/**
+ * CompactGraph is a frozen, read-optimized copy of a TrainSelector. Instead of a
+ * Vertex object with a LinkedList of Edge objects per vertex, the adjacency of every
+ * vertex is packed into three primitive arrays in compressed sparse row (CSR) form:
+ * the edges leaving vertex v are stored at positions offsets[v] (inclusive) through
+ * offsets[v + 1] (exclusive) of targets and weights.
+ *
+ * Vertices are numbered 0 to getVertexCount() - 1, which lets the routing engines keep
+ * their per-vertex state in plain int arrays. The graph cannot be changed once it is
+ * built; all mutating methods throw UnsupportedOperationException.
+ *
+ * @param <T> the data type stored at each graph vertex
+ */
+public class CompactGraph<T> implements GraphADT<T> {
+
+    final Object[] data;     // data item of each vertex, indexed by vertex number
+    final int[] offsets;     // first edge of each vertex, offsets[n] == number of edges
+    final int[] targets;     // target vertex number of each edge
+    final int[] weights;     // weight of each edge
+    private final HashMap<T, Integer> index; // data item -> vertex number
+    private CompactGraph<T> reverse; // same graph with every edge turned around, built on first use
+
+    /**
+     * Builds a compact copy of the vertices and edges currently in graph.
+     *
+     * @param graph the graph to copy
+     * @throws NullPointerException if graph is null
+     */
+    public CompactGraph(TrainSelector<T> graph) {
+        if (graph == null) throw new NullPointerException("Cannot compact a null graph");
+        graph.thaw();
+        int n = graph.vertices.size();
+        this.data = new Object[n];
+        this.index = new HashMap<>(n * 2);
+        this.offsets = new int[n + 1];
+
+        // number the vertices and count the edges leaving each of them
+        ArrayList<TrainSelector<T>.Vertex> order = new ArrayList<>(graph.vertices.values());
+        int edgeCount = 0;
+        for (int v = 0; v < n; v++) {
+            TrainSelector<T>.Vertex vertex = order.get(v);
+            data[v] = vertex.data;
+            index.put(vertex.data, v);
+            offsets[v] = edgeCount;
+            edgeCount += vertex.edgesLeaving.size();
+        }
+        offsets[n] = edgeCount;
+
+        // copy the edges of every vertex into its slice of the edge arrays
+        this.targets = new int[edgeCount];
+        this.weights = new int[edgeCount];
+        for (int v = 0; v < n; v++) {
+            int e = offsets[v];
+            for (TrainSelector<T>.Edge edge : order.get(v).edgesLeaving) {
+                targets[e] = index.get(edge.target.data);
+                weights[e] = edge.weight;
+                e++;
+            }
+        }
+    }
+
+    /**
+     * Wraps arrays that are already in compressed sparse row form, for example ones read
+     * from a NetworkSnapshot. The arrays are used as they are, not copied.
+     *
+     * @param data the data item of each vertex
+     * @param offsets the first edge of each vertex, followed by the number of edges
+     * @param targets the target vertex number of each edge
+     * @param weights the weight of each edge
+     */
+    CompactGraph(Object[] data, int[] offsets, int[] targets, int[] weights) {
+        this.data = data;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.index = new HashMap<>(data.length * 2);
+        for (int v = 0; v < data.length; v++) {
+            @SuppressWarnings("unchecked")
+            T item = (T) data[v];
+            index.put(item, v);
+        }
+    }
+
+    /**
+     * Builds the reverse of graph, sharing its vertex numbering.
+     */
+    private CompactGraph(CompactGraph<T> graph) {
+        int n = graph.getVertexCount();
+        this.data = graph.data;
+        this.index = graph.index;
+        this.offsets = new int[n + 1];
+        this.targets = new int[graph.targets.length];
+        this.weights = new int[graph.weights.length];
+        this.reverse = graph;
+
+        // count the edges entering every vertex, then place each edge at its target
+        for (int e = 0; e < graph.targets.length; e++)
+            offsets[graph.targets[e] + 1]++;
+        for (int v = 0; v < n; v++)
+            offsets[v + 1] += offsets[v];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (int u = 0; u < n; u++) {
+            for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+                int slot = next[graph.targets[e]]++;
+                targets[slot] = u;
+                weights[slot] = graph.weights[e];
+            }
+        }
+    }
+
+    /**
+     * Returns the reverse of this graph: the same vertices, numbered the same way,
+     * with every edge pointing in the opposite direction. The edges leaving a vertex
+     * in the reverse graph are the edges entering it in this one.
+     *
+     * @return the reverse of this graph
+     */
+    public synchronized CompactGraph<T> reverse() {
+        if (reverse == null) reverse = new CompactGraph<>(this);
+        return reverse;
+    }
+
+    /**
+     * Returns the vertex number of a data item.
+     *
+     * @param data the data item to look up
+     * @return the vertex number of data, or -1 if it is not in the graph
+     * @throws NullPointerException if data is null
+     */
+    public int indexOf(T data) {
+        if (data == null) throw new NullPointerException("Cannot look up null data");
+        Integer v = index.get(data);
+        return v == null ? -1 : v;
+    }
+
+    /**
+     * Returns the data item stored at a vertex number.
+     *
+     * @param v the vertex number
+     * @return the data item stored at vertex v
+     */
+    @SuppressWarnings("unchecked")
+    public T dataAt(int v) {
+        return (T) data[v];
+    }
+
+    /**
+     * Returns the position of the first edge leaving vertex v.
+     *
+     * @param v the vertex number
+     * @return the index of the first edge leaving v
+     */
+    public int firstEdge(int v) { return offsets[v]; }
+
+    /**
+     * Returns the position one past the last edge leaving vertex v.
+     *
+     * @param v the vertex number
+     * @return the index one past the last edge leaving v
+     */
+    public int endEdge(int v) { return offsets[v + 1]; }
+
+    /**
+     * Returns the target vertex number of edge e.
+     *
+     * @param e the edge index
+     * @return the vertex number edge e leads to
+     */
+    public int target(int e) { return targets[e]; }
+
+    /**
+     * Returns the weight of edge e.
+     *
+     * @param e the edge index
+     * @return the weight of edge e
+     */
+    public int weight(int e) { return weights[e]; }
+
+    /**
+     * Returns the index of the edge from vertex u to vertex v.
+     *
+     * @param u the source vertex number
+     * @param v the target vertex number
+     * @return the edge index, or -1 if there is no such edge
+     */
+    public int findEdge(int u, int v) {
+        for (int e = offsets[u]; e < offsets[u + 1]; e++)
+            if (targets[e] == v)
+                return e;
+        return -1;
+    }
+
+    /**
+     * CompactGraph is frozen, vertices cannot be inserted.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public boolean insertVertex(T data) {
+        throw new UnsupportedOperationException("CompactGraph cannot be modified");
+    }
+
+    /**
+     * CompactGraph is frozen, vertices cannot be removed.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public boolean removeVertex(T data) {
+        throw new UnsupportedOperationException("CompactGraph cannot be modified");
+    }
+
+    /**
+     * CompactGraph is frozen, edges cannot be inserted.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public boolean insertEdge(T source, T target, int weight) {
+        throw new UnsupportedOperationException("CompactGraph cannot be modified");
+    }
+
+    /**
+     * CompactGraph is frozen, edges cannot be removed.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public boolean removeEdge(T source, T target) {
+        throw new UnsupportedOperationException("CompactGraph cannot be modified");
+    }
+
+    /**
+     * Check if the graph contains a vertex with data item *data*.
+     *
+     * @param data the data item to check for
+     * @return true if data item is stored in a vertex of the graph, false otherwise
+     * @throws NullPointerException if *data* is null
+     */
+    public boolean containsVertex(T data) {
+        if (data == null) throw new NullPointerException("Cannot contain null data vertex");
+        return index.containsKey(data);
+    }
+
+    /**
+     * Check if edge is in the graph.
+     *
+     * @param source the data item contained in the source vertex for the edge
+     * @param target the data item contained in the target vertex for the edge
+     * @return true if the edge is in the graph, false if it is not in the graph
+     * @throws NullPointerException if either source or target or both are null
+     */
+    public boolean containsEdge(T source, T target) {
+        if (source == null || target == null) throw new NullPointerException("Cannot contain edge adjacent to null data");
+        Integer u = index.get(source);
+        Integer v = index.get(target);
+        if (u == null || v == null) return false;
+        return findEdge(u, v) != -1;
+    }
+
+    /**
+     * Return the weight of an edge.
+     *
+     * @param source the data item contained in the source vertex for the edge
+     * @param target the data item contained in the target vertex for the edge
+     * @return the weight of the edge (0 or positive integer)
+     * @throws IllegalArgumentException if either source or target or both are not in the graph
+     * @throws NullPointerException if either source or target or both are null
+     * @throws NoSuchElementException if edge is not in the graph
+     */
+    public int getWeight(T source, T target) {
+        if (source == null || target == null) throw new NullPointerException("Cannot contain weighted edge adjacent to null data");
+        Integer u = index.get(source);
+        Integer v = index.get(target);
+        if (u == null || v == null) throw new IllegalArgumentException("Cannot retrieve weight of edge between vertices that do not exist");
+        int e = findEdge(u, v);
+        if (e == -1) throw new NoSuchElementException("No edge found between these vertices");
+        return weights[e];
+    }
+
+    /**
+     * Returns the shortest path between start and end.
+     * Uses Dijkstra's shortest path algorithm to find the shortest path.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the destination vertex for the path
+     * @return list of data item in vertices in order on the shortest path between vertex
+     * with data item start and vertex with data item end, including both start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public List<T> shortestPath(T start, T end) {
+        ShortestPathSearch<T> search = new ShortestPathSearch<>(this);
+        int t = requireVertex(end);
+        search.run(requireVertex(start), t);
+        return search.dataPathTo(t);
+    }
+
+    /**
+     * Returns the cost of the path (sum over edge weights) between start and end.
+     * Uses Dijkstra's shortest path algorithm to find the shortest path.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the end vertex for the path
+     * @return the cost of the shortest path between vertex with data item start
+     * and vertex with data item end, including all edges between start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public int getPathCost(T start, T end) {
+        int d = new ShortestPathSearch<>(this).run(requireVertex(start), requireVertex(end));
+        if (d == ShortestPathSearch.INFINITY) throw new NoSuchElementException("No path exists");
+        return d;
+    }
+
+    /**
+     * Check if the graph is empty (does not contain any vertices or edges).
+     *
+     * @return true if the graph does not contain any vertices or edges, false otherwise
+     */
+    public boolean isEmpty() {
+        return data.length == 0;
+    }
+
+    /**
+     * Return the number of edges in the graph.
+     * Like TrainSelector, both directions of a rail line
+     * count as one bidirectional edge
+     *
+     * @return the number of edges in the graph
+     */
+    public int getEdgeCount() {
+        return targets.length / 2;
+    }
+
+    /**
+     * Return the number of vertices in the graph
+     *
+     * @return the number of vertices in the graph
+     */
+    public int getVertexCount() {
+        return data.length;
+    }
+
+    /**
+     * Summarizes the edges of the graph independently of how its vertices are numbered,
+     * so that routing tables saved for one graph are not loaded for a different one.
+     * Each (source, target, weight) triple is mixed into 64 bits before the triples are
+     * added up, so changes to several weights do not cancel out. The vertices are told
+     * apart by the hashCode of their data, which must be the same from run to run, as it
+     * is for City.
+     *
+     * @return the fingerprint of the graph
+     */
+    long fingerprint() {
+        long sum = 0;
+        for (int u = 0; u < data.length; u++) {
+            long source = mix(data[u].hashCode());
+            for (int e = offsets[u]; e < offsets[u + 1]; e++)
+                sum += mix(mix(source ^ data[targets[e]].hashCode()) ^ weights[e]);
+        }
+        return sum;
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3, every input bit flips each output bit about half the time.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Returns the vertex number of data, failing the way the routing methods do
+     * when a vertex cannot be found.
+     */
+    private int requireVertex(T data) {
+        if (data == null) throw new NullPointerException("NullPointerException: Start or End is null");
+        Integer v = index.get(data);
+        if (v == null) throw new NoSuchElementException("No path exists");
+        return v;
+    }
+}
@@ -0,0 +1,269 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * ConcurrentTrainSelector lets many threads route over a train network while it is being
+ * updated.
+ *
+ * Readers never take a lock. Every query reads the current Snapshot, an immutable
+ * CompactGraph with a version number, and runs on it from start to end, so a query never
+ * sees half of an update. Writers apply their changes to a private TrainSelector under a
+ * lock, one batch at a time, and then publish a new snapshot with a single atomic store.
+ * Queries already running finish on the snapshot they started with.
+ *
+ * Each snapshot has its own pool of ShortestPathSearch objects. A query borrows a search
+ * from the pool and gives it back when it is done, so search state is reused without tying
+ * it to a thread, which also keeps the number of search objects small when queries run on
+ * many short-lived threads.
+ *
+ * @param <T> the data type stored at each graph vertex
+ */
+public class ConcurrentTrainSelector<T> {
+
+    /**
+     * Snapshot is one published version of the graph together with its search pool.
+     *
+     * @param <T> the data type stored at each graph vertex
+     */
+    public static final class Snapshot<T> {
+        private final CompactGraph<T> graph;
+        private final long version;
+        private final ConcurrentLinkedQueue<ShortestPathSearch<T>> searches = new ConcurrentLinkedQueue<>();
+
+        private Snapshot(CompactGraph<T> graph, long version) {
+            this.graph = graph;
+            this.version = version;
+        }
+
+        /**
+         * Returns the immutable graph of this snapshot.
+         *
+         * @return the graph
+         */
+        public CompactGraph<T> getGraph() { return graph; }
+
+        /**
+         * Returns the version of the graph this snapshot was taken of, see TrainSelector.getVersion.
+         *
+         * @return the version of the snapshot
+         */
+        public long getVersion() { return version; }
+
+        private ShortestPathSearch<T> borrow() {
+            ShortestPathSearch<T> search = searches.poll();
+            return search != null ? search : new ShortestPathSearch<>(graph);
+        }
+
+        private void giveBack(ShortestPathSearch<T> search) { searches.offer(search); }
+    }
+
+    private final TrainSelector<T> graph; // written under writeLock only
+    private final Object writeLock = new Object();
+    private final AtomicReference<Snapshot<T>> current;
+
+    /**
+     * Creates an empty concurrent graph.
+     */
+    public ConcurrentTrainSelector() {
+        this(new TrainSelector<T>());
+    }
+
+    /**
+     * Creates a concurrent graph that takes over graph. The caller must not use graph
+     * afterwards, all changes have to go through update.
+     *
+     * @param graph the initial graph
+     * @throws NullPointerException if graph is null
+     */
+    public ConcurrentTrainSelector(TrainSelector<T> graph) {
+        if (graph == null) throw new NullPointerException("Cannot wrap a null graph");
+        this.graph = graph;
+        this.current = new AtomicReference<>(new Snapshot<>(graph.compact(), graph.getVersion()));
+    }
+
+    /**
+     * Returns the snapshot queries currently run on. Holding on to it gives a consistent
+     * view of the graph across several calls, for example to build a ContractionHierarchy.
+     *
+     * @return the current snapshot
+     */
+    public Snapshot<T> snapshot() { return current.get(); }
+
+    /**
+     * Applies a batch of changes and publishes them to readers as one new snapshot.
+     * Writers are serialized, readers are not blocked. If changes throws, the changes it
+     * made before that are still published, then the exception is rethrown.
+     *
+     * @param changes calls insertVertex, removeVertex, insertEdge or removeEdge on the graph
+     * @return the snapshot that includes the changes
+     * @throws NullPointerException if changes is null
+     */
+    public Snapshot<T> update(Consumer<TrainSelector<T>> changes) {
+        if (changes == null) throw new NullPointerException("Changes are null");
+        synchronized (writeLock) {
+            try {
+                changes.accept(graph);
+            }
+            finally {
+                if (graph.getVersion() != current.get().getVersion())
+                    current.set(new Snapshot<>(graph.compact(), graph.getVersion()));
+            }
+            return current.get();
+        }
+    }
+
+    /**
+     * Inserts a new vertex and publishes the change, see TrainSelector.insertVertex.
+     *
+     * @param data the data item stored in the new vertex
+     * @return true if the data was inserted, false if it is already in the graph
+     * @throws NullPointerException if data is null
+     */
+    public boolean insertVertex(T data) {
+        boolean[] changed = new boolean[1];
+        update(g -> changed[0] = g.insertVertex(data));
+        return changed[0];
+    }
+
+    /**
+     * Removes a vertex and its edges and publishes the change, see TrainSelector.removeVertex.
+     *
+     * @param data the data item stored in the vertex to remove
+     * @return true if the vertex was removed, false if it was not in the graph
+     * @throws NullPointerException if data is null
+     */
+    public boolean removeVertex(T data) {
+        boolean[] changed = new boolean[1];
+        update(g -> changed[0] = g.removeVertex(data));
+        return changed[0];
+    }
+
+    /**
+     * Inserts an edge or updates its weight and publishes the change, see TrainSelector.insertEdge.
+     *
+     * @param source the data item contained in the source vertex for the edge
+     * @param target the data item contained in the target vertex for the edge
+     * @param weight the weight for the edge
+     * @return true if the edge was inserted or its weight updated
+     * @throws IllegalArgumentException if source or target is not in the graph, or weight is negative
+     * @throws NullPointerException if source or target is null
+     */
+    public boolean insertEdge(T source, T target, int weight) {
+        boolean[] changed = new boolean[1];
+        update(g -> changed[0] = g.insertEdge(source, target, weight));
+        return changed[0];
+    }
+
+    /**
+     * Removes an edge and publishes the change, see TrainSelector.removeEdge.
+     *
+     * @param source the data item contained in the source vertex for the edge
+     * @param target the data item contained in the target vertex for the edge
+     * @return true if the edge was removed, false if it was not in the graph
+     * @throws IllegalArgumentException if source or target is not in the graph
+     * @throws NullPointerException if source or target is null
+     */
+    public boolean removeEdge(T source, T target) {
+        boolean[] changed = new boolean[1];
+        update(g -> changed[0] = g.removeEdge(source, target));
+        return changed[0];
+    }
+
+    /**
+     * Returns the shortest route between start and end in the current snapshot.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the destination vertex for the path
+     * @return the shortest route from start to end
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public Route<T> route(T start, T end) {
+        return route(current.get(), start, end);
+    }
+
+    /**
+     * Returns the shortest route between start and end in the given snapshot, so that
+     * several queries can be answered on the same version of the graph.
+     *
+     * @param snapshot a snapshot returned by snapshot or update
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the destination vertex for the path
+     * @return the shortest route from start to end in snapshot
+     * @throws NullPointerException if snapshot, start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public Route<T> route(Snapshot<T> snapshot, T start, T end) {
+        if (snapshot == null) throw new NullPointerException("Snapshot is null");
+        if (start == null || end == null) throw new NullPointerException("NullPointerException: Start or End is null");
+        int s = snapshot.graph.indexOf(start);
+        int t = snapshot.graph.indexOf(end);
+        if (s == -1 || t == -1) throw new NoSuchElementException("No path exists");
+        ShortestPathSearch<T> search = snapshot.borrow();
+        try {
+            int distance = search.run(s, t);
+            if (distance == ShortestPathSearch.INFINITY) throw new NoSuchElementException("No path exists");
+            return new Route<>(snapshot.graph, search.pathTo(t), distance);
+        }
+        finally {
+            snapshot.giveBack(search);
+        }
+    }
+
+    /**
+     * Returns the shortest path between start and end in the current snapshot.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the destination vertex for the path
+     * @return list of data items on the shortest path, including both start and end
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public List<T> shortestPath(T start, T end) {
+        return route(start, end).getStops();
+    }
+
+    /**
+     * Returns the cost of the shortest path between start and end in the current snapshot.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the end vertex for the path
+     * @return the cost of the shortest path between start and end
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public int getPathCost(T start, T end) {
+        return route(start, end).getCost();
+    }
+
+    /**
+     * Returns string representation of the shortest path in the current snapshot
+     *
+     * @param start Starting data item in starting Vertex of path
+     * @param end Final data item in path
+     * @return String representaion of Cities in shortest path
+     */
+    public String getShortestPathString(T start, T end) {
+        return route(start, end).toString();
+    }
+
+    /**
+     * Returns the number of vertices in the current snapshot.
+     *
+     * @return the number of vertices
+     */
+    public int getVertexCount() { return current.get().graph.getVertexCount(); }
+
+    /**
+     * Returns the number of edges in the current snapshot.
+     *
+     * @return the number of edges
+     */
+    public int getEdgeCount() { return current.get().graph.getEdgeCount(); }
+}
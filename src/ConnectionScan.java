@@ -0,0 +1,273 @@
+import java.util.Arrays;
+
+/**
+ * ConnectionScan answers journey queries on a Timetable with the Connection Scan
+ * Algorithm of Dibbelt, Pajor, Strasser and Wagner.
+ *
+ * An earliest arrival query scans the connections once, in order of departure, starting
+ * at the first one after the departure time. A connection can be used if its train has
+ * already been boarded, or if the rider can be at its departure stop in time, counting
+ * the change time when it means changing trains. Using it may improve the earliest
+ * arrival at its arrival stop. The scan stops at the first connection that departs after
+ * the destination has been reached. There is no priority queue, only a linear pass over
+ * arrays, which is why it is fast.
+ *
+ * A profile query finds the earliest arrival for every departure in a time range at once,
+ * by scanning the connections backwards, from the last one to the start of the range, and
+ * keeping for each stop the Pareto set of (departure, arrival at the destination) pairs.
+ *
+ * A ConnectionScan keeps its arrays between queries. Like ShortestPathSearch it is
+ * reusable but not thread safe; use one per thread on a shared Timetable.
+ */
+public class ConnectionScan {
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final Timetable timetable;
+    private final int[] arrival;     // earliest arrival at each stop
+    private final int[] reachedBy;   // connection that set arrival, -1 for the source
+    private final int[] boarded;     // first connection of each trip that could be used, -1 if none
+    private final int[] tripArrival; // profile: earliest arrival at the destination when sitting in each trip
+    private int[][] profileDeparture = new int[0][]; // profile: Pareto set of each stop, departures falling
+    private int[][] profileArrival = new int[0][];
+    private final int[] profileSize;
+
+    /**
+     * Creates a search over timetable.
+     *
+     * @param timetable the timetable to search
+     * @throws NullPointerException if timetable is null
+     */
+    public ConnectionScan(Timetable timetable) {
+        if (timetable == null) throw new NullPointerException("Cannot search a null timetable");
+        this.timetable = timetable;
+        int stops = timetable.getStopCount();
+        int trips = timetable.getTripCount();
+        this.arrival = new int[stops];
+        this.reachedBy = new int[stops];
+        this.boarded = new int[trips];
+        this.tripArrival = new int[trips];
+        this.profileSize = new int[stops];
+    }
+
+    /**
+     * Returns the timetable this search runs on.
+     *
+     * @return the timetable
+     */
+    public Timetable getTimetable() { return timetable; }
+
+    /**
+     * Finds the journey from start to end that arrives first, leaving start no earlier than departure.
+     *
+     * @param start the City to leave from
+     * @param end the City to go to
+     * @param departure the earliest departure time, in seconds since midnight
+     * @return the journey arriving first, with as few legs as the scan found it with,
+     *     or null if no train gets to end on this day
+     * @throws NullPointerException if start or end is null
+     * @throws IllegalArgumentException if start or end is not served by the timetable
+     */
+    public Journey earliestArrival(City start, City end, int departure) {
+        int s = stop(start);
+        int t = stop(end);
+        if (s == t) throw new IllegalArgumentException("Start and end are the same City");
+        Timetable tt = timetable;
+        Arrays.fill(arrival, INFINITY);
+        Arrays.fill(boarded, -1);
+        arrival[s] = departure;
+        reachedBy[s] = -1;
+
+        for (int c = tt.firstConnectionAfter(departure), m = tt.depStop.length; c < m; c++) {
+            int dep = tt.depTime[c];
+            if (dep >= arrival[t]) break; // every later connection departs after we are there
+            int trip = tt.trip[c];
+            if (boarded[trip] == -1) {
+                int from = tt.depStop[c];
+                int ready = arrival[from];
+                if (ready == INFINITY) continue;
+                if (from != s) ready += tt.changeTime[from];
+                if (ready > dep) continue;
+                boarded[trip] = c;
+            }
+            int to = tt.arrStop[c];
+            if (tt.arrTime[c] < arrival[to]) {
+                arrival[to] = tt.arrTime[c];
+                reachedBy[to] = c;
+            }
+        }
+        if (arrival[t] == INFINITY) return null;
+
+        // walk back from end, one leg per trip
+        int legs = 0;
+        Journey.Leg[] reversed = new Journey.Leg[8];
+        for (int stop = t; stop != s; ) {
+            int alight = reachedBy[stop];
+            int board = boarded[tt.trip[alight]];
+            if (legs == reversed.length) reversed = Arrays.copyOf(reversed, 2 * legs);
+            reversed[legs++] = tt.leg(board, alight);
+            stop = tt.depStop[board];
+        }
+        Journey.Leg[] ordered = new Journey.Leg[legs];
+        for (int i = 0; i < legs; i++) ordered[i] = reversed[legs - 1 - i];
+        return new Journey(ordered);
+    }
+
+    /**
+     * Finds, for every departure from start between from and until, the earliest arrival in end.
+     *
+     * @param start the City to leave from
+     * @param end the City to go to
+     * @param from the start of the departure range, in seconds since midnight
+     * @param until the end of the departure range, inclusive
+     * @return the departures from start worth taking, each with its earliest arrival in end
+     * @throws NullPointerException if start or end is null
+     * @throws IllegalArgumentException if start or end is not served by the timetable,
+     *     they are the same, or until is before from
+     */
+    public Profile profile(City start, City end, int from, int until) {
+        int s = stop(start);
+        int t = stop(end);
+        if (s == t) throw new IllegalArgumentException("Start and end are the same City");
+        if (until < from) throw new IllegalArgumentException("Departure range ends before it starts");
+        Timetable tt = timetable;
+        Arrays.fill(tripArrival, INFINITY);
+        Arrays.fill(profileSize, 0);
+        if (profileDeparture.length == 0) {
+            profileDeparture = new int[tt.getStopCount()][];
+            profileArrival = new int[tt.getStopCount()][];
+        }
+
+        for (int c = tt.depStop.length - 1, first = tt.firstConnectionAfter(from); c >= first; c--) {
+            int trip = tt.trip[c];
+            int to = tt.arrStop[c];
+            int best = tripArrival[trip];                            // stay on the train
+            if (to == t) best = Math.min(best, tt.arrTime[c]);       // get off at the destination
+            else best = Math.min(best, evaluate(to, tt.arrTime[c] + tt.changeTime[to])); // change trains
+            if (best == INFINITY) continue;
+            tripArrival[trip] = best;
+            add(tt.depStop[c], tt.depTime[c], best);
+        }
+
+        // the Pareto set of start, restricted to the range and turned into rising departures
+        int size = profileSize[s];
+        int[] departures = new int[size];
+        int[] arrivals = new int[size];
+        int n = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            if (profileDeparture[s][i] > until) continue;
+            departures[n] = profileDeparture[s][i];
+            arrivals[n++] = profileArrival[s][i];
+        }
+        return new Profile(Arrays.copyOf(departures, n), Arrays.copyOf(arrivals, n));
+    }
+
+    /**
+     * Returns the earliest arrival at the destination when ready to board at stop at time.
+     * The Pareto set of a stop is kept with falling departures and falling arrivals, so the
+     * answer is the last entry departing at or after time.
+     */
+    private int evaluate(int stop, int time) {
+        int size = profileSize[stop];
+        if (size == 0) return INFINITY;
+        int[] departures = profileDeparture[stop];
+        if (departures[0] < time) return INFINITY;
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (departures[mid] >= time) low = mid;
+            else high = mid - 1;
+        }
+        return profileArrival[stop][low];
+    }
+
+    /**
+     * Adds (departure, arrival) to the Pareto set of stop unless an entry departing no
+     * earlier arrives no later.
+     */
+    private void add(int stop, int departure, int arrival) {
+        int size = profileSize[stop];
+        if (size > 0) {
+            if (profileArrival[stop][size - 1] <= arrival) return;
+            if (profileDeparture[stop][size - 1] == departure) size--; // same departure, better arrival
+        }
+        if (profileDeparture[stop] == null) {
+            profileDeparture[stop] = new int[16];
+            profileArrival[stop] = new int[16];
+        }
+        else if (size == profileDeparture[stop].length) {
+            profileDeparture[stop] = Arrays.copyOf(profileDeparture[stop], 2 * size);
+            profileArrival[stop] = Arrays.copyOf(profileArrival[stop], 2 * size);
+        }
+        profileDeparture[stop][size] = departure;
+        profileArrival[stop][size] = arrival;
+        profileSize[stop] = size + 1;
+    }
+
+    private int stop(City city) {
+        if (city == null) throw new NullPointerException("NullPointerException: Start or End is null");
+        int stop = timetable.stopNumber(city);
+        if (stop == -1) throw new IllegalArgumentException(city.getName() + " is not served by the timetable");
+        return stop;
+    }
+
+    /**
+     * Profile is the answer to a profile query: the departures from the start worth taking,
+     * in rising order, each with its earliest arrival at the destination. A departure is
+     * worth taking if no later departure arrives as early.
+     */
+    public static final class Profile {
+        private final int[] departures;
+        private final int[] arrivals;
+
+        Profile(int[] departures, int[] arrivals) {
+            this.departures = departures;
+            this.arrivals = arrivals;
+        }
+
+        /**
+         * Returns the number of departures worth taking.
+         *
+         * @return the size of the profile
+         */
+        public int size() { return departures.length; }
+
+        /**
+         * Returns the i-th departure time, in seconds since midnight.
+         *
+         * @param i the index of the departure, from 0 to size() - 1
+         * @return the departure time
+         */
+        public int getDeparture(int i) { return departures[i]; }
+
+        /**
+         * Returns the earliest arrival for the i-th departure.
+         *
+         * @param i the index of the departure, from 0 to size() - 1
+         * @return the arrival time
+         */
+        public int getArrival(int i) { return arrivals[i]; }
+
+        /**
+         * Returns the earliest arrival when leaving at time or later, within the range of the query.
+         *
+         * @param time the earliest departure time
+         * @return the arrival time, or Integer.MAX_VALUE if no departure in the range is left
+         */
+        public int earliestArrival(int time) {
+            int i = Arrays.binarySearch(departures, time);
+            if (i < 0) i = -i - 1;
+            else while (i > 0 && departures[i - 1] == time) i--;
+            return i < departures.length ? arrivals[i] : INFINITY;
+        }
+
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < departures.length; i++) {
+                if (i > 0) text.append(", ");
+                text.append(Timetable.formatTime(departures[i])).append(" -> ").append(Timetable.formatTime(arrivals[i]));
+            }
+            return text.toString();
+        }
+    }
+}
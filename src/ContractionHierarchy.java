@@ -0,0 +1,651 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * ContractionHierarchy preprocesses a TrainSelector so that shortest path queries only
+ * have to search a tiny part of the network.
+ *
+ * Preprocessing contracts the vertices one at a time, least important first. Contracting
+ * a vertex v removes it from the remaining graph; for every pair of neighbors u -> v -> x
+ * whose shortest connection runs through v, a shortcut edge u -> x is added with the summed
+ * weight. A bounded witness search from u decides whether such a shortcut is needed. The
+ * contraction order is the rank of each vertex, chosen greedily by edge difference (shortcuts
+ * added minus edges removed) plus the number of already contracted neighbors.
+ *
+ * A query runs a bidirectional Dijkstra search that only follows edges to higher ranked
+ * vertices: forward from the start and backward from the destination. The two searches meet
+ * at the highest ranked vertex of the shortest path. Shortcuts on the result are then unpacked
+ * into the original edges, giving the same List of Cities TrainSelector.shortestPath returns.
+ *
+ * A hierarchy describes the graph as it was when it was built; rebuild it (or load a
+ * matching saved one) after the graph changes. Queries are thread safe, every thread
+ * gets its own search state.
+ */
+public class ContractionHierarchy {
+    private static final int MAGIC = 0x54524348; // "TRCH"
+    private static final int VERSION = 3;
+    private static final int WITNESS_SETTLE_LIMIT = 1000;   // vertices a witness search may settle
+    private static final int PRIORITY_SETTLE_LIMIT = 50;    // same, when only estimating a priority
+
+    private final City[] cities;                 // city of each vertex number
+    private final HashMap<City, Integer> index;  // city -> vertex number
+    private final int[] rank;                    // contraction order of each vertex
+    private final long fingerprint;              // CompactGraph.fingerprint of the graph the hierarchy was built from
+    // upward edges u -> x with rank[x] > rank[u], stored at u
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final int[] upWeights;
+    private final int[] upMiddles;               // contracted vertex a shortcut skips, -1 for original edges
+    // downward edges y -> u with rank[y] > rank[u], stored reversed at u
+    private final int[] downOffsets;
+    private final int[] downSources;
+    private final int[] downWeights;
+    private final int[] downMiddles;
+    private final ThreadLocal<Query> queries = ThreadLocal.withInitial(Query::new);
+
+    /**
+     * Builds a contraction hierarchy of the current vertices and edges in graph.
+     *
+     * @param graph the graph to preprocess
+     * @throws NullPointerException if graph is null
+     */
+    public ContractionHierarchy(TrainSelector<City> graph) {
+        if (graph == null) throw new NullPointerException("Cannot contract a null graph");
+        CompactGraph<City> g = graph.compact();
+        int n = g.getVertexCount();
+        this.cities = new City[n];
+        this.index = new HashMap<>(n * 2);
+        for (int v = 0; v < n; v++) {
+            cities[v] = g.dataAt(v);
+            index.put(cities[v], v);
+        }
+        this.rank = new int[n];
+        this.fingerprint = g.fingerprint();
+
+        Contraction contraction = new Contraction(g);
+        contraction.run();
+
+        this.upOffsets = new int[n + 1];
+        this.downOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            upOffsets[v + 1] = upOffsets[v] + contraction.up[v].size;
+            downOffsets[v + 1] = downOffsets[v] + contraction.down[v].size;
+        }
+        this.upTargets = new int[upOffsets[n]];
+        this.upWeights = new int[upOffsets[n]];
+        this.upMiddles = new int[upOffsets[n]];
+        this.downSources = new int[downOffsets[n]];
+        this.downWeights = new int[downOffsets[n]];
+        this.downMiddles = new int[downOffsets[n]];
+        for (int v = 0; v < n; v++) {
+            contraction.up[v].copyTo(upOffsets[v], upTargets, upWeights, upMiddles);
+            contraction.down[v].copyTo(downOffsets[v], downSources, downWeights, downMiddles);
+        }
+    }
+
+    /**
+     * Creates a hierarchy from arrays read back from a file.
+     */
+    private ContractionHierarchy(City[] cities, long fingerprint, int[] rank, int[][] up, int[][] down) {
+        this.cities = cities;
+        this.fingerprint = fingerprint;
+        this.index = new HashMap<>(cities.length * 2);
+        for (int v = 0; v < cities.length; v++)
+            index.put(cities[v], v);
+        this.rank = rank;
+        this.upOffsets = up[0];
+        this.upTargets = up[1];
+        this.upWeights = up[2];
+        this.upMiddles = up[3];
+        this.downOffsets = down[0];
+        this.downSources = down[1];
+        this.downWeights = down[2];
+        this.downMiddles = down[3];
+    }
+
+    /**
+     * Returns the shortest path between start and end.
+     *
+     * @param start the starting City of the path
+     * @param end the destination City of the path
+     * @return list of Cities in order on the shortest path, including both start and end
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when start or end is not in the hierarchy
+     */
+    public List<City> shortestPath(City start, City end) {
+        Query query = queries.get();
+        if (query.run(vertexOf(start), vertexOf(end)) == ShortestPathSearch.INFINITY)
+            throw new NoSuchElementException("No path exists");
+        return query.unpack();
+    }
+
+    /**
+     * Returns the cost of the shortest path between start and end.
+     *
+     * @param start the starting City of the path
+     * @param end the destination City of the path
+     * @return the cost of the shortest path between start and end
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when start or end is not in the hierarchy
+     */
+    public int getPathCost(City start, City end) {
+        int d = queries.get().run(vertexOf(start), vertexOf(end));
+        if (d == ShortestPathSearch.INFINITY) throw new NoSuchElementException("No path exists");
+        return d;
+    }
+
+    /**
+     * Returns the number of vertices in the hierarchy.
+     *
+     * @return the number of vertices
+     */
+    public int getVertexCount() { return cities.length; }
+
+    /**
+     * Returns the number of shortcut edges preprocessing added.
+     *
+     * @return the number of shortcuts
+     */
+    public int getShortcutCount() {
+        int count = 0;
+        for (int m : upMiddles) if (m != -1) count++;
+        for (int m : downMiddles) if (m != -1) count++;
+        return count;
+    }
+
+    /**
+     * Returns the contraction rank of city. Cities with a higher rank are more important.
+     *
+     * @param city a City in the hierarchy
+     * @return the rank of city, from 0 to getVertexCount() - 1
+     * @throws NoSuchElementException if city is not in the hierarchy
+     */
+    public int getRank(City city) {
+        return rank[vertexOf(city)];
+    }
+
+    /**
+     * Writes the hierarchy to file so it can be loaded again without repeating the preprocessing.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(cities.length);
+            out.writeLong(fingerprint);
+            for (City city : cities)
+                out.writeUTF(city.getName());
+            writeArray(out, rank);
+            writeArray(out, upOffsets);
+            writeArray(out, upTargets);
+            writeArray(out, upWeights);
+            writeArray(out, upMiddles);
+            writeArray(out, downOffsets);
+            writeArray(out, downSources);
+            writeArray(out, downWeights);
+            writeArray(out, downMiddles);
+        }
+    }
+
+    /**
+     * Reads a hierarchy written by save. The Cities are resolved by name against graph,
+     * which must have the same vertices, edges and weights as the graph the hierarchy was
+     * built from.
+     *
+     * @param file the file to read
+     * @param graph the graph holding the Cities of the hierarchy
+     * @return the hierarchy stored in file
+     * @throws IOException if the file cannot be read, is not a saved hierarchy, was built
+     *     for a graph with different vertices, edges or weights, or is corrupt
+     */
+    public static ContractionHierarchy load(Path file, TrainSelector<City> graph) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a contraction hierarchy file: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported contraction hierarchy version " + version);
+            int n = in.readInt();
+            CompactGraph<City> g = graph.compact();
+            long fingerprint = g.fingerprint();
+            if (n != g.getVertexCount() || in.readLong() != fingerprint)
+                throw new IOException("Contraction hierarchy file was written for a different graph");
+            City[] cities = new City[n];
+            for (int v = 0; v < n; v++) {
+                String name = in.readUTF();
+                cities[v] = graph.getCity(new City(name), graph);
+                if (cities[v] == null) throw new IOException("City " + name + " is not in the graph");
+            }
+            int[] rank = readArray(in);
+            int[][] up = { readArray(in), readArray(in), readArray(in), readArray(in) };
+            int[][] down = { readArray(in), readArray(in), readArray(in), readArray(in) };
+            if (!isPermutation(rank) || !isValid(n, up) || !isValid(n, down))
+                throw new IOException("Contraction hierarchy file is corrupt: " + file);
+            return new ContractionHierarchy(cities, fingerprint, rank, up, down);
+        }
+    }
+
+    private static boolean isPermutation(int[] rank) {
+        boolean[] seen = new boolean[rank.length];
+        for (int r : rank) {
+            if (r < 0 || r >= rank.length || seen[r]) return false;
+            seen[r] = true;
+        }
+        return true;
+    }
+
+    /**
+     * Checks that edges = {offsets, ends, weights, middles} of n vertices can be searched
+     * without indexing out of bounds.
+     */
+    private static boolean isValid(int n, int[][] edges) {
+        int[] offsets = edges[0];
+        int m = edges[1].length;
+        if (offsets.length != n + 1 || offsets[0] != 0 || offsets[n] != m) return false;
+        if (edges[2].length != m || edges[3].length != m) return false;
+        for (int v = 0; v < n; v++)
+            if (offsets[v] > offsets[v + 1]) return false;
+        for (int e = 0; e < m; e++) {
+            if (edges[1][e] < 0 || edges[1][e] >= n || edges[2][e] < 0) return false;
+            if (edges[3][e] < -1 || edges[3][e] >= n) return false;
+        }
+        return true;
+    }
+
+    private static void writeArray(DataOutputStream out, int[] array) throws IOException {
+        out.writeInt(array.length);
+        for (int x : array)
+            out.writeInt(x);
+    }
+
+    private static int[] readArray(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Contraction hierarchy file is corrupt");
+        int[] array = new int[length];
+        for (int i = 0; i < array.length; i++)
+            array[i] = in.readInt();
+        return array;
+    }
+
+    private int vertexOf(City city) {
+        if (city == null) throw new NullPointerException("NullPointerException: Start or End is null");
+        Integer v = index.get(city);
+        if (v == null) throw new NoSuchElementException("No path exists");
+        return v;
+    }
+
+    /**
+     * Appends the original vertices an edge from u to x stands for, excluding u itself.
+     * A shortcut u -> x over middle m was built from the edge u -> m, stored downward at m,
+     * and the edge m -> x, stored upward at m; both are unpacked in turn.
+     */
+    private void unpack(int u, int x, int middle, List<City> path) {
+        if (middle == -1) {
+            path.add(cities[x]);
+            return;
+        }
+        for (int e = downOffsets[middle]; e < downOffsets[middle + 1]; e++)
+            if (downSources[e] == u) {
+                unpack(u, middle, downMiddles[e], path);
+                break;
+            }
+        for (int e = upOffsets[middle]; e < upOffsets[middle + 1]; e++)
+            if (upTargets[e] == x) {
+                unpack(middle, x, upMiddles[e], path);
+                break;
+            }
+    }
+
+    /**
+     * Search state of one query thread: an upward search from the start and an upward
+     * search from the destination over the reversed downward edges.
+     */
+    private class Query {
+        final int[] forwardDist = new int[cities.length];
+        final int[] backwardDist = new int[cities.length];
+        final int[] forwardEdge = new int[cities.length];  // up edge used to reach each vertex
+        final int[] backwardEdge = new int[cities.length]; // down edge used to reach each vertex
+        final IndexedMinHeap forwardHeap = new IndexedMinHeap(cities.length);
+        final IndexedMinHeap backwardHeap = new IndexedMinHeap(cities.length);
+        final int[] touched = new int[2 * cities.length];
+        int touchedCount;
+        int source;
+        int meeting = -1;
+
+        Query() {
+            Arrays.fill(forwardDist, ShortestPathSearch.INFINITY);
+            Arrays.fill(backwardDist, ShortestPathSearch.INFINITY);
+        }
+
+        int run(int s, int t) {
+            for (int i = 0; i < touchedCount; i++) {
+                forwardDist[touched[i]] = ShortestPathSearch.INFINITY;
+                backwardDist[touched[i]] = ShortestPathSearch.INFINITY;
+            }
+            touchedCount = 0;
+            forwardHeap.clear();
+            backwardHeap.clear();
+            source = s;
+            meeting = -1;
+
+            int best = ShortestPathSearch.INFINITY;
+            touched[touchedCount++] = s;
+            touched[touchedCount++] = t;
+            forwardDist[s] = 0;
+            forwardEdge[s] = -1;
+            backwardDist[t] = 0;
+            backwardEdge[t] = -1;
+            forwardHeap.add(s, 0);
+            backwardHeap.add(t, 0);
+
+            // each side stops once its next vertex is no closer than the best meeting found
+            while ((!forwardHeap.isEmpty() && forwardHeap.peekKey() < best)
+                    || (!backwardHeap.isEmpty() && backwardHeap.peekKey() < best)) {
+                boolean forward = backwardHeap.isEmpty() || backwardHeap.peekKey() >= best
+                        || (!forwardHeap.isEmpty() && forwardHeap.peekKey() <= backwardHeap.peekKey());
+                if (forward) {
+                    int u = forwardHeap.poll();
+                    if (backwardDist[u] != ShortestPathSearch.INFINITY && forwardDist[u] + backwardDist[u] < best) {
+                        best = forwardDist[u] + backwardDist[u];
+                        meeting = u;
+                    }
+                    if (stalled(u, forwardDist, downOffsets, downSources, downWeights)) continue;
+                    for (int e = upOffsets[u]; e < upOffsets[u + 1]; e++)
+                        relax(forwardDist, forwardEdge, forwardHeap, upTargets[e], forwardDist[u] + upWeights[e], e);
+                }
+                else {
+                    int u = backwardHeap.poll();
+                    if (forwardDist[u] != ShortestPathSearch.INFINITY && forwardDist[u] + backwardDist[u] < best) {
+                        best = forwardDist[u] + backwardDist[u];
+                        meeting = u;
+                    }
+                    if (stalled(u, backwardDist, upOffsets, upTargets, upWeights)) continue;
+                    for (int e = downOffsets[u]; e < downOffsets[u + 1]; e++)
+                        relax(backwardDist, backwardEdge, backwardHeap, downSources[e], backwardDist[u] + downWeights[e], e);
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Stall-on-demand: if a higher ranked vertex already reached by this side offers
+         * a shorter way into u, u is not on a shortest up-down path and need not be expanded.
+         * The edges checked are the ones this side cannot follow out of u.
+         */
+        boolean stalled(int u, int[] dist, int[] offsets, int[] others, int[] weights) {
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int y = others[e];
+                if (dist[y] != ShortestPathSearch.INFINITY && dist[y] + weights[e] < dist[u]) return true;
+            }
+            return false;
+        }
+
+        void relax(int[] dist, int[] edge, IndexedMinHeap heap, int v, int d, int e) {
+            if (d >= dist[v]) return;
+            if (forwardDist[v] == ShortestPathSearch.INFINITY && backwardDist[v] == ShortestPathSearch.INFINITY)
+                touched[touchedCount++] = v;
+            dist[v] = d;
+            edge[v] = e;
+            heap.offer(v, d);
+        }
+
+        /**
+         * Rebuilds the full path of the last query, unpacking every shortcut on it.
+         */
+        List<City> unpack() {
+            // walk the upward edges back from the meeting vertex to the start
+            ArrayDeque<Integer> forwardEdges = new ArrayDeque<>();
+            int v = meeting;
+            while (v != source) {
+                int e = forwardEdge[v];
+                forwardEdges.push(e);
+                v = ownerOf(upOffsets, e);
+            }
+            List<City> path = new LinkedList<>();
+            path.add(cities[source]);
+            v = source;
+            for (int e : forwardEdges) {
+                ContractionHierarchy.this.unpack(v, upTargets[e], upMiddles[e], path);
+                v = upTargets[e];
+            }
+            // then follow the downward edges from the meeting vertex to the destination
+            while (backwardEdge[v] != -1) {
+                int e = backwardEdge[v];
+                int next = ownerOf(downOffsets, e);
+                ContractionHierarchy.this.unpack(v, next, downMiddles[e], path);
+                v = next;
+            }
+            return path;
+        }
+    }
+
+    /**
+     * Returns the vertex whose slice of a CSR edge array holds edge e.
+     */
+    private static int ownerOf(int[] offsets, int e) {
+        int low = 0;
+        int high = offsets.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= e) low = mid;
+            else high = mid - 1;
+        }
+        return low;
+    }
+
+    /**
+     * Growable list of weighted edges to or from one vertex, used during preprocessing.
+     */
+    private static class EdgeList {
+        int[] other = new int[4];
+        int[] weight = new int[4];
+        int[] middle = new int[4];
+        int size;
+
+        int find(int v) {
+            for (int i = 0; i < size; i++)
+                if (other[i] == v) return i;
+            return -1;
+        }
+
+        /**
+         * Adds an edge to v, or lowers the weight of the existing one.
+         */
+        void put(int v, int w, int m) {
+            int i = find(v);
+            if (i != -1) {
+                if (w < weight[i]) {
+                    weight[i] = w;
+                    middle[i] = m;
+                }
+                return;
+            }
+            if (size == other.length) {
+                other = Arrays.copyOf(other, size * 2);
+                weight = Arrays.copyOf(weight, size * 2);
+                middle = Arrays.copyOf(middle, size * 2);
+            }
+            other[size] = v;
+            weight[size] = w;
+            middle[size] = m;
+            size++;
+        }
+
+        void remove(int v) {
+            int i = find(v);
+            if (i == -1) return;
+            size--;
+            other[i] = other[size];
+            weight[i] = weight[size];
+            middle[i] = middle[size];
+        }
+
+        void copyTo(int at, int[] others, int[] weights, int[] middles) {
+            System.arraycopy(other, 0, others, at, size);
+            System.arraycopy(weight, 0, weights, at, size);
+            System.arraycopy(middle, 0, middles, at, size);
+        }
+    }
+
+    /**
+     * The preprocessing state: the remaining graph as growable edge lists, and the
+     * upward and downward edges of every vertex frozen when it is contracted.
+     */
+    private class Contraction {
+        final int n;
+        final EdgeList[] out;     // remaining edges leaving each uncontracted vertex
+        final EdgeList[] in;      // remaining edges entering each uncontracted vertex
+        final EdgeList[] up;      // edges to higher ranked vertices
+        final EdgeList[] down;    // edges from higher ranked vertices
+        final boolean[] contracted;
+        final int[] contractedNeighbors;
+        final int[] level;        // one more than the highest level of any contracted neighbor
+        // witness search state
+        final int[] dist;
+        final int[] touched;
+        int touchedCount;
+        final IndexedMinHeap heap;
+
+        Contraction(CompactGraph<City> g) {
+            n = g.getVertexCount();
+            out = new EdgeList[n];
+            in = new EdgeList[n];
+            up = new EdgeList[n];
+            down = new EdgeList[n];
+            for (int v = 0; v < n; v++) {
+                out[v] = new EdgeList();
+                in[v] = new EdgeList();
+            }
+            for (int u = 0; u < n; u++) {
+                for (int e = g.firstEdge(u); e < g.endEdge(u); e++) {
+                    int x = g.target(e);
+                    if (x == u) continue;
+                    out[u].put(x, g.weight(e), -1);
+                    in[x].put(u, g.weight(e), -1);
+                }
+            }
+            contracted = new boolean[n];
+            contractedNeighbors = new int[n];
+            level = new int[n];
+            dist = new int[n];
+            Arrays.fill(dist, ShortestPathSearch.INFINITY);
+            touched = new int[n];
+            heap = new IndexedMinHeap(n);
+        }
+
+        void run() {
+            IndexedMinHeap order = new IndexedMinHeap(n);
+            for (int v = 0; v < n; v++)
+                order.add(v, priority(v));
+            int next = 0;
+            while (!order.isEmpty()) {
+                // lazy update: a vertex whose priority got worse goes back into the queue
+                int v = order.peek();
+                int p = priority(v);
+                if (p > order.keyOf(v)) {
+                    order.update(v, p);
+                    continue;
+                }
+                order.poll();
+                rank[v] = next++;
+                contract(v);
+                for (int i = 0; i < up[v].size; i++)
+                    order.update(up[v].other[i], priority(up[v].other[i]));
+                for (int i = 0; i < down[v].size; i++)
+                    if (order.contains(down[v].other[i]))
+                        order.update(down[v].other[i], priority(down[v].other[i]));
+            }
+        }
+
+        int priority(int v) {
+            int shortcuts = shortcuts(v, false, PRIORITY_SETTLE_LIMIT);
+            return 2 * (shortcuts - out[v].size - in[v].size) + contractedNeighbors[v] + level[v];
+        }
+
+        void contract(int v) {
+            shortcuts(v, true, WITNESS_SETTLE_LIMIT);
+            up[v] = out[v];
+            down[v] = in[v];
+            for (int i = 0; i < up[v].size; i++) {
+                int x = up[v].other[i];
+                in[x].remove(v);
+                contractedNeighbors[x]++;
+                level[x] = Math.max(level[x], level[v] + 1);
+            }
+            for (int i = 0; i < down[v].size; i++) {
+                int u = down[v].other[i];
+                out[u].remove(v);
+                contractedNeighbors[u]++;
+                level[u] = Math.max(level[u], level[v] + 1);
+            }
+            contracted[v] = true;
+        }
+
+        /**
+         * Counts, and optionally adds, the shortcuts contracting v requires.
+         */
+        int shortcuts(int v, boolean add, int settleLimit) {
+            int count = 0;
+            EdgeList ins = in[v];
+            EdgeList outs = out[v];
+            if (outs.size == 0) return 0;
+            for (int i = 0; i < ins.size; i++) {
+                int u = ins.other[i];
+                int maxLength = 0;
+                for (int j = 0; j < outs.size; j++)
+                    if (outs.other[j] != u)
+                        maxLength = Math.max(maxLength, ins.weight[i] + outs.weight[j]);
+                witnessSearch(u, v, maxLength, settleLimit);
+                for (int j = 0; j < outs.size; j++) {
+                    int x = outs.other[j];
+                    if (x == u) continue;
+                    int length = ins.weight[i] + outs.weight[j];
+                    if (dist[x] > length) {
+                        count++;
+                        if (add) {
+                            out[u].put(x, length, v);
+                            in[x].put(u, length, v);
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Dijkstra from u in the remaining graph without v, up to maxLength or until
+         * settleLimit vertices are settled. Vertices it cannot reach in time are treated
+         * as having no witness, which only costs an unneeded shortcut.
+         */
+        void witnessSearch(int u, int v, int maxLength, int settleLimit) {
+            for (int i = 0; i < touchedCount; i++)
+                dist[touched[i]] = ShortestPathSearch.INFINITY;
+            touchedCount = 0;
+            heap.clear();
+            dist[u] = 0;
+            touched[touchedCount++] = u;
+            heap.add(u, 0);
+            int settled = 0;
+            while (!heap.isEmpty() && heap.peekKey() <= maxLength && settled < settleLimit) {
+                int w = heap.poll();
+                settled++;
+                EdgeList edges = out[w];
+                for (int i = 0; i < edges.size; i++) {
+                    int x = edges.other[i];
+                    if (x == v) continue;
+                    int d = dist[w] + edges.weight[i];
+                    if (d < dist[x]) {
+                        if (dist[x] == ShortestPathSearch.INFINITY) touched[touchedCount++] = x;
+                        dist[x] = d;
+                        heap.offer(x, d);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,652 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * CsvLoader imports the Cities and railroads CSV files straight from memory-mapped
+ * windows of the file, without reading it line by line into Strings.
+ *
+ * Rows are split into fields in place: a field is only a start and end offset into the
+ * mapped bytes, numbers are parsed from those bytes without allocating, and City names
+ * in the railroads file are resolved through a table keyed by their bytes, so importing
+ * an edge allocates nothing but the edge itself. Fields may be quoted as in RFC 4180,
+ * with "" standing for a quote, so names containing commas are read correctly.
+ *
+ * Rows that cannot be imported, because a field is missing, a number does not parse or a
+ * railroad names an unknown City, are skipped and reported with their line number. The
+ * railroads file can be parsed by several threads, each taking a slice of the file that
+ * starts and ends at a line break; this requires that quoted fields do not contain line
+ * breaks. Slices are at least MIN_SLICE bytes, so small files are parsed on the calling
+ * thread without starting a pool. The edges are inserted in file order once all slices
+ * are parsed.
+ */
+public class CsvLoader {
+    private static final long WINDOW = 1L << 28; // bytes mapped at a time
+    private static final long MIN_SLICE = 1L << 20; // fewest bytes worth a thread of their own
+
+    private final List<String> problems = new ArrayList<>();
+
+    /**
+     * Returns the rows skipped by the loads so far, one message per row,
+     * each starting with the file name and line number.
+     *
+     * @return the problems found, in file order
+     */
+    public List<String> getProblems() { return Collections.unmodifiableList(problems); }
+
+    /**
+     * Inserts a City for every row of a Cities file into graph. The file needs the
+     * columns city, lat, lng, Region and population, in any order, named in its first row.
+     *
+     * @param graph the graph to insert the Cities into
+     * @param file the Cities file
+     * @return the number of Cities inserted
+     * @throws IOException if the file cannot be read or lacks a required column
+     */
+    public int loadCities(TrainSelector<City> graph, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Row row = new Row();
+            long bodyStart = readHeader(channel, row, file);
+            int name = row.column("city", file);
+            int lat = row.column("lat", file);
+            int lng = row.column("lng", file);
+            int region = row.column("region", file);
+            int pop = row.column("population", file);
+            int width = Math.max(Math.max(name, lat), Math.max(Math.max(lng, region), pop)) + 1;
+
+            int[] inserted = new int[1];
+            Chunk chunk = new Chunk(file, 2);
+            parse(channel, bodyStart, channel.size(), row, chunk, r -> {
+                if (r.fieldCount() < width) {
+                    chunk.problem(r.line(), "expected " + width + " fields but found " + r.fieldCount());
+                    return;
+                }
+                City city = new City(r.string(name), r.string(region), r.parseInt(pop), r.parseDouble(lat), r.parseDouble(lng));
+                if (graph.insertVertex(city)) inserted[0]++;
+                else chunk.problem(r.line(), "duplicate City " + city.getName());
+            });
+            chunk.report(problems, 0);
+            return inserted[0];
+        }
+    }
+
+    /**
+     * Inserts a railroad for every row of a railroads file into graph. The file needs the
+     * columns start, destination and weight, named in its first row, and the Cities must
+     * already be in graph.
+     *
+     * @param graph the graph to insert the railroads into
+     * @param file the railroads file
+     * @param threads the largest number of threads parsing the file, 1 to parse it on this thread;
+     *     fewer are used when the file is too small to be worth splitting
+     * @return the number of railroads inserted
+     * @throws IOException if the file cannot be read or lacks a required column
+     * @throws IllegalArgumentException if threads is not positive
+     */
+    public int loadRailroads(TrainSelector<City> graph, Path file, int threads) throws IOException {
+        if (threads <= 0) throw new IllegalArgumentException("Thread count must be positive");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Row header = new Row();
+            long bodyStart = readHeader(channel, header, file);
+            int start = header.column("start", file);
+            int destination = header.column("destination", file);
+            int weight = header.column("weight", file);
+            int width = Math.max(Math.max(start, destination), weight) + 1;
+
+            long[] bounds = slices(channel, bodyStart, threads);
+            int slices = bounds.length - 1;
+            Chunk[] chunks = new Chunk[slices];
+            for (int i = 0; i < slices; i++) chunks[i] = new Chunk(file, 2);
+            ExecutorService pool = slices == 1 ? null : Executors.newFixedThreadPool(slices);
+            try {
+                List<Future<?>> parsing = new ArrayList<>();
+                for (int i = 0; i < slices; i++) {
+                    Chunk chunk = chunks[i];
+                    long from = bounds[i];
+                    long to = bounds[i + 1];
+                    ParseTask task = () -> {
+                        NameTable cities = new NameTable(graph);
+                        parse(channel, from, to, new Row(), chunk, r -> {
+                            if (r.fieldCount() < width) {
+                                chunk.problem(r.line(), "expected " + width + " fields but found " + r.fieldCount());
+                                return;
+                            }
+                            City source = cities.get(r, start);
+                            City target = cities.get(r, destination);
+                            if (source == null || target == null) {
+                                chunk.problem(r.line(), "unknown City " + r.string(source == null ? start : destination));
+                                return;
+                            }
+                            int w = r.parseInt(weight);
+                            if (w < 0) {
+                                chunk.problem(r.line(), "negative weight " + w);
+                                return;
+                            }
+                            chunk.addEdge(source, target, w);
+                        });
+                        return null;
+                    };
+                    if (pool == null) task.call();
+                    else parsing.add(pool.submit(task::call));
+                }
+                for (Future<?> f : parsing) f.get();
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IOException("Could not parse " + file, e.getCause());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while parsing " + file, e);
+            }
+            catch (IOException | RuntimeException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new IOException("Could not parse " + file, e);
+            }
+            finally {
+                if (pool != null) pool.shutdown();
+            }
+
+            // insert in file order; the lines of each slice follow those of the slices before it
+            int inserted = 0;
+            long line = 0;
+            for (Chunk chunk : chunks) {
+                for (int i = 0; i < chunk.edgeCount; i++)
+                    if (graph.insertEdge(chunk.sources[i], chunk.targets[i], chunk.weights[i])) inserted++;
+                chunk.report(problems, line);
+                line += chunk.lines;
+            }
+            return inserted;
+        }
+    }
+
+    /**
+     * Reads any CSV file whose first row names its columns, for imports other than Cities
+     * and railroads, such as timetables. reader is given the header row once, to look up
+     * its columns, and then every other row in file order. A row that reader rejects by
+     * throwing IllegalArgumentException is skipped and reported like any malformed row.
+     *
+     * @param file the file to read
+     * @param reader the handler of the rows
+     * @throws IOException if the file cannot be read, or reader rejects the header
+     */
+    void readTable(Path file, TableReader reader) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Row row = new Row();
+            long bodyStart = readHeader(channel, row, file);
+            reader.header(row, file);
+            Chunk chunk = new Chunk(file, 2);
+            parse(channel, bodyStart, channel.size(), row, chunk, reader::row);
+            chunk.report(problems, 0);
+        }
+    }
+
+    /**
+     * Handles the rows of a file read by readTable.
+     */
+    interface TableReader {
+        void header(Row header, Path file) throws IOException;
+
+        void row(Row row);
+    }
+
+    /**
+     * Parsing of one slice, run either on this thread or on the pool.
+     */
+    private interface ParseTask {
+        Object call() throws Exception;
+    }
+
+    /**
+     * Parses the first row into row and returns the offset of the second.
+     */
+    private static long readHeader(FileChannel channel, Row row, Path file) throws IOException {
+        long[] next = new long[1];
+        Chunk chunk = new Chunk(file, 1);
+        parse(channel, 0, channel.size(), row, chunk, r -> {
+            r.keepHeader();
+            next[0] = r.rowEnd;
+            throw StopParsing.INSTANCE;
+        });
+        if (row.header == null) throw new IOException(file + " is empty");
+        return next[0];
+    }
+
+    /**
+     * Splits [from, size) into up to count slices that each start at the beginning of a line.
+     */
+    private static long[] slices(FileChannel channel, long from, int count) throws IOException {
+        long size = channel.size();
+        count = (int) Math.max(1, Math.min(count, (size - from) / MIN_SLICE));
+        long[] bounds = new long[count + 1];
+        bounds[0] = from;
+        int n = 1;
+        for (int i = 1; i < count; i++) {
+            long guess = from + (size - from) * i / count;
+            if (guess <= bounds[n - 1]) continue;
+            long lineStart = nextLine(channel, guess, size);
+            if (lineStart >= size || lineStart <= bounds[n - 1]) continue;
+            bounds[n++] = lineStart;
+        }
+        bounds[n++] = size;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+        while (position < size) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(1 << 16, size - position));
+            for (int i = 0; i < buffer.limit(); i++)
+                if (buffer.get(i) == '\n') return position + i + 1;
+            position += buffer.limit();
+        }
+        return size;
+    }
+
+    /**
+     * Thrown by a row handler to end parsing early.
+     */
+    private static final class StopParsing extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final StopParsing INSTANCE = new StopParsing();
+
+        private StopParsing() { super(null, null, false, false); }
+    }
+
+    /**
+     * Handles one parsed row.
+     */
+    private interface RowHandler {
+        void row(Row row);
+    }
+
+    /**
+     * Splits the bytes [from, to) of channel into rows and hands each non-empty one to handler.
+     * The file is mapped in windows; a row cut off by the end of a window is parsed again
+     * from the start of the next one. A row the handler rejects with IllegalArgumentException,
+     * such as a number field that does not parse, is skipped and reported.
+     */
+    private static void parse(FileChannel channel, long from, long to, Row row, Chunk chunk, RowHandler handler) throws IOException {
+        long position = from;
+        while (position < to) {
+            long length = Math.min(WINDOW, to - position);
+            boolean last = position + length == to;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            row.buffer = buffer;
+            row.base = position;
+            int p = 0;
+            int limit = (int) length;
+            while (p < limit) {
+                int end = row.split(p, limit, last);
+                if (end == -1) break; // row continues past this window
+                chunk.lines += row.lineBreaks;
+                row.lineNumber = chunk.firstLine + chunk.lines - row.lineBreaks;
+                row.rowEnd = position + end;
+                if (!row.isBlank()) {
+                    try {
+                        handler.row(row);
+                    }
+                    catch (IllegalArgumentException e) {
+                        chunk.problem(row.line(), e.getMessage());
+                    }
+                    catch (StopParsing e) {
+                        return;
+                    }
+                }
+                p = end;
+            }
+            if (p == 0 && !last) throw new IOException("Row longer than " + WINDOW + " bytes at byte " + position);
+            position += p;
+        }
+    }
+
+    /**
+     * Row is a view of one CSV row in a mapped buffer: the start and end of each field,
+     * plus parsers that read a field without creating a String.
+     */
+    static final class Row {
+        private MappedByteBuffer buffer;
+        private long base;          // file offset of buffer
+        private long rowEnd;        // file offset after this row
+        private int lineBreaks;     // line breaks in this row, including its last one
+        private long lineNumber;    // line of this row, relative to its slice
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private boolean[] quoted = new boolean[16];
+        private int count;
+        private byte[] scratch = new byte[64];
+        private String[] header;
+
+        int fieldCount() { return count; }
+
+        long line() { return lineNumber; }
+
+        /**
+         * Splits the row that starts at p. Returns the buffer offset after the row,
+         * or -1 if the row does not end before limit and more of the file follows.
+         */
+        int split(int p, int limit, boolean last) {
+            count = 0;
+            lineBreaks = 0;
+            while (true) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, 2 * count);
+                    ends = Arrays.copyOf(ends, 2 * count);
+                    quoted = Arrays.copyOf(quoted, 2 * count);
+                }
+                boolean isQuoted = p < limit && buffer.get(p) == '"';
+                int start;
+                if (isQuoted) {
+                    start = ++p;
+                    while (true) {
+                        if (p >= limit) {
+                            if (!last) return -1;
+                            break; // unterminated quote at the end of the file
+                        }
+                        byte b = buffer.get(p);
+                        if (b == '"') {
+                            if (p + 1 < limit && buffer.get(p + 1) == '"') { p += 2; continue; }
+                            if (p + 1 >= limit && !last) return -1;
+                            break;
+                        }
+                        if (b == '\n') lineBreaks++;
+                        p++;
+                    }
+                    starts[count] = start;
+                    ends[count] = Math.min(p, limit);
+                    quoted[count++] = true;
+                    if (p < limit) p++; // closing quote
+                    while (p < limit && buffer.get(p) != ',' && buffer.get(p) != '\n') p++; // ignore text after the quote
+                }
+                else {
+                    start = p;
+                    while (p < limit) {
+                        byte b = buffer.get(p);
+                        if (b == ',' || b == '\n') break;
+                        p++;
+                    }
+                    int end = p;
+                    if (end > start && buffer.get(end - 1) == '\r') end--;
+                    starts[count] = start;
+                    ends[count] = end;
+                    quoted[count++] = false;
+                }
+                if (p >= limit) {
+                    if (!last) return -1;
+                    lineBreaks++;
+                    return limit;
+                }
+                if (buffer.get(p) == '\n') {
+                    lineBreaks++;
+                    return p + 1;
+                }
+                p++; // comma
+            }
+        }
+
+        boolean isBlank() {
+            return count == 1 && !quoted[0] && ends[0] == starts[0];
+        }
+
+        /**
+         * Returns field i as a String, without surrounding spaces and with "" unescaped.
+         */
+        String string(int i) {
+            int start = starts[i];
+            int end = ends[i];
+            if (!quoted[i]) {
+                while (start < end && buffer.get(start) == ' ') start++;
+                while (end > start && buffer.get(end - 1) == ' ') end--;
+            }
+            if (scratch.length < end - start) scratch = new byte[2 * (end - start)];
+            int length = 0;
+            for (int p = start; p < end; p++) {
+                byte b = buffer.get(p);
+                scratch[length++] = b;
+                if (quoted[i] && b == '"') p++; // "" stands for one quote
+            }
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Parses field i as a decimal int.
+         */
+        int parseInt(int i) {
+            int p = starts[i];
+            int end = ends[i];
+            while (p < end && buffer.get(p) == ' ') p++;
+            while (end > p && buffer.get(end - 1) == ' ') end--;
+            boolean negative = p < end && buffer.get(p) == '-';
+            if (negative || (p < end && buffer.get(p) == '+')) p++;
+            if (p == end) throw new NumberFormatException("field " + (i + 1) + " is not a number");
+            long value = 0;
+            for (; p < end; p++) {
+                int digit = buffer.get(p) - '0';
+                if (digit < 0 || digit > 9) throw new NumberFormatException("field " + (i + 1) + " is not a whole number: " + string(i));
+                value = value * 10 + digit;
+                if (value > Integer.MAX_VALUE + 1L) throw new NumberFormatException("field " + (i + 1) + " is out of range: " + string(i));
+            }
+            if (negative) value = -value;
+            if (value > Integer.MAX_VALUE) throw new NumberFormatException("field " + (i + 1) + " is out of range: " + string(i));
+            return (int) value;
+        }
+
+        /**
+         * Parses field i as a decimal number. Numbers with at most 15 significant digits
+         * and a plain decimal point, which covers coordinates, are parsed from the bytes;
+         * anything else falls back to Double.parseDouble.
+         */
+        double parseDouble(int i) {
+            int p = starts[i];
+            int end = ends[i];
+            while (p < end && buffer.get(p) == ' ') p++;
+            while (end > p && buffer.get(end - 1) == ' ') end--;
+            boolean negative = p < end && buffer.get(p) == '-';
+            if (negative || (p < end && buffer.get(p) == '+')) p++;
+            long mantissa = 0;
+            int digits = 0;
+            int scale = 0;
+            boolean point = false;
+            boolean fast = p < end;
+            for (; p < end && fast; p++) {
+                byte b = buffer.get(p);
+                if (b == '.' && !point) {
+                    point = true;
+                }
+                else if (b >= '0' && b <= '9') {
+                    if (mantissa != 0 || b != '0') digits++;
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (point) scale++;
+                    fast = digits <= 15;
+                }
+                else {
+                    fast = false;
+                }
+            }
+            if (fast && scale < POWERS_OF_TEN.length) {
+                // exact: mantissa < 2^53 and 10^scale is exact, so one division rounds correctly
+                double value = mantissa / POWERS_OF_TEN[scale];
+                return negative ? -value : value;
+            }
+            try {
+                return Double.parseDouble(string(i));
+            }
+            catch (NumberFormatException e) {
+                throw new NumberFormatException("field " + (i + 1) + " is not a number: " + string(i));
+            }
+        }
+
+        /**
+         * Keeps the fields of this row as the column names.
+         */
+        void keepHeader() {
+            header = new String[count];
+            for (int i = 0; i < count; i++)
+                header[i] = string(i).toLowerCase(Locale.ROOT);
+            if (count > 0 && header[0].startsWith("\uFEFF")) header[0] = header[0].substring(1); // byte order mark
+        }
+
+        /**
+         * Returns the index of the header column called name.
+         */
+        int column(String name, Path file) throws IOException {
+            for (int i = 0; i < header.length; i++)
+                if (header[i].equals(name)) return i;
+            throw new IOException(file + " has no " + name + " column");
+        }
+
+        /**
+         * Returns the index of the header column called name, or -1 if there is none.
+         */
+        int optionalColumn(String name) {
+            for (int i = 0; i < header.length; i++)
+                if (header[i].equals(name)) return i;
+            return -1;
+        }
+
+        /**
+         * Returns the hash of the bytes of field i, without surrounding spaces.
+         */
+        int hash(int i) {
+            int h = 1;
+            for (int p = trimmedStart(i), end = trimmedEnd(i); p < end; p++)
+                h = 31 * h + buffer.get(p);
+            return h;
+        }
+
+        /**
+         * Returns whether field i holds exactly key, ignoring surrounding spaces.
+         */
+        boolean matches(int i, byte[] key) {
+            int start = trimmedStart(i);
+            int end = trimmedEnd(i);
+            if (end - start != key.length) return false;
+            for (int k = 0; k < key.length; k++)
+                if (buffer.get(start + k) != key[k]) return false;
+            return true;
+        }
+
+        byte[] bytes(int i) {
+            int start = trimmedStart(i);
+            byte[] key = new byte[trimmedEnd(i) - start];
+            for (int k = 0; k < key.length; k++) key[k] = buffer.get(start + k);
+            return key;
+        }
+
+        private int trimmedStart(int i) {
+            int p = starts[i];
+            while (p < ends[i] && buffer.get(p) == ' ') p++;
+            return p;
+        }
+
+        private int trimmedEnd(int i) {
+            int end = ends[i];
+            while (end > starts[i] && buffer.get(end - 1) == ' ') end--;
+            return end;
+        }
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * NameTable resolves the City named by a field from the bytes of the field. Each
+     * distinct name is decoded and looked up in the graph once; after that, resolving it
+     * only hashes and compares bytes.
+     */
+    private static final class NameTable {
+        private final TrainSelector<City> graph;
+        private byte[][] keys = new byte[64][];
+        private City[] cities = new City[64];
+        private int size;
+
+        NameTable(TrainSelector<City> graph) { this.graph = graph; }
+
+        City get(Row row, int field) {
+            int mask = keys.length - 1;
+            int slot = row.hash(field) & mask;
+            while (keys[slot] != null) {
+                if (row.matches(field, keys[slot])) return cities[slot];
+                slot = (slot + 1) & mask;
+            }
+            City city = graph.getCity(row.string(field));
+            keys[slot] = row.bytes(field);
+            cities[slot] = city;
+            if (++size * 2 > keys.length) grow();
+            return city;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            City[] oldCities = cities;
+            keys = new byte[2 * oldKeys.length][];
+            cities = new City[keys.length];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) continue;
+                int h = 1;
+                for (byte b : oldKeys[i]) h = 31 * h + b;
+                int slot = h & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                cities[slot] = oldCities[i];
+            }
+        }
+    }
+
+    /**
+     * Chunk collects what parsing one slice of a file produced: its edges, its
+     * problems and the number of lines it spans.
+     */
+    private static final class Chunk {
+        private final Path file;
+        private final long firstLine;   // line number of the first line of the file part this chunk parses
+        private long lines;             // lines parsed so far
+        private final List<Long> problemLines = new ArrayList<>();
+        private final List<String> problemMessages = new ArrayList<>();
+        City[] sources = new City[16];
+        City[] targets = new City[16];
+        int[] weights = new int[16];
+        int edgeCount;
+
+        Chunk(Path file, long firstLine) {
+            this.file = file;
+            this.firstLine = firstLine;
+        }
+
+        void problem(long line, String message) {
+            problemLines.add(line);
+            problemMessages.add(message);
+        }
+
+        void addEdge(City source, City target, int weight) {
+            if (edgeCount == sources.length) {
+                sources = Arrays.copyOf(sources, 2 * edgeCount);
+                targets = Arrays.copyOf(targets, 2 * edgeCount);
+                weights = Arrays.copyOf(weights, 2 * edgeCount);
+            }
+            sources[edgeCount] = source;
+            targets[edgeCount] = target;
+            weights[edgeCount++] = weight;
+        }
+
+        /**
+         * Adds the problems of this chunk to problems, with offset added to every line number.
+         */
+        void report(List<String> problems, long offset) {
+            for (int i = 0; i < problemLines.size(); i++)
+                problems.add(file.getFileName() + ":" + (problemLines.get(i) + offset) + ": " + problemMessages.get(i));
+        }
+    }
+}
@@ -0,0 +1,622 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * CustomizableRoutePlanner answers shortest path queries on a TrainSelector with
+ * Customizable Route Planning, after Delling, Goldberg, Pajor and Werneck. Preprocessing
+ * is split into a slow part that only depends on the shape of the network and a fast part,
+ * customization, that only depends on the edge weights.
+ *
+ * The slow part partitions the vertices into cells on several levels. A cell of the first
+ * level holds about cellSize Cities of one region (City.getRegion) that are connected inside
+ * the region. Each higher level groups about FANOUT neighbouring cells of the level below,
+ * so every cell is a union of cells one level down. A vertex with an edge to
+ * or from another cell of a level is a boundary vertex of its cell on that level.
+ *
+ * Customization computes a clique for every cell: the shortest distance between each pair
+ * of its boundary vertices without leaving the cell. On the first level the search follows
+ * the original edges; on higher levels it follows the cliques of the level below and the
+ * edges between those subcells. A query runs Dijkstra's algorithm on an overlay: the
+ * original edges inside the first level cells of the start and the destination, and
+ * elsewhere the cliques of the highest level whose cell contains neither. Clique edges on
+ * the result are unpacked into original edges by searching their cell again.
+ *
+ * The planner listens to the graph. A weight change, closure or reopening of an existing
+ * rail line only marks the lowest cell containing both of its ends. The next query, or an
+ * explicit call to customize, recomputes the marked cells one level at a time, with the
+ * cells of a level spread over all cores, and moves up to a parent cell only when a clique
+ * below it actually changed. Inserting or removing a City, or a rail line between Cities
+ * that were not connected before, changes the partition, which is then rebuilt.
+ *
+ * Queries are thread safe, every thread gets its own search state, but like any other
+ * reader of a TrainSelector they must not run while the graph is being changed.
+ */
+public class CustomizableRoutePlanner implements GraphListener<City> {
+    private static final int INFINITY = ShortestPathSearch.INFINITY;
+    public static final int DEFAULT_CELL_SIZE = 128;
+    private static final int FANOUT = 8;      // cells of one level grouped into a cell of the next
+    private static final int MAX_LEVELS = 4;
+
+    private final TrainSelector<City> graph;
+    private final int cellSize;
+    private volatile Overlay overlay;
+    private volatile boolean pending;         // cells are marked or the partition must be rebuilt
+    private boolean rebuild;
+    // via of a vertex is the level of the clique edge from its pred, -1 for an original edge
+    private final ThreadLocal<SearchState> searches = ThreadLocal.withInitial(() -> new SearchState(0, true));
+
+    /**
+     * Partitions graph with cells of about DEFAULT_CELL_SIZE Cities, customizes it, and
+     * starts listening to its changes.
+     *
+     * @param graph the graph to plan routes on
+     * @throws NullPointerException if graph is null
+     */
+    public CustomizableRoutePlanner(TrainSelector<City> graph) {
+        this(graph, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Partitions graph with cells of about cellSize Cities on the first level, customizes
+     * it, and starts listening to its changes.
+     *
+     * @param graph the graph to plan routes on
+     * @param cellSize the number of Cities to aim for in a first level cell
+     * @throws NullPointerException if graph is null
+     * @throws IllegalArgumentException if cellSize is less than 1
+     */
+    public CustomizableRoutePlanner(TrainSelector<City> graph, int cellSize) {
+        if (graph == null) throw new NullPointerException("Cannot plan routes on a null graph");
+        if (cellSize < 1) throw new IllegalArgumentException("A cell must hold at least one City");
+        this.graph = graph;
+        this.cellSize = cellSize;
+        this.overlay = new Overlay(graph.compact(), cellSize);
+        this.pending = true;
+        customize();
+        graph.addGraphListener(this);
+    }
+
+    /**
+     * Stops listening to the graph. Later changes are no longer reflected in the answers.
+     */
+    public void close() {
+        graph.removeGraphListener(this);
+    }
+
+    /**
+     * Returns the shortest path between start and end.
+     *
+     * @param start the starting City of the path
+     * @param end the destination City of the path
+     * @return list of Cities in order on the shortest path, including both start and end
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when start or end is not in the graph
+     */
+    public List<City> shortestPath(City start, City end) {
+        Overlay o = prepared();
+        SearchState search = searches.get().fit(o.cities.length);
+        int s = o.vertexOf(start);
+        int t = o.vertexOf(end);
+        if (query(o, search, s, t) == INFINITY) throw new NoSuchElementException("No path exists");
+
+        // collect the overlay path before its edges are unpacked with the same search arrays
+        int steps = 0;
+        for (int v = t; v != s; v = search.pred[v]) steps++;
+        int[] from = new int[steps];
+        int[] to = new int[steps];
+        int[] via = new int[steps];
+        for (int v = t, i = steps - 1; v != s; v = search.pred[v], i--) {
+            from[i] = search.pred[v];
+            to[i] = v;
+            via[i] = search.via[v];
+        }
+        ArrayList<Integer> vertices = new ArrayList<>();
+        vertices.add(s);
+        for (int i = 0; i < steps; i++) {
+            if (via[i] == -1) vertices.add(to[i]);
+            else unpack(o, search, via[i], from[i], to[i], vertices);
+        }
+        List<City> path = new ArrayList<>(vertices.size());
+        for (int v : vertices) path.add(o.cities[v]);
+        return path;
+    }
+
+    /**
+     * Returns the cost of the shortest path between start and end.
+     *
+     * @param start the starting City of the path
+     * @param end the destination City of the path
+     * @return the cost of the shortest path between start and end
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when start or end is not in the graph
+     */
+    public int getPathCost(City start, City end) {
+        Overlay o = prepared();
+        int d = query(o, searches.get().fit(o.cities.length), o.vertexOf(start), o.vertexOf(end));
+        if (d == INFINITY) throw new NoSuchElementException("No path exists");
+        return d;
+    }
+
+    /**
+     * Brings the cliques up to date with the changes made to the graph since the last
+     * customization, rebuilding the partition first if the network changed shape. Queries
+     * do this on their own; calling it right after a batch of changes keeps the work out
+     * of the next query.
+     *
+     * @return the number of cells whose clique was recomputed
+     */
+    public synchronized int customize() {
+        if (!pending) return 0;
+        if (rebuild) {
+            overlay = new Overlay(graph.compact(), cellSize);
+            rebuild = false;
+        }
+        Overlay o = overlay;
+        int count = 0;
+        for (int level = 0; level < o.levels; level++) {
+            boolean[] marked = o.dirty[level];
+            int size = 0;
+            for (boolean m : marked) if (m) size++;
+            int[] cells = new int[size];
+            for (int c = 0, i = 0; c < marked.length; c++) {
+                if (!marked[c]) continue;
+                cells[i++] = c;
+                marked[c] = false;
+            }
+            boolean[] changed = new boolean[size];
+            final int l = level;
+            IntStream.range(0, size).parallel().forEach(i -> changed[i] = customizeCell(o, l, cells[i]));
+            count += size;
+            if (level + 1 < o.levels) {
+                for (int i = 0; i < size; i++)
+                    if (changed[i]) o.dirty[level + 1][o.parent[level][cells[i]]] = true;
+            }
+        }
+        pending = false;
+        return count;
+    }
+
+    /**
+     * Returns the number of levels of the partition.
+     *
+     * @return the number of levels
+     */
+    public int getLevelCount() { return prepared().levels; }
+
+    /**
+     * Returns the number of cells on a level of the partition.
+     *
+     * @param level the level, from 0 (the smallest cells) to getLevelCount() - 1
+     * @return the number of cells on level
+     * @throws IndexOutOfBoundsException if there is no such level
+     */
+    public int getCellCount(int level) {
+        Overlay o = prepared();
+        if (level < 0 || level >= o.levels) throw new IndexOutOfBoundsException("No level " + level);
+        return o.dirty[level].length;
+    }
+
+    public synchronized void vertexInserted(City city) {
+        rebuild = true;
+        pending = true;
+    }
+
+    public synchronized void vertexRemoved(City city) {
+        rebuild = true;
+        pending = true;
+    }
+
+    public synchronized void edgeChanged(City source, City target, int oldWeight, int newWeight) {
+        if (rebuild) return;
+        Overlay o = overlay;
+        Integer u = o.index.get(source);
+        Integer v = o.index.get(target);
+        int e = u == null || v == null ? -1 : o.findEdge(u, v);
+        if (e == -1) { // a new rail line, the partition no longer fits the network
+            rebuild = true;
+            pending = true;
+            return;
+        }
+        if (o.weights[e] == newWeight) return;
+        o.weights[e] = newWeight;
+        for (int level = 0; level < o.levels; level++) {
+            int c = o.cellOf[level][u];
+            if (c == o.cellOf[level][v]) { // the lowest cell holding both ends, cells above follow if it changes
+                o.dirty[level][c] = true;
+                pending = true;
+                return;
+            }
+        }
+    }
+
+    private Overlay prepared() {
+        if (pending) customize();
+        return overlay;
+    }
+
+    /**
+     * Recomputes the clique of cell on level and tells whether any distance in it changed.
+     */
+    private boolean customizeCell(Overlay o, int level, int cell) {
+        SearchState search = searches.get().fit(o.cities.length);
+        int first = o.boundaryOffsets[level][cell];
+        int k = o.boundaryOffsets[level][cell + 1] - first;
+        int[] boundary = o.boundary[level];
+        int[] matrix = o.matrix[level];
+        int base = o.matrixOffsets[level][cell];
+        boolean changed = false;
+        for (int i = 0; i < k; i++) {
+            cellSearch(o, search, level, cell, boundary[first + i], -1);
+            for (int j = 0; j < k; j++) {
+                int b = boundary[first + j];
+                int d = search.isReached(b) ? search.dist[b] : INFINITY;
+                if (matrix[base + i * k + j] != d) {
+                    matrix[base + i * k + j] = d;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source without leaving cell on level, until target is
+     * settled or, when target is -1, every boundary vertex of the cell is. The first level
+     * follows the original edges; higher levels follow the cliques of the subcells and the
+     * edges between subcells.
+     */
+    private static void cellSearch(Overlay o, SearchState search, int level, int cell, int source, int target) {
+        IndexedMinHeap heap = search.heap;
+        int[] outer = o.cellOf[level];
+        int[] inner = level > 0 ? o.cellOf[level - 1] : null;
+        search.start(source);
+        int[] position = o.boundaryIndex[level];
+        int left = o.boundaryOffsets[level][cell + 1] - o.boundaryOffsets[level][cell];
+        while (!heap.isEmpty()) {
+            int x = heap.poll();
+            if (x == target || (target == -1 && position[x] != -1 && --left == 0)) {
+                heap.clear();
+                return;
+            }
+            int dx = search.dist[x];
+            int sub = level > 0 ? inner[x] : -1;
+            // a clique is closed under shortest paths: a vertex reached through it has nothing to add to it
+            if (level > 0 && search.via[x] != level - 1) relaxClique(o, search, level - 1, sub, x, dx);
+            for (int e = o.offsets[x], end = o.offsets[x + 1]; e < end; e++) {
+                int y = o.targets[e];
+                int w = o.weights[e];
+                if (w == INFINITY || outer[y] != cell || (level > 0 && inner[y] == sub)) continue;
+                search.relax(x, y, dx + w, -1);
+            }
+        }
+    }
+
+    /**
+     * Runs Dijkstra's algorithm on the overlay of s and t and returns the distance to t.
+     */
+    private static int query(Overlay o, SearchState search, int s, int t) {
+        IndexedMinHeap heap = search.heap;
+        search.start(s);
+        while (!heap.isEmpty()) {
+            int x = heap.poll();
+            if (x == t) {
+                heap.clear();
+                return search.dist[x];
+            }
+            int dx = search.dist[x];
+
+            // the highest level on which x is in a cell apart from both s and t, -1 if none
+            int level = o.levels - 1;
+            while (level >= 0 && (o.cellOf[level][x] == o.cellOf[level][s] || o.cellOf[level][x] == o.cellOf[level][t]))
+                level--;
+            int cell = level >= 0 ? o.cellOf[level][x] : -1;
+            if (level >= 0 && search.via[x] != level) relaxClique(o, search, level, cell, x, dx);
+            for (int e = o.offsets[x], end = o.offsets[x + 1]; e < end; e++) {
+                int y = o.targets[e];
+                int w = o.weights[e];
+                if (w == INFINITY || (level >= 0 && o.cellOf[level][y] == cell)) continue;
+                search.relax(x, y, dx + w, -1);
+            }
+        }
+        return INFINITY;
+    }
+
+    /**
+     * Relaxes the clique edges from boundary vertex x of cell on level.
+     */
+    private static void relaxClique(Overlay o, SearchState search, int level, int cell, int x, int dx) {
+        int first = o.boundaryOffsets[level][cell];
+        int k = o.boundaryOffsets[level][cell + 1] - first;
+        int i = o.boundaryIndex[level][x];
+        int row = o.matrixOffsets[level][cell] + i * k;
+        int[] matrix = o.matrix[level];
+        for (int j = 0; j < k; j++) {
+            int w = matrix[row + j];
+            if (j == i || w == INFINITY) continue;
+            search.relax(x, o.boundary[level][first + j], dx + w, level);
+        }
+    }
+
+    /**
+     * Appends the original vertices the clique edge from a to b on level stands for,
+     * excluding a itself.
+     */
+    private static void unpack(Overlay o, SearchState search, int level, int a, int b, List<Integer> vertices) {
+        cellSearch(o, search, level, o.cellOf[level][a], a, b);
+        int steps = 0;
+        for (int v = b; v != a; v = search.pred[v]) steps++;
+        int[] from = new int[steps];
+        int[] to = new int[steps];
+        int[] via = new int[steps];
+        for (int v = b, i = steps - 1; v != a; v = search.pred[v], i--) {
+            from[i] = search.pred[v];
+            to[i] = v;
+            via[i] = search.via[v];
+        }
+        for (int i = 0; i < steps; i++) {
+            if (via[i] == -1) vertices.add(to[i]);
+            else unpack(o, search, via[i], from[i], to[i], vertices);
+        }
+    }
+
+    /**
+     * Overlay is the partition of one version of the network's shape, with the current
+     * weights of its edges and the cliques of its cells. It is replaced as a whole when
+     * the shape changes.
+     */
+    private static final class Overlay {
+        final City[] cities;
+        final HashMap<City, Integer> index;
+        final int[] offsets;
+        final int[] targets;
+        final int[] weights;         // kept up to date by edgeChanged, INFINITY for closed lines
+        final int levels;
+        final int[][] cellOf;        // cellOf[level][v]: the cell of v on level
+        final int[][] parent;        // parent[level][c]: the cell on level + 1 containing cell c
+        final int[][] boundaryOffsets;
+        final int[][] boundary;      // boundary vertices of each cell, grouped by cell
+        final int[][] boundaryIndex; // position of v among the boundary vertices of its cell, -1 if inside
+        final int[][] matrixOffsets;
+        final int[][] matrix;        // clique of each cell, row major over its boundary vertices
+        final boolean[][] dirty;     // cells whose clique must be recomputed
+
+        Overlay(CompactGraph<City> g, int cellSize) {
+            int n = g.getVertexCount();
+            this.cities = new City[n];
+            this.index = new HashMap<>(n * 2);
+            for (int v = 0; v < n; v++) {
+                cities[v] = g.dataAt(v);
+                index.put(cities[v], v);
+            }
+            this.offsets = Arrays.copyOf(g.offsets, n + 1);
+            this.targets = Arrays.copyOf(g.targets, offsets[n]);
+            this.weights = Arrays.copyOf(g.weights, offsets[n]);
+            CompactGraph<City> r = g.reverse();
+
+            // first level: Cities of one region, then ever larger groups of neighbouring cells
+            int[] identity = new int[n];
+            int[] ones = new int[n];
+            int[] region = new int[n];
+            HashMap<String, Integer> regions = new HashMap<>();
+            for (int v = 0; v < n; v++) {
+                identity[v] = v;
+                ones[v] = 1;
+                Integer id = regions.get(cities[v].getRegion());
+                if (id == null) regions.put(cities[v].getRegion(), id = regions.size());
+                region[v] = id;
+            }
+            ArrayList<int[]> cells = new ArrayList<>();
+            ArrayList<Integer> counts = new ArrayList<>();
+            int[] first = group(identity, n, ones, region, cellSize, cellSize);
+            cells.add(first);
+            counts.add(count(first));
+            long limit = cellSize;
+            while (cells.size() < MAX_LEVELS && counts.get(counts.size() - 1) > FANOUT) {
+                int[] below = cells.get(cells.size() - 1);
+                int c = counts.get(counts.size() - 1);
+                int[] size = new int[c];
+                for (int v = 0; v < n; v++) size[below[v]]++;
+                limit *= FANOUT;
+                int[] group = group(below, c, size, null, FANOUT, limit);
+                int groups = count(group);
+                if (groups >= c) break; // nothing left to merge
+                int[] above = new int[n];
+                for (int v = 0; v < n; v++) above[v] = group[below[v]];
+                cells.add(above);
+                counts.add(groups);
+            }
+
+            this.levels = cells.size();
+            this.cellOf = cells.toArray(new int[levels][]);
+            this.parent = new int[levels][];
+            this.boundaryOffsets = new int[levels][];
+            this.boundary = new int[levels][];
+            this.boundaryIndex = new int[levels][];
+            this.matrixOffsets = new int[levels][];
+            this.matrix = new int[levels][];
+            this.dirty = new boolean[levels][];
+            for (int level = 0; level < levels; level++) {
+                int[] cell = cellOf[level];
+                int c = counts.get(level);
+                if (level + 1 < levels) {
+                    parent[level] = new int[c];
+                    for (int v = 0; v < n; v++) parent[level][cell[v]] = cellOf[level + 1][v];
+                }
+
+                int[] offsetsOfCell = new int[c + 1];
+                boolean[] isBoundary = new boolean[n];
+                for (int v = 0; v < n; v++) {
+                    isBoundary[v] = crosses(g, cell, v) || crosses(r, cell, v);
+                    if (isBoundary[v]) offsetsOfCell[cell[v] + 1]++;
+                }
+                for (int i = 0; i < c; i++) offsetsOfCell[i + 1] += offsetsOfCell[i];
+                int[] vertices = new int[offsetsOfCell[c]];
+                int[] position = new int[n];
+                Arrays.fill(position, -1);
+                int[] fill = Arrays.copyOf(offsetsOfCell, c);
+                for (int v = 0; v < n; v++) {
+                    if (!isBoundary[v]) continue;
+                    position[v] = fill[cell[v]] - offsetsOfCell[cell[v]];
+                    vertices[fill[cell[v]]++] = v;
+                }
+                int[] matrixOfCell = new int[c + 1];
+                for (int i = 0; i < c; i++) {
+                    int k = offsetsOfCell[i + 1] - offsetsOfCell[i];
+                    matrixOfCell[i + 1] = matrixOfCell[i] + k * k;
+                }
+                boundaryOffsets[level] = offsetsOfCell;
+                boundary[level] = vertices;
+                boundaryIndex[level] = position;
+                matrixOffsets[level] = matrixOfCell;
+                matrix[level] = new int[matrixOfCell[c]];
+                dirty[level] = new boolean[c];
+                Arrays.fill(dirty[level], true);
+            }
+        }
+
+        int vertexOf(City city) {
+            if (city == null) throw new NullPointerException("NullPointerException: Start or End is null");
+            Integer v = index.get(city);
+            if (v == null) throw new NoSuchElementException("No path exists");
+            return v;
+        }
+
+        int findEdge(int u, int v) {
+            for (int e = offsets[u]; e < offsets[u + 1]; e++)
+                if (targets[e] == v) return e;
+            return -1;
+        }
+
+        /**
+         * Groups units, the vertices or the cells of the level below, into connected groups
+         * of at most maxUnits units and maxWeight Cities, never joining units with different
+         * keys. Groups grow breadth first, each seeded next to the groups before it so they
+         * leave few holes; a group left less than half full is then merged into its smallest
+         * neighbouring group, allowing it to grow half again over the limits. Returns the
+         * group of every unit.
+         */
+        private int[] group(int[] unit, int units, int[] weight, int[] key, int maxUnits, long maxWeight) {
+            int[][] adjacent = adjacency(offsets, targets, unit, units);
+            int[] group = new int[units];
+            Arrays.fill(group, -1);
+            int[] groupUnits = new int[units];
+            long[] groupWeight = new long[units];
+            int[] queue = new int[units];
+            ArrayDeque<Integer> frontier = new ArrayDeque<>(); // units next to the groups grown so far
+            int groups = 0;
+            for (int next = 0; next < units; ) {
+                int s;
+                if (!frontier.isEmpty()) s = frontier.poll();
+                else s = next++;
+                if (group[s] != -1) continue;
+                int head = 0;
+                int tail = 0;
+                long w = weight[s];
+                group[s] = groups;
+                queue[tail++] = s;
+                while (head < tail && tail < maxUnits) {
+                    int u = queue[head++];
+                    for (int i = adjacent[0][u]; i < adjacent[0][u + 1] && tail < maxUnits; i++) {
+                        int x = adjacent[1][i];
+                        if (group[x] != -1 || (key != null && key[x] != key[s]) || w + weight[x] > maxWeight) continue;
+                        group[x] = groups;
+                        queue[tail++] = x;
+                        w += weight[x];
+                    }
+                }
+                for (int j = 0; j < tail; j++) {
+                    int u = queue[j];
+                    for (int i = adjacent[0][u]; i < adjacent[0][u + 1]; i++)
+                        if (group[adjacent[1][i]] == -1) frontier.add(adjacent[1][i]);
+                }
+                groupUnits[groups] = tail;
+                groupWeight[groups] = w;
+                groups++;
+            }
+
+            // merge the groups left under half full, smallest first
+            int[][] between = adjacency(adjacent[0], adjacent[1], group, groups);
+            int[] root = new int[groups];
+            Integer[] order = new Integer[groups];
+            for (int a = 0; a < groups; a++) root[a] = order[a] = a;
+            int[] seed = new int[groups];
+            for (int s = units - 1; s >= 0; s--) seed[group[s]] = s;
+            Arrays.sort(order, Comparator.comparingLong(a -> groupWeight[a]));
+            for (int a : order) {
+                int ra = find(root, a);
+                if (2 * groupUnits[ra] >= maxUnits && 2 * groupWeight[ra] >= maxWeight) continue;
+                int best = -1;
+                for (int i = between[0][a]; i < between[0][a + 1]; i++) {
+                    int rb = find(root, between[1][i]);
+                    if (rb == ra || (key != null && key[seed[rb]] != key[seed[ra]])) continue;
+                    if (2 * (groupUnits[ra] + groupUnits[rb]) > 3 * maxUnits
+                            || 2 * (groupWeight[ra] + groupWeight[rb]) > 3 * maxWeight) continue;
+                    if (best == -1 || groupWeight[rb] < groupWeight[best]) best = rb;
+                }
+                if (best == -1) continue;
+                root[ra] = best;
+                groupUnits[best] += groupUnits[ra];
+                groupWeight[best] += groupWeight[ra];
+            }
+
+            // number the merged groups from 0 in order of their first unit
+            int[] number = new int[groups];
+            Arrays.fill(number, -1);
+            int next = 0;
+            for (int s = 0; s < units; s++) {
+                int r = find(root, group[s]);
+                if (number[r] == -1) number[r] = next++;
+                group[s] = number[r];
+            }
+            return group;
+        }
+
+        private static int find(int[] root, int a) {
+            while (root[a] != a) a = root[a] = root[root[a]];
+            return a;
+        }
+
+        /**
+         * Returns the adjacency {offsets, neighbours} between the labels of a graph's
+         * vertices, in both directions and without duplicates.
+         */
+        private static int[][] adjacency(int[] offsets, int[] targets, int[] label, int count) {
+            long[] pairs = new long[2 * offsets[label.length]];
+            int m = 0;
+            for (int u = 0; u < label.length; u++) {
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int a = label[u];
+                    int b = label[targets[e]];
+                    if (a == b) continue;
+                    pairs[m++] = (long) a << 32 | b;
+                    pairs[m++] = (long) b << 32 | a;
+                }
+            }
+            Arrays.sort(pairs, 0, m);
+            int[] first = new int[count + 1];
+            int[] neighbours = new int[m];
+            int size = 0;
+            for (int i = 0; i < m; i++) {
+                if (i > 0 && pairs[i] == pairs[i - 1]) continue;
+                first[(int) (pairs[i] >>> 32) + 1]++;
+                neighbours[size++] = (int) pairs[i];
+            }
+            for (int a = 0; a < count; a++) first[a + 1] += first[a];
+            return new int[][] {first, Arrays.copyOf(neighbours, size)};
+        }
+
+        private static int count(int[] cell) {
+            int count = 0;
+            for (int c : cell) count = Math.max(count, c + 1);
+            return count;
+        }
+
+        private static boolean crosses(CompactGraph<City> g, int[] cell, int v) {
+            for (int e = g.firstEdge(v); e < g.endEdge(v); e++)
+                if (cell[g.target(e)] != cell[v]) return true;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * DistanceMatrix answers getPathCost and shortestPath with table lookups in a precomputed
+ * all-pairs distance and predecessor matrix stored in a file.
+ *
+ * build runs one Dijkstra search per source vertex, in parallel, and writes each row of
+ * the matrices straight to its place in the file. open maps the file read-only with
+ * FileChannel.map instead of reading it onto the heap, so every JVM on the same host that
+ * opens the file shares the same pages of the operating system's page cache.
+ *
+ * File layout (big endian): a header with the magic number, version, vertex count, header
+ * length, the CompactGraph.fingerprint of the graph and the City names, padded to a multiple
+ * of 8 bytes, followed by the n * n distance matrix and the
+ * n * n predecessor matrix, both row-major. Row s of the predecessor matrix is the shortest
+ * path tree of s, so a path is read back from its end using that row alone. Unreachable
+ * pairs have distance ShortestPathSearch.INFINITY and predecessor -1, as does s itself.
+ */
+public class DistanceMatrix {
+    private static final int MAGIC = 0x5452444d; // "TRDM"
+    private static final int VERSION = 4;
+    private static final long MAX_CHUNK_BYTES = 1L << 30; // largest region mapped at once
+    private static final int FIXED_HEADER_BYTES = 24;       // magic, version, n, header length, fingerprint
+
+    private final City[] cities;
+    private final HashMap<City, Integer> index;
+    private final IntBuffer[] distances;    // distance matrix, split into chunks of whole rows
+    private final IntBuffer[] predecessors; // predecessor matrix, same chunking
+    private final int rowsPerChunk;
+
+    private DistanceMatrix(City[] cities, IntBuffer[] distances, IntBuffer[] predecessors, int rowsPerChunk) {
+        this.cities = cities;
+        this.index = new HashMap<>(cities.length * 2);
+        for (int v = 0; v < cities.length; v++)
+            index.put(cities[v], v);
+        this.distances = distances;
+        this.predecessors = predecessors;
+        this.rowsPerChunk = rowsPerChunk;
+    }
+
+    /**
+     * Computes the all-pairs distance and predecessor matrices of graph in parallel and
+     * writes them to file.
+     *
+     * @param graph the graph to compute the matrices of
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     * @throws NullPointerException if graph or file is null
+     */
+    public static void build(TrainSelector<City> graph, Path file) throws IOException {
+        if (graph == null || file == null) throw new NullPointerException("Cannot build a distance matrix with null graph or file");
+        CompactGraph<City> g = graph.compact();
+        int n = g.getVertexCount();
+        byte[] header = header(g);
+        long rowBytes = 4L * n;
+        long matrixBytes = rowBytes * n;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(header), 0);
+            ThreadLocal<ShortestPathSearch<City>> searches = ThreadLocal.withInitial(() -> new ShortestPathSearch<>(g));
+            ThreadLocal<ByteBuffer> rows = ThreadLocal.withInitial(() -> ByteBuffer.allocate((int) rowBytes));
+            try {
+                IntStream.range(0, n).parallel().forEach(s -> {
+                    ShortestPathSearch<City> search = searches.get();
+                    ByteBuffer row = rows.get();
+                    search.run(s, -1);
+                    try {
+                        row.clear();
+                        for (int t = 0; t < n; t++) row.putInt(search.distance(t));
+                        row.flip();
+                        writeFully(channel, row, header.length + s * rowBytes);
+                        row.clear();
+                        for (int t = 0; t < n; t++) row.putInt(search.predecessor(t));
+                        row.flip();
+                        writeFully(channel, row, header.length + matrixBytes + s * rowBytes);
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Maps a distance matrix file written by build. The Cities are resolved by name
+     * against graph, which must have the same vertices, edges and weights as the graph
+     * the matrix was built from.
+     *
+     * @param file the file to map
+     * @param graph the graph holding the Cities of the matrix
+     * @return the distance matrix stored in file
+     * @throws IOException if the file cannot be read, is not a distance matrix file,
+     *     was built for a graph with different vertices, edges or weights, has a header
+     *     that does not match its length, or is truncated
+     */
+    public static DistanceMatrix open(Path file, TrainSelector<City> graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a distance matrix file: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported distance matrix version " + version);
+            int n = in.readInt();
+            int headerLength = in.readInt();
+            CompactGraph<City> g = graph.compact();
+            if (n != g.getVertexCount() || in.readLong() != g.fingerprint())
+                throw new IOException("Distance matrix file was written for a different graph");
+            long rowBytes = 4L * n;
+            long matrixBytes = rowBytes * n;
+            if (headerLength < FIXED_HEADER_BYTES || headerLength % 8 != 0)
+                throw new IOException("Distance matrix file has a bad header length " + headerLength);
+            if (channel.size() < headerLength + 2 * matrixBytes) throw new IOException("Distance matrix file is truncated: " + file);
+
+            // the names and padding must fill the header exactly, or the matrices are not where it says
+            byte[] rest = new byte[headerLength - FIXED_HEADER_BYTES];
+            in.readFully(rest);
+            ByteArrayInputStream names = new ByteArrayInputStream(rest);
+            DataInputStream namesIn = new DataInputStream(names);
+            City[] cities = new City[n];
+            try {
+                for (int v = 0; v < n; v++) {
+                    String name = namesIn.readUTF();
+                    cities[v] = graph.getCity(new City(name), graph);
+                    if (cities[v] == null) throw new IOException("City " + name + " is not in the graph");
+                }
+            }
+            catch (EOFException e) {
+                throw new IOException("Distance matrix file has a bad header length " + headerLength);
+            }
+            if (names.available() >= 8) throw new IOException("Distance matrix file has a bad header length " + headerLength);
+
+            int rowsPerChunk = (int) Math.max(1, Math.min(n, MAX_CHUNK_BYTES / Math.max(1, rowBytes)));
+            int chunks = n == 0 ? 0 : (n + rowsPerChunk - 1) / rowsPerChunk;
+            IntBuffer[] distances = new IntBuffer[chunks];
+            IntBuffer[] predecessors = new IntBuffer[chunks];
+            for (int c = 0; c < chunks; c++) {
+                long firstRow = (long) c * rowsPerChunk;
+                long size = Math.min(rowsPerChunk, n - firstRow) * rowBytes;
+                distances[c] = map(channel, headerLength + firstRow * rowBytes, size);
+                predecessors[c] = map(channel, headerLength + matrixBytes + firstRow * rowBytes, size);
+            }
+            return new DistanceMatrix(cities, distances, predecessors, rowsPerChunk);
+        }
+    }
+
+    /**
+     * Returns the cost of the shortest path between start and end.
+     *
+     * @param start the starting City of the path
+     * @param end the destination City of the path
+     * @return the cost of the shortest path between start and end
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when start or end is not in the matrix
+     */
+    public int getPathCost(City start, City end) {
+        int d = lookup(distances, vertexOf(start), vertexOf(end));
+        if (d == ShortestPathSearch.INFINITY) throw new NoSuchElementException("No path exists");
+        return d;
+    }
+
+    /**
+     * Returns the shortest path between start and end by following the predecessors
+     * in the shortest path tree of start back from end.
+     *
+     * @param start the starting City of the path
+     * @param end the destination City of the path
+     * @return list of Cities in order on the shortest path, including both start and end
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when start or end is not in the matrix
+     * @throws IllegalStateException if the predecessors of start do not lead back from end,
+     *     which only a damaged file can cause
+     */
+    public List<City> shortestPath(City start, City end) {
+        int s = vertexOf(start);
+        int t = vertexOf(end);
+        if (lookup(distances, s, t) == ShortestPathSearch.INFINITY) throw new NoSuchElementException("No path exists");
+        LinkedList<City> path = new LinkedList<>();
+        int hops = 0;
+        for (int v = t; v != s; v = lookup(predecessors, s, v)) {
+            if (v < 0 || ++hops > cities.length) throw new IllegalStateException("Distance matrix file is damaged");
+            path.addFirst(cities[v]);
+        }
+        path.addFirst(cities[s]);
+        return path;
+    }
+
+    /**
+     * Returns the number of Cities in the matrix.
+     *
+     * @return the number of Cities
+     */
+    public int getVertexCount() { return cities.length; }
+
+    private int lookup(IntBuffer[] matrix, int s, int t) {
+        int chunk = s / rowsPerChunk;
+        int row = s - chunk * rowsPerChunk;
+        return matrix[chunk].get(row * cities.length + t);
+    }
+
+    private int vertexOf(City city) {
+        if (city == null) throw new NullPointerException("NullPointerException: Start or End is null");
+        Integer v = index.get(city);
+        if (v == null) throw new NoSuchElementException("No path exists");
+        return v;
+    }
+
+    private static byte[] header(CompactGraph<City> g) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int n = g.getVertexCount();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(n);
+        out.writeInt(0); // header length, filled in below
+        out.writeLong(g.fingerprint());
+        for (int v = 0; v < n; v++)
+            out.writeUTF(g.dataAt(v).getName());
+        while (out.size() % 8 != 0)
+            out.writeByte(0);
+        out.flush();
+        byte[] header = bytes.toByteArray();
+        ByteBuffer.wrap(header).putInt(12, header.length);
+        return header;
+    }
+
+    private static IntBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        return buffer.order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+}
@@ -0,0 +1,313 @@
+import java.util.*;
+
+/**
+ * DynamicShortestPaths keeps the shortest path trees of a few registered source vertices
+ * up to date while the graph changes, in the style of Ramalingam and Reps.
+ *
+ * It listens to a TrainSelector and repairs only the part of each tree that a change can
+ * affect, instead of recomputing the tree:
+ *
+ *  - when an edge (u, v) gets cheaper or is inserted, a Dijkstra search is started at v
+ *    if the edge improves it, and only runs while it keeps improving distances;
+ *  - when an edge (u, v) gets more expensive or is removed, nothing happens unless it is
+ *    the tree edge into v. Otherwise the subtree below v is the set of affected vertices.
+ *    Each affected vertex gets its best distance through an unaffected in-neighbour, and a
+ *    Dijkstra search limited to the affected vertices settles the rest.
+ *
+ * The destinations whose distance changed are collected per source until takeChanges is
+ * called, so dependent caches can drop exactly what became stale. The object keeps its own
+ * copy of the adjacency, with in-edges, so it never has to read the TrainSelector again
+ * after it has been created. Like TrainSelector, it is not thread safe.
+ *
+ * @param <T> the data type stored at each graph vertex
+ */
+public class DynamicShortestPaths<T> implements GraphListener<T> {
+    private static final int INFINITY = ShortestPathSearch.INFINITY;
+
+    /**
+     * The shortest path tree of one source.
+     */
+    private static final class Tree {
+        final int source;
+        int[] dist;
+        int[] pred;
+        final HashSet<Integer> changed = new HashSet<>(); // destinations changed since takeChanges
+
+        Tree(int source, int capacity) {
+            this.source = source;
+            this.dist = new int[capacity];
+            this.pred = new int[capacity];
+            Arrays.fill(dist, INFINITY);
+            Arrays.fill(pred, -1);
+        }
+    }
+
+    private final TrainSelector<T> graph;
+    private final HashMap<T, Integer> ids = new HashMap<>();            // vertex number of each data item
+    private final ArrayList<T> data = new ArrayList<>();                 // data item of each vertex number, null once removed
+    private final ArrayList<HashMap<Integer, Integer>> out = new ArrayList<>(); // out[u]: target -> weight
+    private final ArrayList<HashMap<Integer, Integer>> in = new ArrayList<>();  // in[v]: source -> weight
+    private final LinkedHashMap<T, Tree> trees = new LinkedHashMap<>();
+    private IndexedMinHeap heap = new IndexedMinHeap(16);
+    private int[] mark = new int[16];   // mark[v] == stamp when v is affected by the current change
+    private int stamp;
+
+    /**
+     * Creates a maintainer for graph and starts listening to its changes.
+     *
+     * @param graph the graph whose shortest path trees are maintained
+     * @throws NullPointerException if graph is null
+     */
+    public DynamicShortestPaths(TrainSelector<T> graph) {
+        if (graph == null) throw new NullPointerException("Cannot maintain paths of a null graph");
+        this.graph = graph;
+        graph.thaw();
+        for (T vertex : graph.vertices.keySet())
+            vertexInserted(vertex);
+        for (TrainSelector<T>.Vertex vertex : graph.vertices.values()) {
+            int u = ids.get(vertex.data);
+            for (TrainSelector<T>.Edge e : vertex.edgesLeaving) {
+                int v = ids.get(e.target.data);
+                Integer w = out.get(u).get(v);
+                if (w == null || e.weight < w) { // keep the cheapest of parallel edges
+                    out.get(u).put(v, e.weight);
+                    in.get(v).put(u, e.weight);
+                }
+            }
+        }
+        graph.addGraphListener(this);
+    }
+
+    /**
+     * Stops listening to the graph. The maintained trees are no longer updated.
+     */
+    public void close() {
+        graph.removeGraphListener(this);
+    }
+
+    /**
+     * Starts maintaining the shortest path tree of source, computing it once from scratch.
+     *
+     * @param source the data item in the source vertex
+     * @throws NullPointerException if source is null
+     * @throws NoSuchElementException if no vertex containing source can be found
+     */
+    public void addSource(T source) {
+        if (source == null) throw new NullPointerException("NullPointerException: Start or End is null");
+        Integer s = ids.get(source);
+        if (s == null) throw new NoSuchElementException("No path exists");
+        if (trees.containsKey(source)) return;
+        Tree tree = new Tree(s, data.size());
+        tree.dist[s] = 0;
+        heap.clear();
+        heap.add(s, 0);
+        propagate(tree, false);
+        tree.changed.clear();
+        trees.put(source, tree);
+    }
+
+    /**
+     * Stops maintaining the shortest path tree of source.
+     *
+     * @param source the data item in the source vertex
+     * @return true if source was registered
+     */
+    public boolean removeSource(T source) {
+        return trees.remove(source) != null;
+    }
+
+    /**
+     * Returns the cost of the shortest path from a registered source to end.
+     *
+     * @param source a registered source
+     * @param end the data item in the destination vertex
+     * @return the cost of the shortest path, or ShortestPathSearch.INFINITY if end cannot be reached
+     * @throws IllegalArgumentException if source is not registered
+     * @throws NoSuchElementException if no vertex containing end can be found
+     */
+    public int distance(T source, T end) {
+        Tree tree = tree(source);
+        Integer t = ids.get(end);
+        if (t == null || data.get(t) == null) throw new NoSuchElementException("No path exists");
+        return tree.dist[t];
+    }
+
+    /**
+     * Returns the shortest path from a registered source to end.
+     *
+     * @param source a registered source
+     * @param end the data item in the destination vertex
+     * @return list of data items on the path, including both source and end
+     * @throws IllegalArgumentException if source is not registered
+     * @throws NoSuchElementException when no path from source to end can be found
+     *     including when no vertex containing end can be found
+     */
+    public List<T> shortestPath(T source, T end) {
+        Tree tree = tree(source);
+        if (distance(source, end) == INFINITY) throw new NoSuchElementException("No path exists");
+        LinkedList<T> path = new LinkedList<>();
+        for (int v = ids.get(end); v != -1; v = tree.pred[v])
+            path.addFirst(data.get(v));
+        return path;
+    }
+
+    /**
+     * Returns, for every registered source, the destinations whose distance from it changed
+     * since the last call, and starts collecting anew.
+     *
+     * @return the changed destinations of each source; sources without changes are left out
+     */
+    public Map<T, Set<T>> takeChanges() {
+        LinkedHashMap<T, Set<T>> changes = new LinkedHashMap<>();
+        for (Map.Entry<T, Tree> entry : trees.entrySet()) {
+            Tree tree = entry.getValue();
+            if (tree.changed.isEmpty()) continue;
+            Set<T> destinations = new HashSet<>();
+            for (int v : tree.changed)
+                if (data.get(v) != null) destinations.add(data.get(v));
+            changes.put(entry.getKey(), destinations);
+            tree.changed.clear();
+        }
+        return changes;
+    }
+
+    public void vertexInserted(T vertex) {
+        if (ids.containsKey(vertex)) return;
+        int v = data.size();
+        ids.put(vertex, v);
+        data.add(vertex);
+        out.add(new HashMap<>());
+        in.add(new HashMap<>());
+        if (v >= mark.length) {
+            mark = Arrays.copyOf(mark, 2 * mark.length);
+            heap = new IndexedMinHeap(mark.length);
+        }
+        for (Tree tree : trees.values()) {
+            if (v >= tree.dist.length) {
+                int capacity = Math.max(2 * tree.dist.length, v + 1);
+                int old = tree.dist.length;
+                tree.dist = Arrays.copyOf(tree.dist, capacity);
+                tree.pred = Arrays.copyOf(tree.pred, capacity);
+                Arrays.fill(tree.dist, old, capacity, INFINITY);
+                Arrays.fill(tree.pred, old, capacity, -1);
+            }
+        }
+    }
+
+    public void vertexRemoved(T vertex) {
+        Integer v = ids.remove(vertex);
+        if (v == null) return;
+        data.set(v, null); // its edges were already reported removed, so it is unreachable
+        trees.remove(vertex);
+    }
+
+    public void edgeChanged(T source, T target, int oldWeight, int newWeight) {
+        Integer u = ids.get(source);
+        Integer v = ids.get(target);
+        if (u == null || v == null) return;
+        if (newWeight == INFINITY) {
+            out.get(u).remove(v);
+            in.get(v).remove(u);
+        }
+        else {
+            out.get(u).put(v, newWeight);
+            in.get(v).put(u, newWeight);
+        }
+        for (Tree tree : trees.values()) {
+            if (newWeight < oldWeight) decreased(tree, u, v, newWeight);
+            else increased(tree, u, v);
+        }
+    }
+
+    /**
+     * Repairs tree after edge (u, v) got cheaper with weight w.
+     */
+    private void decreased(Tree tree, int u, int v, int w) {
+        if (tree.dist[u] == INFINITY || tree.dist[u] + w >= tree.dist[v]) return;
+        tree.dist[v] = tree.dist[u] + w;
+        tree.pred[v] = u;
+        tree.changed.add(v);
+        heap.clear();
+        heap.add(v, tree.dist[v]);
+        propagate(tree, false);
+    }
+
+    /**
+     * Repairs tree after edge (u, v) got more expensive or was removed.
+     */
+    private void increased(Tree tree, int u, int v) {
+        if (tree.pred[v] != u) return; // not a tree edge, no distance depends on it
+        if (++stamp == 0) {
+            Arrays.fill(mark, 0);
+            stamp = 1;
+        }
+
+        // the subtree below v is affected: every vertex whose tree path uses (u, v)
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        ArrayList<Integer> affected = new ArrayList<>();
+        mark[v] = stamp;
+        queue.add(v);
+        while (!queue.isEmpty()) {
+            int x = queue.poll();
+            affected.add(x);
+            for (int y : out.get(x).keySet()) {
+                if (mark[y] != stamp && tree.pred[y] == x) {
+                    mark[y] = stamp;
+                    queue.add(y);
+                }
+            }
+        }
+
+        // best distance of each affected vertex through an unaffected in-neighbour
+        int[] oldDist = new int[affected.size()];
+        heap.clear();
+        for (int i = 0; i < affected.size(); i++) {
+            int x = affected.get(i);
+            oldDist[i] = tree.dist[x];
+            tree.dist[x] = INFINITY;
+            tree.pred[x] = -1;
+            for (Map.Entry<Integer, Integer> edge : in.get(x).entrySet()) {
+                int p = edge.getKey();
+                if (mark[p] == stamp || tree.dist[p] == INFINITY) continue;
+                int d = tree.dist[p] + edge.getValue();
+                if (d < tree.dist[x]) {
+                    tree.dist[x] = d;
+                    tree.pred[x] = p;
+                }
+            }
+            if (tree.dist[x] != INFINITY) heap.add(x, tree.dist[x]);
+        }
+        propagate(tree, true);
+
+        for (int i = 0; i < affected.size(); i++)
+            if (tree.dist[affected.get(i)] != oldDist[i]) tree.changed.add(affected.get(i));
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from the vertices queued in heap, lowering distances in tree.
+     * When affectedOnly is set, only vertices marked as affected are relaxed.
+     */
+    private void propagate(Tree tree, boolean affectedOnly) {
+        while (!heap.isEmpty()) {
+            int x = heap.poll();
+            int dx = tree.dist[x];
+            for (Map.Entry<Integer, Integer> edge : out.get(x).entrySet()) {
+                int y = edge.getKey();
+                if (affectedOnly && mark[y] != stamp) continue;
+                int d = dx + edge.getValue();
+                if (d < tree.dist[y]) {
+                    tree.dist[y] = d;
+                    tree.pred[y] = x;
+                    if (!affectedOnly) tree.changed.add(y);
+                    heap.offer(y, d);
+                }
+            }
+        }
+    }
+
+    private Tree tree(T source) {
+        Tree tree = trees.get(source);
+        if (tree == null) throw new IllegalArgumentException("Source is not registered");
+        return tree;
+    }
+}
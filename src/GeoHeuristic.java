@@ -0,0 +1,86 @@
+/**
+ * GeoHeuristic estimates the remaining rail distance of a route from the great-circle
+ * distance between two Cities.
+ *
+ * Rail weights are not kilometers measured the same way as the haversine distance, so the
+ * straight-line distance is scaled by the smallest weight-per-kilometer ratio over all edges
+ * of the graph. Since no edge is then shorter than its scaled straight-line distance, and
+ * straight-line distances obey the triangle inequality, the estimate never overestimates
+ * the remaining cost and is consistent.
+ *
+ * If any vertex is not a City with a known location the scale is 0 and every estimate is 0,
+ * which makes A* behave exactly like Dijkstra's algorithm.
+ */
+public class GeoHeuristic implements SearchHeuristic {
+    private final double[] lat;  // latitude of each vertex in radians
+    private final double[] lng;  // longitude of each vertex in radians
+    private final double[] cosLat;
+    private final double scale;  // weight units per kilometer of great-circle distance
+
+    private static final double SAFETY = 1 - 1e-9; // absorbs floating point rounding
+
+    /**
+     * Creates a heuristic for the vertices of graph and calibrates it against its edges.
+     *
+     * @param graph the graph the heuristic is used on
+     */
+    public GeoHeuristic(CompactGraph<?> graph) {
+        int n = graph.getVertexCount();
+        this.lat = new double[n];
+        this.lng = new double[n];
+        this.cosLat = new double[n];
+        boolean located = true;
+        for (int v = 0; v < n; v++) {
+            Object data = graph.dataAt(v);
+            if (!(data instanceof City) || !((City) data).hasLocation()) {
+                located = false;
+                break;
+            }
+            City city = (City) data;
+            lat[v] = Math.toRadians(city.getLat());
+            lng[v] = Math.toRadians(city.getLng());
+            cosLat[v] = Math.cos(lat[v]);
+        }
+        this.scale = located ? calibrate(graph) : 0;
+    }
+
+    /**
+     * Returns the number of weight units one kilometer of great-circle distance is worth.
+     *
+     * @return the calibrated scale, 0 when the heuristic is disabled
+     */
+    public double getScale() { return scale; }
+
+    /**
+     * Returns a lower bound on the rail distance from vertex to target.
+     *
+     * @param vertex the vertex number to estimate from
+     * @param target the vertex number of the query target
+     * @return the scaled great-circle distance, rounded down
+     */
+    public int estimate(int vertex, int target) {
+        if (scale == 0 || vertex == target) return 0;
+        return (int) (scale * kilometers(vertex, target));
+    }
+
+    /**
+     * Finds the smallest ratio of edge weight to great-circle distance in the graph.
+     */
+    private double calibrate(CompactGraph<?> graph) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int u = 0; u < graph.getVertexCount(); u++) {
+            for (int e = graph.firstEdge(u); e < graph.endEdge(u); e++) {
+                double km = kilometers(u, graph.target(e));
+                if (km > 0) min = Math.min(min, graph.weight(e) / km);
+            }
+        }
+        return min == Double.POSITIVE_INFINITY ? 0 : min * SAFETY;
+    }
+
+    /**
+     * Returns the haversine distance between two vertices in kilometers.
+     */
+    private double kilometers(int u, int v) {
+        return City.haversine(lat[u], cosLat[u], lng[u], lat[v], cosLat[v], lng[v]);
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * A GraphListener is told about every change made to a TrainSelector, after the change
+ * has been made, so that results derived from the graph can be repaired instead of
+ * recomputed. See TrainSelector.addGraphListener.
+ *
+ * @param <T> the data type stored at each graph vertex
+ */
+public interface GraphListener<T> {
+
+    /**
+     * Called after a vertex has been inserted.
+     *
+     * @param data the data item of the new vertex
+     */
+    public void vertexInserted(T data);
+
+    /**
+     * Called after a vertex has been removed. Its edges have already been reported
+     * as removed through edgeChanged.
+     *
+     * @param data the data item of the removed vertex
+     */
+    public void vertexRemoved(T data);
+
+    /**
+     * Called after a directed edge has been inserted, removed, or had its weight changed.
+     *
+     * @param source the data item in the source vertex of the edge
+     * @param target the data item in the target vertex of the edge
+     * @param oldWeight the previous weight, ShortestPathSearch.INFINITY if the edge is new
+     * @param newWeight the new weight, ShortestPathSearch.INFINITY if the edge was removed
+     */
+    public void edgeChanged(T source, T target, int oldWeight, int newWeight);
+}
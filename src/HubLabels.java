@@ -0,0 +1,329 @@
+import java.util.*;
+
+/**
+ * HubLabels is a distance oracle: it answers getPathCost by merging two short sorted
+ * arrays, without searching the graph at all.
+ *
+ * Every vertex v gets an out-label, a list of hubs h with the distance d(v, h), and an
+ * in-label, a list of hubs h with the distance d(h, v). The labels are built so that for
+ * every pair s, t some hub on a shortest path from s to t is in both the out-label of s and
+ * the in-label of t, which makes d(s, t) the smallest d(s, h) + d(h, t) over their common hubs.
+ *
+ * The labels are computed by pruned labeling: hubs are processed in a vertex order, most
+ * important first, and each one runs a Dijkstra search forward and backward that stops at
+ * every vertex whose distance the labels built so far already cover. With a good order
+ * (high degree first, or the ranks of a ContractionHierarchy, highest first) labels stay
+ * short. Hubs are identified by their position in the order, so each label is naturally
+ * sorted and a query is a single linear merge.
+ *
+ * Optionally every label entry also keeps the next vertex towards (or from) its hub, which
+ * lets shortestPath rebuild the full path from the labels alone.
+ *
+ * @param <T> the data type stored at each graph vertex
+ */
+public class HubLabels<T> {
+    private final CompactGraph<T> graph;
+    private final int[] order;        // vertex number of each hub rank
+    // out-labels: hubs h reachable from v, with d(v, h)
+    private final int[] outOffsets;
+    private final int[] outHubs;      // hub ranks, sorted within each label
+    private final int[] outDists;
+    private final int[] outNext;      // next vertex from v towards the hub, null without paths
+    // in-labels: hubs h that reach v, with d(h, v)
+    private final int[] inOffsets;
+    private final int[] inHubs;
+    private final int[] inDists;
+    private final int[] inPrev;       // vertex before v on the path from the hub, null without paths
+
+    /**
+     * Builds hub labels for graph, processing vertices in order of decreasing degree.
+     *
+     * @param graph the graph to label
+     * @param storePaths whether to keep the data needed by shortestPath
+     * @throws NullPointerException if graph is null
+     */
+    public HubLabels(CompactGraph<T> graph, boolean storePaths) {
+        this(graph, degreeOrder(graph), storePaths);
+    }
+
+    /**
+     * Builds hub labels for graph, processing vertices in the given order.
+     *
+     * @param graph the graph to label
+     * @param order every vertex number of graph exactly once, most important first
+     * @param storePaths whether to keep the data needed by shortestPath
+     * @throws IllegalArgumentException if order is not a permutation of the vertex numbers
+     * @throws NullPointerException if graph or order is null
+     */
+    public HubLabels(CompactGraph<T> graph, int[] order, boolean storePaths) {
+        if (graph == null || order == null) throw new NullPointerException("Cannot label a null graph or order");
+        int n = graph.getVertexCount();
+        if (order.length != n) throw new IllegalArgumentException("Order must contain every vertex exactly once");
+        boolean[] seen = new boolean[n];
+        for (int v : order) {
+            if (v < 0 || v >= n || seen[v]) throw new IllegalArgumentException("Order must contain every vertex exactly once");
+            seen[v] = true;
+        }
+        this.graph = graph;
+        this.order = order.clone();
+
+        Label[] out = new Label[n];
+        Label[] in = new Label[n];
+        for (int v = 0; v < n; v++) {
+            out[v] = new Label();
+            in[v] = new Label();
+        }
+        Builder builder = new Builder(n);
+        for (int rank = 0; rank < n; rank++) {
+            int hub = order[rank];
+            // forward search fills in-labels with d(hub, v), backward search out-labels with d(v, hub)
+            builder.prunedSearch(graph, hub, rank, out[hub], in);
+            builder.prunedSearch(graph.reverse(), hub, rank, in[hub], out);
+        }
+
+        this.outOffsets = new int[n + 1];
+        this.inOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            outOffsets[v + 1] = outOffsets[v] + out[v].size;
+            inOffsets[v + 1] = inOffsets[v] + in[v].size;
+        }
+        this.outHubs = new int[outOffsets[n]];
+        this.outDists = new int[outOffsets[n]];
+        this.outNext = storePaths ? new int[outOffsets[n]] : null;
+        this.inHubs = new int[inOffsets[n]];
+        this.inDists = new int[inOffsets[n]];
+        this.inPrev = storePaths ? new int[inOffsets[n]] : null;
+        for (int v = 0; v < n; v++) {
+            out[v].copyTo(outOffsets[v], outHubs, outDists, outNext);
+            in[v].copyTo(inOffsets[v], inHubs, inDists, inPrev);
+        }
+    }
+
+    /**
+     * Returns the graph the labels were built for.
+     *
+     * @return the labeled graph
+     */
+    public CompactGraph<T> getGraph() { return graph; }
+
+    /**
+     * Returns the cost of the shortest path between start and end.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the end vertex for the path
+     * @return the cost of the shortest path between start and end
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public int getPathCost(T start, T end) {
+        int d = distance(vertexOf(start), vertexOf(end));
+        if (d == ShortestPathSearch.INFINITY) throw new NoSuchElementException("No path exists");
+        return d;
+    }
+
+    /**
+     * Returns the distance between two vertex numbers by merging the out-label
+     * of s with the in-label of t.
+     *
+     * @param s vertex number of the start
+     * @param t vertex number of the end
+     * @return the distance from s to t, or ShortestPathSearch.INFINITY if t cannot be reached
+     */
+    public int distance(int s, int t) {
+        return bestHub(s, t, null);
+    }
+
+    /**
+     * Returns the shortest path between start and end, rebuilt from the labels.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the destination vertex for the path
+     * @return list of data item in vertices in order on the shortest path between
+     *     start and end, including both start and end
+     * @throws IllegalStateException if the labels were built without paths
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public List<T> shortestPath(T start, T end) {
+        if (outNext == null) throw new IllegalStateException("Hub labels were built without paths");
+        int s = vertexOf(start);
+        int t = vertexOf(end);
+        int[] hubRank = new int[1];
+        if (bestHub(s, t, hubRank) == ShortestPathSearch.INFINITY) throw new NoSuchElementException("No path exists");
+        int hub = order[hubRank[0]];
+
+        // s -> hub: follow the next vertex stored in each out-label
+        LinkedList<T> path = new LinkedList<>();
+        for (int v = s; v != hub; v = outNext[find(outOffsets, outHubs, v, hubRank[0])])
+            path.addLast(graph.dataAt(v));
+        // hub -> t: walk back from t along the previous vertex stored in each in-label
+        LinkedList<T> tail = new LinkedList<>();
+        for (int v = t; v != hub; v = inPrev[find(inOffsets, inHubs, v, hubRank[0])])
+            tail.addFirst(graph.dataAt(v));
+        path.addLast(graph.dataAt(hub));
+        path.addAll(tail);
+        return path;
+    }
+
+    /**
+     * Returns the total number of label entries, a measure of the size of the oracle.
+     *
+     * @return the number of entries in all in- and out-labels
+     */
+    public int getLabelCount() {
+        return outHubs.length + inHubs.length;
+    }
+
+    /**
+     * Merges the out-label of s with the in-label of t and returns the shortest distance
+     * through a common hub, storing that hub's rank in hubRank if it is not null.
+     */
+    private int bestHub(int s, int t, int[] hubRank) {
+        int best = ShortestPathSearch.INFINITY;
+        int i = outOffsets[s];
+        int iEnd = outOffsets[s + 1];
+        int j = inOffsets[t];
+        int jEnd = inOffsets[t + 1];
+        while (i < iEnd && j < jEnd) {
+            int a = outHubs[i];
+            int b = inHubs[j];
+            if (a < b) i++;
+            else if (a > b) j++;
+            else {
+                int d = outDists[i] + inDists[j];
+                if (d < best) {
+                    best = d;
+                    if (hubRank != null) hubRank[0] = a;
+                }
+                i++;
+                j++;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Binary searches the label of v for the entry of a hub rank.
+     */
+    private static int find(int[] offsets, int[] hubs, int v, int hubRank) {
+        int e = Arrays.binarySearch(hubs, offsets[v], offsets[v + 1], hubRank);
+        if (e < 0) throw new IllegalStateException("Hub label is missing an entry on a stored path");
+        return e;
+    }
+
+    private int vertexOf(T data) {
+        if (data == null) throw new NullPointerException("NullPointerException: Start or End is null");
+        int v = graph.indexOf(data);
+        if (v == -1) throw new NoSuchElementException("No path exists");
+        return v;
+    }
+
+    private static int[] degreeOrder(CompactGraph<?> graph) {
+        if (graph == null) throw new NullPointerException("Cannot label a null graph");
+        Integer[] vertices = new Integer[graph.getVertexCount()];
+        for (int v = 0; v < vertices.length; v++) vertices[v] = v;
+        Arrays.sort(vertices, (a, b) -> Integer.compare(graph.endEdge(b) - graph.firstEdge(b), graph.endEdge(a) - graph.firstEdge(a)));
+        int[] order = new int[vertices.length];
+        for (int i = 0; i < order.length; i++) order[i] = vertices[i];
+        return order;
+    }
+
+    /**
+     * Growable label of one vertex during construction.
+     */
+    private static class Label {
+        int[] hubs = new int[4];
+        int[] dists = new int[4];
+        int[] links = new int[4];
+        int size;
+
+        void add(int hub, int dist, int link) {
+            if (size == hubs.length) {
+                hubs = Arrays.copyOf(hubs, size * 2);
+                dists = Arrays.copyOf(dists, size * 2);
+                links = Arrays.copyOf(links, size * 2);
+            }
+            hubs[size] = hub;
+            dists[size] = dist;
+            links[size] = link;
+            size++;
+        }
+
+        void copyTo(int at, int[] hubArray, int[] distArray, int[] linkArray) {
+            System.arraycopy(hubs, 0, hubArray, at, size);
+            System.arraycopy(dists, 0, distArray, at, size);
+            if (linkArray != null) System.arraycopy(links, 0, linkArray, at, size);
+        }
+    }
+
+    /**
+     * Search state shared by all pruned searches during construction.
+     */
+    private static class Builder {
+        final int[] dist;
+        final int[] pred;
+        final int[] touched;
+        int touchedCount;
+        final IndexedMinHeap heap;
+        final int[] hubDist;   // distances in the label of the current hub, indexed by hub rank
+
+        Builder(int n) {
+            dist = new int[n];
+            pred = new int[n];
+            touched = new int[n];
+            heap = new IndexedMinHeap(n);
+            hubDist = new int[n];
+            Arrays.fill(dist, ShortestPathSearch.INFINITY);
+            Arrays.fill(hubDist, ShortestPathSearch.INFINITY);
+        }
+
+        /**
+         * Runs Dijkstra's algorithm from hub over g and adds hub to the labels of every
+         * vertex it settles, unless the existing labels (hubLabel of the hub itself, and
+         * labels[v] of the settled vertex) already give a path at least as short. Pruned
+         * vertices are not expanded.
+         */
+        void prunedSearch(CompactGraph<?> g, int hub, int rank, Label hubLabel, Label[] labels) {
+            for (int i = 0; i < hubLabel.size; i++)
+                hubDist[hubLabel.hubs[i]] = hubLabel.dists[i];
+            dist[hub] = 0;
+            pred[hub] = hub;
+            touched[touchedCount++] = hub;
+            heap.add(hub, 0);
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                int du = dist[u];
+                if (covered(labels[u], du)) continue;
+                labels[u].add(rank, du, pred[u]);
+                for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                    int v = g.targets[e];
+                    int d = du + g.weights[e];
+                    if (d < dist[v]) {
+                        if (dist[v] == ShortestPathSearch.INFINITY) touched[touchedCount++] = v;
+                        dist[v] = d;
+                        pred[v] = u;
+                        heap.offer(v, d);
+                    }
+                }
+            }
+            for (int i = 0; i < touchedCount; i++)
+                dist[touched[i]] = ShortestPathSearch.INFINITY;
+            touchedCount = 0;
+            for (int i = 0; i < hubLabel.size; i++)
+                hubDist[hubLabel.hubs[i]] = ShortestPathSearch.INFINITY;
+        }
+
+        /**
+         * Returns whether the labels built so far already give a distance of at most d.
+         */
+        boolean covered(Label label, int d) {
+            for (int i = 0; i < label.size; i++) {
+                int h = hubDist[label.hubs[i]];
+                if (h != ShortestPathSearch.INFINITY && h + label.dists[i] <= d) return true;
+            }
+            return false;
+        }
+    }
+}
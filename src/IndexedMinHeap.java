@@ -0,0 +1,200 @@
+import java.util.NoSuchElementException;
+
+/**
+ * IndexedMinHeap is a binary min heap of the integers 0 to capacity - 1, each of which
+ * is ordered by an int key. Because the heap position of every item is tracked, the key
+ * of an item that is already queued can be lowered in place (decrease-key) instead of
+ * queueing a second copy of it, so the heap never holds more than one entry per vertex.
+ */
+public class IndexedMinHeap {
+    private final int[] heap;      // items in heap order
+    private final int[] keys;      // key of each item, indexed by item
+    private final int[] position;  // heap position of each item, -1 when not queued
+    private int size;
+
+    /**
+     * Creates an empty heap that can hold the items 0 to capacity - 1.
+     *
+     * @param capacity the number of distinct items the heap can hold
+     */
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.keys = new int[capacity];
+        this.position = new int[capacity];
+        java.util.Arrays.fill(position, -1);
+        this.size = 0;
+    }
+
+    /**
+     * Returns whether the heap has no items queued.
+     *
+     * @return true if the heap is empty
+     */
+    public boolean isEmpty() { return size == 0; }
+
+    /**
+     * Returns the number of items queued.
+     *
+     * @return the number of items queued
+     */
+    public int size() { return size; }
+
+    /**
+     * Returns whether item is currently queued.
+     *
+     * @param item the item to check for
+     * @return true if item is in the heap
+     */
+    public boolean contains(int item) { return position[item] != -1; }
+
+    /**
+     * Returns the key item was last queued or updated with.
+     *
+     * @param item a queued item
+     * @return the key of item
+     */
+    public int keyOf(int item) { return keys[item]; }
+
+    /**
+     * Queues item with the given key.
+     *
+     * @param item the item to queue
+     * @param key the key of the item
+     * @throws IllegalArgumentException if item is already queued
+     */
+    public void add(int item, int key) {
+        if (position[item] != -1) throw new IllegalArgumentException("Item is already in the heap");
+        heap[size] = item;
+        position[item] = size;
+        keys[item] = key;
+        siftUp(size++);
+    }
+
+    /**
+     * Lowers the key of a queued item.
+     *
+     * @param item the queued item
+     * @param key the new key, which must not be larger than the current one
+     */
+    public void decreaseKey(int item, int key) {
+        keys[item] = key;
+        siftUp(position[item]);
+    }
+
+    /**
+     * Changes the key of a queued item, in either direction.
+     *
+     * @param item the queued item
+     * @param key the new key
+     */
+    public void update(int item, int key) {
+        keys[item] = key;
+        siftUp(position[item]);
+        siftDown(position[item]);
+    }
+
+    /**
+     * Queues item with key if it is not queued yet, or lowers its key if
+     * key is smaller than the key it is queued with.
+     *
+     * @param item the item to queue
+     * @param key the key of the item
+     * @return true if the heap changed
+     */
+    public boolean offer(int item, int key) {
+        if (position[item] == -1) {
+            add(item, key);
+            return true;
+        }
+        if (key < keys[item]) {
+            decreaseKey(item, key);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the item with the smallest key without removing it.
+     *
+     * @return the item with the smallest key
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public int peek() {
+        if (size == 0) throw new NoSuchElementException("Heap is empty");
+        return heap[0];
+    }
+
+    /**
+     * Returns the smallest key in the heap.
+     *
+     * @return the smallest key, or Integer.MAX_VALUE if the heap is empty
+     */
+    public int peekKey() {
+        return size == 0 ? Integer.MAX_VALUE : keys[heap[0]];
+    }
+
+    /**
+     * Removes and returns the item with the smallest key.
+     *
+     * @return the item with the smallest key
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public int poll() {
+        if (size == 0) throw new NoSuchElementException("Heap is empty");
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Removes all items from the heap. Only the queued items are touched,
+     * so clearing costs O(size) rather than O(capacity).
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++)
+            position[heap[i]] = -1;
+        size = 0;
+    }
+
+    private void siftUp(int i) {
+        int item = heap[i];
+        int key = keys[item];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int p = heap[parent];
+            if (keys[p] <= key) break;
+            heap[i] = p;
+            position[p] = i;
+            i = parent;
+        }
+        heap[i] = item;
+        position[item] = i;
+    }
+
+    private void siftDown(int i) {
+        int item = heap[i];
+        int key = keys[item];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int c = heap[child];
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[c]) {
+                child = right;
+                c = heap[child];
+            }
+            if (key <= keys[c]) break;
+            heap[i] = c;
+            position[c] = i;
+            i = child;
+        }
+        heap[i] = item;
+        position[item] = i;
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.*;
+
+/**
+ * Journey is a trip through a Timetable: one or more legs, each on one train, changing
+ * trains in the City where one leg ends and the next begins. Journeys are immutable.
+ *
+ * toString lists every City the journey passes through, like TrainSelector.Path does,
+ * and describe adds the trains and times of each leg.
+ */
+public class Journey {
+
+    /**
+     * Leg is the part of a journey spent on one train.
+     */
+    public static final class Leg {
+        private final String trip;
+        private final City[] stops;
+        private final int departure;
+        private final int arrival;
+
+        Leg(String trip, City[] stops, int departure, int arrival) {
+            this.trip = trip;
+            this.stops = stops;
+            this.departure = departure;
+            this.arrival = arrival;
+        }
+
+        /**
+         * Returns the name of the train, its trip_short_name or trip_id.
+         *
+         * @return the name of the trip
+         */
+        public String getTrip() { return trip; }
+
+        /**
+         * Returns the Cities the train stops at on this leg, from boarding to alighting.
+         *
+         * @return the stops of the leg
+         */
+        public List<City> getStops() { return Collections.unmodifiableList(Arrays.asList(stops)); }
+
+        /**
+         * Returns the City where the leg begins.
+         *
+         * @return the boarding City
+         */
+        public City getFrom() { return stops[0]; }
+
+        /**
+         * Returns the City where the leg ends.
+         *
+         * @return the alighting City
+         */
+        public City getTo() { return stops[stops.length - 1]; }
+
+        /**
+         * Returns the departure time from getFrom, in seconds since midnight.
+         *
+         * @return the departure time
+         */
+        public int getDepartureTime() { return departure; }
+
+        /**
+         * Returns the arrival time in getTo, in seconds since midnight.
+         *
+         * @return the arrival time
+         */
+        public int getArrivalTime() { return arrival; }
+
+        public String toString() {
+            return Timetable.formatTime(departure) + " " + getFrom().getName() + " -> "
+                    + Timetable.formatTime(arrival) + " " + getTo().getName() + " (" + trip + ")";
+        }
+    }
+
+    private final Leg[] legs;
+
+    Journey(Leg[] legs) {
+        if (legs.length == 0) throw new IllegalArgumentException("A journey needs at least one leg");
+        this.legs = legs;
+    }
+
+    /**
+     * Returns the legs of the journey in the order they are travelled.
+     *
+     * @return the legs
+     */
+    public List<Leg> getLegs() { return Collections.unmodifiableList(Arrays.asList(legs)); }
+
+    /**
+     * Returns the time the first train departs, in seconds since midnight.
+     *
+     * @return the departure time
+     */
+    public int getDepartureTime() { return legs[0].departure; }
+
+    /**
+     * Returns the time the last train arrives, in seconds since midnight.
+     *
+     * @return the arrival time
+     */
+    public int getArrivalTime() { return legs[legs.length - 1].arrival; }
+
+    /**
+     * Returns the number of times the journey changes trains.
+     *
+     * @return the number of transfers
+     */
+    public int getTransferCount() { return legs.length - 1; }
+
+    /**
+     * Returns every City the journey passes through, in order, each transfer City once.
+     *
+     * @return the Cities of the journey
+     */
+    public List<City> getCities() {
+        List<City> cities = new ArrayList<>();
+        for (Leg leg : legs) {
+            for (int i = cities.isEmpty() ? 0 : 1; i < leg.stops.length; i++)
+                cities.add(leg.stops[i]);
+        }
+        return cities;
+    }
+
+    /**
+     * Returns one line per leg with its times and train.
+     *
+     * @return the legs of the journey
+     */
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        for (Leg leg : legs) {
+            if (text.length() > 0) text.append('\n');
+            text.append(leg);
+        }
+        return text.toString();
+    }
+
+    public boolean equals(Object other) {
+        if (!(other instanceof Journey)) return false;
+        Journey journey = (Journey) other;
+        if (legs.length != journey.legs.length) return false;
+        for (int i = 0; i < legs.length; i++) {
+            Leg a = legs[i];
+            Leg b = journey.legs[i];
+            if (!a.trip.equals(b.trip) || a.departure != b.departure || a.arrival != b.arrival || !Arrays.equals(a.stops, b.stops))
+                return false;
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        int hash = 1;
+        for (Leg leg : legs) hash = 31 * hash + Objects.hash(leg.trip, leg.departure, leg.arrival);
+        return hash;
+    }
+
+    public String toString() {
+        StringBuilder path = new StringBuilder();
+        for (City city : getCities()) {
+            if (path.length() > 0) path.append(" -> ");
+            path.append(city.getName());
+        }
+        return path.toString();
+    }
+}
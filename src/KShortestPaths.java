@@ -0,0 +1,143 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * KShortestPaths finds the k cheapest loopless paths between two vertices with Yen's
+ * algorithm, to offer alternative itineraries next to the shortest one.
+ *
+ * Each new path is found by deviating from the last path found at one of its vertices,
+ * the spur vertex: the part of the path before the spur vertex (the root) is kept, its
+ * vertices are blocked to keep the path loopless, the edges leaving the spur vertex that
+ * earlier paths with the same root took are blocked, and the rest of the path is searched
+ * from the spur vertex. The spur searches of one round do not depend on each other, so they
+ * run in parallel, each worker thread reusing its own ShortestPathSearch. Following Lawler,
+ * a path is only spurred at or after the vertex where it left the path it was derived from,
+ * since the earlier spurs were already tried. Paths are Route objects over vertex numbers,
+ * so candidates are never copied as lists of data items.
+ *
+ * @param <T> the data type stored at each graph vertex
+ */
+public class KShortestPaths<T> {
+    private final CompactGraph<T> graph;
+    private final ThreadLocal<ShortestPathSearch<T>> searches;
+
+    /**
+     * Creates a k shortest paths finder over graph.
+     *
+     * @param graph the graph to search
+     * @throws NullPointerException if graph is null
+     */
+    public KShortestPaths(CompactGraph<T> graph) {
+        if (graph == null) throw new NullPointerException("Cannot search a null graph");
+        this.graph = graph;
+        this.searches = ThreadLocal.withInitial(() -> new ShortestPathSearch<>(graph));
+    }
+
+    /**
+     * Returns the graph this finder searches.
+     *
+     * @return the graph being searched
+     */
+    public CompactGraph<T> getGraph() { return graph; }
+
+    /**
+     * Finds up to k loopless paths from start to end, cheapest first.
+     *
+     * @param start the data item in the starting vertex of the paths
+     * @param end the data item in the destination vertex of the paths
+     * @param k the largest number of paths to return
+     * @return the k cheapest paths in order of cost, fewer if there are no more
+     * @throws IllegalArgumentException if k is not positive
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when start or end is not in the graph
+     */
+    public List<Route<T>> find(T start, T end, int k) {
+        if (start == null || end == null) throw new NullPointerException("NullPointerException: Start or End is null");
+        if (k <= 0) throw new IllegalArgumentException("Number of paths must be positive");
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if (s == -1 || t == -1) throw new NoSuchElementException("No path exists");
+
+        ShortestPathSearch<T> search = searches.get();
+        int cost = search.run(s, t);
+        if (cost == ShortestPathSearch.INFINITY) throw new NoSuchElementException("No path exists");
+
+        List<Route<T>> found = new ArrayList<>(k);
+        List<Integer> deviations = new ArrayList<>(k); // index where each found path left its parent
+        PriorityQueue<Route<T>> candidates = new PriorityQueue<>();
+        HashMap<Route<T>, Integer> candidateDeviation = new HashMap<>();
+        found.add(new Route<>(graph, search.pathTo(t), cost));
+        deviations.add(0);
+
+        while (found.size() < k) {
+            Route<T> last = found.get(found.size() - 1);
+            int[] rootCost = rootCosts(last);
+            int from = deviations.get(deviations.size() - 1);
+            Route<T>[] spurs = newRouteArray(last.size() - 1);
+            IntStream.range(from, last.size() - 1).parallel()
+                    .forEach(i -> spurs[i] = spur(last, i, rootCost, found, t));
+            for (int i = from; i < spurs.length; i++) {
+                Route<T> spur = spurs[i];
+                if (spur != null && !candidateDeviation.containsKey(spur) && !found.contains(spur)) {
+                    candidates.add(spur);
+                    candidateDeviation.put(spur, i);
+                }
+            }
+            if (candidates.isEmpty()) break;
+            Route<T> next = candidates.poll();
+            found.add(next);
+            deviations.add(candidateDeviation.remove(next));
+        }
+        return found;
+    }
+
+    /**
+     * Searches the cheapest path that follows last up to its vertex i and then leaves
+     * it, avoiding the edges that already found paths with the same root take at i.
+     */
+    private Route<T> spur(Route<T> last, int i, int[] rootCost, List<Route<T>> found, int t) {
+        ShortestPathSearch<T> search = searches.get();
+        search.clearBlocks();
+        int spurVertex = last.vertexAt(i);
+        for (Route<T> path : found) {
+            if (path.size() > i + 1 && sameRoot(path, last, i))
+                search.blockEdge(graph.findEdge(spurVertex, path.vertexAt(i + 1)));
+        }
+        for (int j = 0; j < i; j++)
+            search.blockVertex(last.vertexAt(j));
+
+        int cost = search.runAvoiding(spurVertex, t);
+        if (cost == ShortestPathSearch.INFINITY) return null;
+        int[] spurPath = search.pathTo(t);
+        int[] vertices = new int[i + spurPath.length];
+        for (int j = 0; j < i; j++)
+            vertices[j] = last.vertexAt(j);
+        System.arraycopy(spurPath, 0, vertices, i, spurPath.length);
+        return new Route<>(graph, vertices, rootCost[i] + cost);
+    }
+
+    /**
+     * Returns whether a and b visit the same vertices up to and including index i.
+     */
+    private static boolean sameRoot(Route<?> a, Route<?> b, int i) {
+        for (int j = i; j >= 0; j--)
+            if (a.vertexAt(j) != b.vertexAt(j)) return false;
+        return true;
+    }
+
+    /**
+     * Returns the cost of each prefix of route, rootCost[i] being the cost up to vertex i.
+     */
+    private int[] rootCosts(Route<T> route) {
+        int[] rootCost = new int[route.size()];
+        for (int i = 1; i < rootCost.length; i++)
+            rootCost[i] = rootCost[i - 1] + graph.weight(graph.findEdge(route.vertexAt(i - 1), route.vertexAt(i)));
+        return rootCost;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Route<T>[] newRouteArray(int length) {
+        return (Route<T>[]) new Route<?>[length];
+    }
+}
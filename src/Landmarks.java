@@ -0,0 +1,279 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Landmarks is the ALT (A*, landmarks, triangle inequality) heuristic. For a handful of
+ * landmark vertices L it stores the exact distances d(L, v) and d(v, L) to and from every
+ * vertex v. By the triangle inequality, for every target t
+ *
+ *     d(v, t) >= d(L, t) - d(L, v)    and    d(v, t) >= d(v, L) - d(t, L)
+ *
+ * so the largest of these differences over all landmarks is a lower bound on the remaining
+ * distance. Unlike GeoHeuristic it follows the real rail network, so it stays tight where the
+ * tracks detour around mountains or across the sea.
+ *
+ * Landmarks are either spread out farthest-first (each new landmark is the vertex farthest
+ * from the ones already chosen) or taken from the most populous Cities. The tables only
+ * describe the graph they were built on, so they can be saved and loaded again as long as
+ * the graph has not changed.
+ *
+ * @param <T> the data type stored at each graph vertex
+ */
+public class Landmarks<T> implements SearchHeuristic {
+
+    /**
+     * How the landmark vertices are chosen.
+     */
+    public enum Strategy {
+        /** Each landmark is the vertex farthest from the landmarks chosen before it. */
+        FARTHEST,
+
+        /** The most populous Cities; only valid for graphs of Cities. */
+        POPULATION
+    }
+
+    private static final int MAGIC = 0x54524c4d; // "TRLM"
+    private static final int VERSION = 2;
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 2; // estimate for vertices that cannot reach the target
+
+    private final CompactGraph<T> graph;
+    private final int[] landmarks;  // vertex number of each landmark
+    private final int[] from;       // from[v * k + i] = d(landmark i, v)
+    private final int[] to;         // to[v * k + i] = d(v, landmark i)
+
+    /**
+     * Chooses count landmarks in graph and computes their distance tables.
+     *
+     * @param graph the graph the heuristic is used on
+     * @param count the number of landmarks, at most the number of vertices
+     * @param strategy how the landmarks are chosen
+     * @throws IllegalArgumentException if count is not positive or larger than the number
+     *     of vertices, or strategy is POPULATION and the vertices are not Cities
+     * @throws NullPointerException if graph or strategy is null
+     */
+    public Landmarks(CompactGraph<T> graph, int count, Strategy strategy) {
+        if (graph == null || strategy == null) throw new NullPointerException("Cannot choose landmarks with null graph or strategy");
+        int n = graph.getVertexCount();
+        if (count <= 0 || count > n) throw new IllegalArgumentException("Landmark count must be between 1 and the number of vertices");
+        this.graph = graph;
+        this.landmarks = new int[count];
+        this.from = new int[n * count];
+        this.to = new int[n * count];
+
+        ShortestPathSearch<T> forward = new ShortestPathSearch<>(graph);
+        ShortestPathSearch<T> backward = new ShortestPathSearch<>(graph.reverse());
+        if (strategy == Strategy.POPULATION) {
+            int[] chosen = mostPopulous(count);
+            for (int i = 0; i < count; i++) {
+                landmarks[i] = chosen[i];
+                fillTables(i, forward, backward);
+            }
+        }
+        else {
+            // closest distance from any chosen landmark, the next landmark maximizes it
+            int[] nearest = new int[n];
+            Arrays.fill(nearest, ShortestPathSearch.INFINITY);
+            int next = highestDegree();
+            for (int i = 0; i < count; i++) {
+                landmarks[i] = next;
+                fillTables(i, forward, backward);
+                next = -1;
+                for (int v = 0; v < n; v++) {
+                    int d = Math.min(from[v * count + i], to[v * count + i]);
+                    nearest[v] = Math.min(nearest[v], d);
+                    if (isLandmark(v, i + 1)) continue;
+                    if (next == -1 || nearest[v] > nearest[next]) next = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates landmarks from tables read back from a file.
+     */
+    private Landmarks(CompactGraph<T> graph, int[] landmarks, int[] from, int[] to) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Returns the graph the landmark tables were computed on.
+     *
+     * @return the graph of the landmarks
+     */
+    public CompactGraph<T> getGraph() { return graph; }
+
+    /**
+     * Returns the data items of the landmark vertices.
+     *
+     * @return the landmarks, in the order they were chosen
+     */
+    public List<T> getLandmarks() {
+        List<T> list = new ArrayList<>(landmarks.length);
+        for (int v : landmarks) list.add(graph.dataAt(v));
+        return list;
+    }
+
+    /**
+     * Returns the largest triangle inequality lower bound on the distance from vertex to target.
+     *
+     * @param vertex the vertex number to estimate from
+     * @param target the vertex number of the query target
+     * @return a lower bound on the distance from vertex to target
+     */
+    public int estimate(int vertex, int target) {
+        int k = landmarks.length;
+        int best = 0;
+        int v = vertex * k;
+        int t = target * k;
+        for (int i = 0; i < k; i++) {
+            int fromV = from[v + i];
+            int fromT = from[t + i];
+            int toV = to[v + i];
+            int toT = to[t + i];
+            if (fromT != ShortestPathSearch.INFINITY) {
+                if (fromV != ShortestPathSearch.INFINITY) best = Math.max(best, fromT - fromV);
+            }
+            else if (fromV != ShortestPathSearch.INFINITY) {
+                return UNREACHABLE; // the landmark reaches vertex but not target, so vertex cannot reach target
+            }
+            if (toT != ShortestPathSearch.INFINITY) {
+                if (toV != ShortestPathSearch.INFINITY) best = Math.max(best, toV - toT);
+                else return UNREACHABLE; // target reaches the landmark but vertex does not
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Writes the landmark tables to file. The graph must hold Cities, which are stored
+     * by name so the tables can be matched to the graph again after a restart.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if the vertices of the graph are not Cities
+     */
+    public void save(Path file) throws IOException {
+        int n = graph.getVertexCount();
+        int k = landmarks.length;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(k);
+            out.writeLong(graph.fingerprint());
+            for (int v = 0; v < n; v++)
+                out.writeUTF(cityAt(graph, v).getName());
+            for (int landmark : landmarks)
+                out.writeInt(landmark);
+            for (int x : from)
+                out.writeInt(x);
+            for (int x : to)
+                out.writeInt(x);
+        }
+    }
+
+    /**
+     * Reads landmark tables written by save and matches them to graph by City name.
+     *
+     * @param file the file to read
+     * @param graph the graph the landmarks are used on
+     * @return the landmarks stored in file
+     * @throws IOException if the file cannot be read, is not a saved landmark file,
+     *     was written for a graph with different vertices or edges, or is corrupt
+     */
+    public static Landmarks<City> load(Path file, CompactGraph<City> graph) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a landmark file: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported landmark file version " + version);
+            int n = in.readInt();
+            int k = in.readInt();
+            if (n != graph.getVertexCount() || in.readLong() != graph.fingerprint())
+                throw new IOException("Landmark file was written for a different graph");
+            if (k <= 0 || k > n) throw new IOException("Landmark file is corrupt: " + file);
+
+            // vertex numbers in the file -> vertex numbers in graph
+            HashMap<String, Integer> byName = new HashMap<>(n * 2);
+            for (int v = 0; v < n; v++)
+                byName.put(cityAt(graph, v).getName(), v);
+            int[] renumber = new int[n];
+            for (int v = 0; v < n; v++) {
+                String name = in.readUTF();
+                Integer current = byName.get(name);
+                if (current == null) throw new IOException("City " + name + " is not in the graph");
+                renumber[v] = current;
+            }
+            int[] landmarks = new int[k];
+            for (int i = 0; i < k; i++) {
+                int landmark = in.readInt();
+                if (landmark < 0 || landmark >= n) throw new IOException("Landmark file is corrupt: " + file);
+                landmarks[i] = renumber[landmark];
+            }
+            int[] from = new int[n * k];
+            int[] to = new int[n * k];
+            for (int v = 0; v < n; v++)
+                for (int i = 0; i < k; i++)
+                    from[renumber[v] * k + i] = readDistance(in, file);
+            for (int v = 0; v < n; v++)
+                for (int i = 0; i < k; i++)
+                    to[renumber[v] * k + i] = readDistance(in, file);
+            return new Landmarks<>(graph, landmarks, from, to);
+        }
+    }
+
+    private static int readDistance(DataInputStream in, Path file) throws IOException {
+        int distance = in.readInt();
+        if (distance < 0) throw new IOException("Landmark file is corrupt: " + file); // would make the bounds inadmissible
+        return distance;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from landmark i in both directions and stores the distances.
+     */
+    private void fillTables(int i, ShortestPathSearch<T> forward, ShortestPathSearch<T> backward) {
+        int k = landmarks.length;
+        forward.run(landmarks[i], -1);
+        backward.run(landmarks[i], -1);
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            from[v * k + i] = forward.distance(v);
+            to[v * k + i] = backward.distance(v);
+        }
+    }
+
+    private boolean isLandmark(int v, int chosen) {
+        for (int i = 0; i < chosen; i++)
+            if (landmarks[i] == v) return true;
+        return false;
+    }
+
+    private int highestDegree() {
+        int best = 0;
+        for (int v = 1; v < graph.getVertexCount(); v++)
+            if (graph.endEdge(v) - graph.firstEdge(v) > graph.endEdge(best) - graph.firstEdge(best))
+                best = v;
+        return best;
+    }
+
+    private int[] mostPopulous(int count) {
+        Integer[] order = new Integer[graph.getVertexCount()];
+        for (int v = 0; v < order.length; v++) {
+            cityAt(graph, v); // fails before sorting if the vertices are not Cities
+            order[v] = v;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(cityAt(graph, b).getPop(), cityAt(graph, a).getPop()));
+        int[] chosen = new int[count];
+        for (int i = 0; i < count; i++) chosen[i] = order[i];
+        return chosen;
+    }
+
+    private static City cityAt(CompactGraph<?> graph, int v) {
+        Object data = graph.dataAt(v);
+        if (!(data instanceof City)) throw new IllegalArgumentException("Graph vertices are not Cities");
+        return (City) data;
+    }
+}
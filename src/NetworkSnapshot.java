@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * NetworkSnapshot stores a whole train network in one binary file that loads without
+ * parsing, so startup does not have to import the CSV files again.
+ *
+ * The file holds the compressed sparse row arrays of the graph exactly as CompactGraph
+ * uses them, so read maps the file once and copies each array out with a single bulk get.
+ * Nothing is allocated per edge: the loaded TrainSelector routes on the CompactGraph built
+ * from those arrays and only creates its linked adjacency lists when it is first changed.
+ *
+ * File layout (big endian):
+ *
+ *     header   int magic "TRNS", int version, int vertex count n, int edge count m,
+ *              int string count s, int string bytes b, long CRC32 of everything after the header
+ *     doubles  latitude[n], longitude[n]
+ *     ints     population[n], name[n], region[n] (string numbers),
+ *              offsets[n + 1], targets[m], weights[m], string offsets[s + 1]
+ *     bytes    the UTF-8 strings, back to back
+ *
+ * Names and regions share one string table, so the region of many Cities is stored once.
+ * OffHeapGraph maps the same file and routes on the arrays where they are, without copying.
+ */
+public class NetworkSnapshot {
+    private static final int MAGIC = 0x54524e53; // "TRNS"
+    private static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+
+    private NetworkSnapshot() { }
+
+    /**
+     * Writes the vertices and edges of graph to file.
+     *
+     * @param graph the network to write
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     * @throws NullPointerException if graph or file is null
+     */
+    public static void write(TrainSelector<City> graph, Path file) throws IOException {
+        if (graph == null || file == null) throw new NullPointerException("Cannot write a snapshot with null graph or file");
+        ByteBuffer buffer = encode(graph.compact(), false);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    /**
+     * Lays out g in the snapshot format, in a heap buffer or, when direct is true, in a
+     * direct buffer outside the heap.
+     */
+    static ByteBuffer encode(CompactGraph<City> g, boolean direct) throws IOException {
+        int n = g.getVertexCount();
+        int m = g.targets.length;
+
+        // string table shared by names and regions
+        HashMap<String, Integer> stringIds = new HashMap<>();
+        ArrayList<byte[]> strings = new java.util.ArrayList<>();
+        int[] names = new int[n];
+        int[] regions = new int[n];
+        int stringBytes = 0;
+        for (int v = 0; v < n; v++) {
+            City city = g.dataAt(v);
+            for (int field = 0; field < 2; field++) {
+                String text = field == 0 ? city.getName() : city.getRegion();
+                Integer id = stringIds.get(text);
+                if (id == null) {
+                    id = strings.size();
+                    stringIds.put(text, id);
+                    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                    strings.add(bytes);
+                    stringBytes += bytes.length;
+                }
+                if (field == 0) names[v] = id;
+                else regions[v] = id;
+            }
+        }
+        int s = strings.size();
+
+        long size = HEADER_BYTES + 16L * n + 4L * (3 * n + (n + 1) + 2L * m + (s + 1)) + stringBytes;
+        if (size > Integer.MAX_VALUE) throw new IOException("Network is too large for a snapshot");
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m).putInt(s).putInt(stringBytes).putLong(0);
+        for (int v = 0; v < n; v++) buffer.putDouble(g.dataAt(v).getLat());
+        for (int v = 0; v < n; v++) buffer.putDouble(g.dataAt(v).getLng());
+        for (int v = 0; v < n; v++) buffer.putInt(g.dataAt(v).getPop());
+        putInts(buffer, names);
+        putInts(buffer, regions);
+        putInts(buffer, g.offsets);
+        putInts(buffer, g.targets);
+        putInts(buffer, g.weights);
+        int offset = 0;
+        for (byte[] bytes : strings) {
+            buffer.putInt(offset);
+            offset += bytes.length;
+        }
+        buffer.putInt(offset);
+        for (byte[] bytes : strings) buffer.put(bytes);
+
+        buffer.putLong(24, checksum(buffer, buffer.position()));
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads a network written by write.
+     *
+     * @param file the file to read
+     * @return a graph holding the Cities and railroads stored in file
+     * @throws IOException if the file cannot be read, is not a snapshot, has an unsupported
+     *     version, or fails its checksum
+     */
+    public static TrainSelector<City> read(Path file) throws IOException {
+        return TrainSelector.fromCompact(readGraph(file));
+    }
+
+    /**
+     * Reads a network written by write as a CompactGraph, for callers that only route on it.
+     *
+     * @param file the file to read
+     * @return the Cities and railroads stored in file
+     * @throws IOException if the file cannot be read, is not a snapshot, has an unsupported
+     *     version, or fails its checksum
+     */
+    public static CompactGraph<City> readGraph(Path file) throws IOException {
+        ByteBuffer buffer = map(file);
+        int n = buffer.getInt(8);
+        int m = buffer.getInt(12);
+        City[] cities = cities(buffer);
+        if (cities == null) throw new IOException("Network snapshot is corrupt: " + file);
+
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[m];
+        int[] weights = new int[m];
+        buffer.position(offsetsPosition(n));
+        buffer.asIntBuffer().get(offsets).get(targets).get(weights);
+        if (!isValid(n, offsets, targets)) throw new IOException("Network snapshot is corrupt: " + file);
+        return new CompactGraph<>(cities, offsets, targets, weights);
+    }
+
+    /**
+     * Maps file and checks its header, size and checksum. The header of the returned
+     * buffer gives the vertex, edge and string counts at bytes 8, 12 and 16.
+     */
+    static ByteBuffer map(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) throw new IOException("Not a network snapshot: " + file);
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Network snapshot is too large: " + file);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC) throw new IOException("Not a network snapshot: " + file);
+        int version = buffer.getInt(4);
+        if (version != VERSION) throw new IOException("Unsupported network snapshot version " + version);
+        int n = buffer.getInt(8);
+        int m = buffer.getInt(12);
+        int s = buffer.getInt(16);
+        int stringBytes = buffer.getInt(20);
+        long expected = HEADER_BYTES + 16L * n + 4L * (3L * n + (n + 1) + 2L * m + (s + 1)) + stringBytes;
+        if (n < 0 || m < 0 || s < 0 || stringBytes < 0 || buffer.capacity() != expected)
+            throw new IOException("Network snapshot is truncated: " + file);
+        if (buffer.getLong(24) != checksum(buffer, buffer.capacity())) throw new IOException("Network snapshot is corrupt: " + file);
+        return buffer;
+    }
+
+    /**
+     * Returns the byte position of the longitudes and populations of a snapshot with n
+     * vertices; each section is n values long and the latitudes start at HEADER_BYTES.
+     */
+    static int longitudePosition(int n) { return HEADER_BYTES + 8 * n; }
+
+    static int populationPosition(int n) { return HEADER_BYTES + 16 * n; }
+
+    /**
+     * Returns the byte position of the offsets of a snapshot with n vertices, which are
+     * followed by the targets and then the weights of its edges.
+     */
+    static int offsetsPosition(int n) { return HEADER_BYTES + 16 * n + 12 * n; }
+
+    /**
+     * Decodes the Cities of a snapshot buffer, or returns null if their names or regions
+     * refer to strings that do not exist.
+     */
+    static City[] cities(ByteBuffer buffer) {
+        int n = buffer.getInt(8);
+        int m = buffer.getInt(12);
+        int s = buffer.getInt(16);
+        int stringBytes = buffer.getInt(20);
+        ByteBuffer view = buffer.duplicate();
+        double[] lat = new double[n];
+        double[] lng = new double[n];
+        view.position(HEADER_BYTES);
+        view.asDoubleBuffer().get(lat).get(lng);
+        int[] pop = new int[n];
+        int[] names = new int[n];
+        int[] regions = new int[n];
+        int[] stringOffsets = new int[s + 1];
+        view.position(populationPosition(n));
+        view.asIntBuffer().get(pop).get(names).get(regions);
+        view.position(offsetsPosition(n) + 4 * (n + 1 + 2 * m));
+        view.asIntBuffer().get(stringOffsets);
+        view.position(view.position() + 4 * (s + 1));
+        byte[] bytes = new byte[stringBytes];
+        view.get(bytes);
+
+        for (int v = 0; v < n; v++)
+            if (names[v] < 0 || names[v] >= s || regions[v] < 0 || regions[v] >= s) return null;
+        if (stringOffsets[0] != 0 || stringOffsets[s] != stringBytes) return null;
+        for (int i = 0; i < s; i++)
+            if (stringOffsets[i] > stringOffsets[i + 1]) return null;
+
+        String[] strings = new String[s];
+        for (int i = 0; i < s; i++)
+            strings[i] = new String(bytes, stringOffsets[i], stringOffsets[i + 1] - stringOffsets[i], StandardCharsets.UTF_8);
+        City[] cities = new City[n];
+        for (int v = 0; v < n; v++)
+            cities[v] = new City(strings[names[v]], strings[regions[v]], pop[v], lat[v], lng[v]);
+        return cities;
+    }
+
+    /**
+     * Checks that the edge arrays of a snapshot only refer to vertices and edges that exist.
+     */
+    private static boolean isValid(int n, int[] offsets, int[] targets) {
+        if (offsets[0] != 0 || offsets[n] != targets.length) return false;
+        for (int v = 0; v < n; v++)
+            if (offsets[v] > offsets[v + 1]) return false;
+        for (int target : targets)
+            if (target < 0 || target >= n) return false;
+        return true;
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + 4 * values.length);
+    }
+
+    /**
+     * Returns the CRC32 of the bytes between the header and end.
+     */
+    private static long checksum(ByteBuffer buffer, int end) {
+        ByteBuffer body = buffer.duplicate();
+        body.limit(end);
+        body.position(HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return crc.getValue();
+    }
+}
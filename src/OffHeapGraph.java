@@ -0,0 +1,406 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * OffHeapGraph is a frozen train network whose adjacency, weights and per-City attributes
+ * live outside the Java heap, so a large network adds nothing for the garbage collector to
+ * trace or copy and does not lengthen its pauses.
+ *
+ * The network is kept in the NetworkSnapshot file format, either in a direct buffer filled
+ * from a TrainSelector by allocate, or in a read-only mapping of a snapshot file by map, in
+ * which case the operating system pages it in and shares it between processes. The edges
+ * are in compressed sparse row form like CompactGraph: the edges leaving vertex v are
+ * firstEdge(v) through endEdge(v) - 1. Only the City objects and the lookup from City to
+ * vertex number stay on the heap.
+ *
+ * Routing runs Dijkstra's algorithm reading offsets, targets and weights straight from the
+ * buffers. Each thread keeps its own search arrays and reuses them, so a query allocates
+ * nothing that grows with the network. The graph cannot be changed; all mutating methods
+ * throw UnsupportedOperationException, and any number of threads can read and route at once.
+ */
+public class OffHeapGraph implements GraphADT<City> {
+    private final ByteBuffer buffer;        // the whole snapshot, direct or mapped
+    private final boolean mapped;           // whether buffer maps a file
+    private final IntBuffer offsets;        // first edge of each vertex, offsets[n] == number of edges
+    private final IntBuffer targets;        // target vertex number of each edge
+    private final IntBuffer weights;        // weight of each edge
+    private final DoubleBuffer latitudes;   // of each vertex, in degrees
+    private final DoubleBuffer longitudes;
+    private final IntBuffer populations;
+    private final City[] cities;            // the City of each vertex number
+    private final HashMap<City, Integer> index = new HashMap<>();    // City -> vertex number
+    private final HashMap<String, Integer> names = new HashMap<>();  // normalized name -> vertex number
+    private final ThreadLocal<SearchState> searches;
+
+    private OffHeapGraph(ByteBuffer buffer, boolean mapped, String source) throws IOException {
+        this.buffer = buffer;
+        this.mapped = mapped;
+        int n = buffer.getInt(8);
+        int m = buffer.getInt(12);
+        this.cities = NetworkSnapshot.cities(buffer);
+        if (cities == null) throw new IOException("Network snapshot is corrupt: " + source);
+        this.latitudes = slice(NetworkSnapshot.HEADER_BYTES, 8 * n).asDoubleBuffer();
+        this.longitudes = slice(NetworkSnapshot.longitudePosition(n), 8 * n).asDoubleBuffer();
+        this.populations = slice(NetworkSnapshot.populationPosition(n), 4 * n).asIntBuffer();
+        int edges = NetworkSnapshot.offsetsPosition(n);
+        this.offsets = slice(edges, 4 * (n + 1)).asIntBuffer();
+        this.targets = slice(edges + 4 * (n + 1), 4 * m).asIntBuffer();
+        this.weights = slice(edges + 4 * (n + 1) + 4 * m, 4 * m).asIntBuffer();
+
+        // the edges of a mapped file are checked once here so routing can trust them
+        if (offsets.get(0) != 0 || offsets.get(n) != m) throw new IOException("Network snapshot is corrupt: " + source);
+        for (int v = 0; v < n; v++)
+            if (offsets.get(v) > offsets.get(v + 1)) throw new IOException("Network snapshot is corrupt: " + source);
+        for (int e = 0; e < m; e++)
+            if (targets.get(e) < 0 || targets.get(e) >= n) throw new IOException("Network snapshot is corrupt: " + source);
+
+        for (int v = 0; v < n; v++) {
+            index.put(cities[v], v);
+            names.putIfAbsent(City.normalizeName(cities[v].getName()), v);
+        }
+        this.searches = ThreadLocal.withInitial(() -> new SearchState(n, false));
+    }
+
+    /**
+     * Copies the vertices and edges currently in graph into a new direct buffer.
+     *
+     * @param graph the network to copy
+     * @return an off-heap copy of graph
+     * @throws NullPointerException if graph is null
+     * @throws IllegalArgumentException if the network needs more than 2 GB
+     */
+    public static OffHeapGraph allocate(TrainSelector<City> graph) {
+        if (graph == null) throw new NullPointerException("Cannot copy a null graph");
+        try {
+            return new OffHeapGraph(NetworkSnapshot.encode(graph.compact(), true), false, "direct buffer");
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Maps a network written by NetworkSnapshot.write. The file is checked once; its
+     * adjacency and weights are then read in place, never copied onto the heap.
+     *
+     * @param file the snapshot file to map
+     * @return the network stored in file
+     * @throws IOException if the file cannot be read, is not a snapshot, has an unsupported
+     *     version, or fails its checksum
+     * @throws NullPointerException if file is null
+     */
+    public static OffHeapGraph map(Path file) throws IOException {
+        if (file == null) throw new NullPointerException("Cannot map a null file");
+        return new OffHeapGraph(NetworkSnapshot.map(file), true, file.toString());
+    }
+
+    private ByteBuffer slice(int position, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.limit(position + length);
+        return view.slice();
+    }
+
+    /**
+     * Returns whether the graph is a mapping of a snapshot file rather than a direct buffer.
+     *
+     * @return true if the graph was created by map
+     */
+    public boolean isMapped() { return mapped; }
+
+    /**
+     * Returns the number of bytes the graph holds outside the heap.
+     *
+     * @return the size of the buffer holding the graph
+     */
+    public long getOffHeapBytes() { return buffer.capacity(); }
+
+    /**
+     * Returns the vertex number of a City.
+     *
+     * @param city the City to look up
+     * @return the vertex number of city, or -1 if it is not in the graph
+     * @throws NullPointerException if city is null
+     */
+    public int indexOf(City city) {
+        if (city == null) throw new NullPointerException("Cannot look up null data");
+        Integer v = index.get(city);
+        return v == null ? -1 : v;
+    }
+
+    /**
+     * Returns the City stored at a vertex number.
+     *
+     * @param v the vertex number
+     * @return the City of vertex v
+     */
+    public City dataAt(int v) { return cities[v]; }
+
+    /**
+     * Returns the City with the given name, ignoring case, accents and surrounding spaces.
+     *
+     * @param name the name of the City
+     * @return the City, or null if no City in the graph has that name
+     */
+    public City getCity(String name) {
+        if (name == null) return null;
+        Integer v = names.get(City.normalizeName(name));
+        return v == null ? null : cities[v];
+    }
+
+    /**
+     * Returns the position of the first edge leaving vertex v.
+     *
+     * @param v the vertex number
+     * @return the index of the first edge leaving v
+     */
+    public int firstEdge(int v) { return offsets.get(v); }
+
+    /**
+     * Returns the position one past the last edge leaving vertex v.
+     *
+     * @param v the vertex number
+     * @return the index one past the last edge leaving v
+     */
+    public int endEdge(int v) { return offsets.get(v + 1); }
+
+    /**
+     * Returns the target vertex number of edge e.
+     *
+     * @param e the edge index
+     * @return the vertex number edge e leads to
+     */
+    public int target(int e) { return targets.get(e); }
+
+    /**
+     * Returns the weight of edge e.
+     *
+     * @param e the edge index
+     * @return the weight of edge e
+     */
+    public int weight(int e) { return weights.get(e); }
+
+    /**
+     * Returns the latitude of vertex v, read from the buffer.
+     *
+     * @param v the vertex number
+     * @return the latitude in degrees, NaN if unknown
+     */
+    public double getLatitude(int v) { return latitudes.get(v); }
+
+    /**
+     * Returns the longitude of vertex v, read from the buffer.
+     *
+     * @param v the vertex number
+     * @return the longitude in degrees, NaN if unknown
+     */
+    public double getLongitude(int v) { return longitudes.get(v); }
+
+    /**
+     * Returns the population of vertex v, read from the buffer.
+     *
+     * @param v the vertex number
+     * @return the population
+     */
+    public int getPopulation(int v) { return populations.get(v); }
+
+    /**
+     * Returns the index of the edge from vertex u to vertex v.
+     *
+     * @param u the source vertex number
+     * @param v the target vertex number
+     * @return the edge index, or -1 if there is no such edge
+     */
+    public int findEdge(int u, int v) {
+        for (int e = offsets.get(u), end = offsets.get(u + 1); e < end; e++)
+            if (targets.get(e) == v)
+                return e;
+        return -1;
+    }
+
+    /**
+     * OffHeapGraph is frozen, vertices cannot be inserted.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public boolean insertVertex(City data) {
+        throw new UnsupportedOperationException("OffHeapGraph cannot be modified");
+    }
+
+    /**
+     * OffHeapGraph is frozen, vertices cannot be removed.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public boolean removeVertex(City data) {
+        throw new UnsupportedOperationException("OffHeapGraph cannot be modified");
+    }
+
+    /**
+     * OffHeapGraph is frozen, edges cannot be inserted.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public boolean insertEdge(City source, City target, int weight) {
+        throw new UnsupportedOperationException("OffHeapGraph cannot be modified");
+    }
+
+    /**
+     * OffHeapGraph is frozen, edges cannot be removed.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public boolean removeEdge(City source, City target) {
+        throw new UnsupportedOperationException("OffHeapGraph cannot be modified");
+    }
+
+    /**
+     * Check if the graph contains a vertex with data item *data*.
+     *
+     * @param data the data item to check for
+     * @return true if data item is stored in a vertex of the graph, false otherwise
+     * @throws NullPointerException if *data* is null
+     */
+    public boolean containsVertex(City data) {
+        if (data == null) throw new NullPointerException("Cannot contain null data vertex");
+        return index.containsKey(data);
+    }
+
+    /**
+     * Check if edge is in the graph.
+     *
+     * @param source the data item contained in the source vertex for the edge
+     * @param target the data item contained in the target vertex for the edge
+     * @return true if the edge is in the graph, false if it is not in the graph
+     * @throws NullPointerException if either source or target or both are null
+     */
+    public boolean containsEdge(City source, City target) {
+        if (source == null || target == null) throw new NullPointerException("Cannot contain edge adjacent to null data");
+        Integer u = index.get(source);
+        Integer v = index.get(target);
+        if (u == null || v == null) return false;
+        return findEdge(u, v) != -1;
+    }
+
+    /**
+     * Return the weight of an edge.
+     *
+     * @param source the data item contained in the source vertex for the edge
+     * @param target the data item contained in the target vertex for the edge
+     * @return the weight of the edge (0 or positive integer)
+     * @throws IllegalArgumentException if either source or target or both are not in the graph
+     * @throws NullPointerException if either source or target or both are null
+     * @throws NoSuchElementException if edge is not in the graph
+     */
+    public int getWeight(City source, City target) {
+        if (source == null || target == null) throw new NullPointerException("Cannot contain weighted edge adjacent to null data");
+        Integer u = index.get(source);
+        Integer v = index.get(target);
+        if (u == null || v == null) throw new IllegalArgumentException("Cannot retrieve weight of edge between vertices that do not exist");
+        int e = findEdge(u, v);
+        if (e == -1) throw new NoSuchElementException("No edge found between these vertices");
+        return weights.get(e);
+    }
+
+    /**
+     * Returns the shortest path between start and end.
+     * Uses Dijkstra's shortest path algorithm to find the shortest path.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the destination vertex for the path
+     * @return list of data item in vertices in order on the shortest path between vertex
+     * with data item start and vertex with data item end, including both start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public List<City> shortestPath(City start, City end) {
+        SearchState search = searches.get();
+        int t = requireVertex(end);
+        if (run(search, requireVertex(start), t) == ShortestPathSearch.INFINITY) throw new NoSuchElementException("No path exists");
+        LinkedList<City> path = new LinkedList<>();
+        for (int v = t; v != -1; v = search.pred[v]) path.addFirst(cities[v]);
+        return path;
+    }
+
+    /**
+     * Returns the cost of the path (sum over edge weights) between start and end.
+     * Uses Dijkstra's shortest path algorithm to find the shortest path.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the end vertex for the path
+     * @return the cost of the shortest path between vertex with data item start
+     * and vertex with data item end, including all edges between start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public int getPathCost(City start, City end) {
+        int d = run(searches.get(), requireVertex(start), requireVertex(end));
+        if (d == ShortestPathSearch.INFINITY) throw new NoSuchElementException("No path exists");
+        return d;
+    }
+
+    /**
+     * Check if the graph is empty (does not contain any vertices or edges).
+     *
+     * @return true if the graph does not contain any vertices or edges, false otherwise
+     */
+    public boolean isEmpty() {
+        return cities.length == 0;
+    }
+
+    /**
+     * Return the number of edges in the graph.
+     * Like TrainSelector, both directions of a rail line
+     * count as one bidirectional edge
+     *
+     * @return the number of edges in the graph
+     */
+    public int getEdgeCount() {
+        return targets.limit() / 2;
+    }
+
+    /**
+     * Return the number of vertices in the graph
+     *
+     * @return the number of vertices in the graph
+     */
+    public int getVertexCount() {
+        return cities.length;
+    }
+
+    private int requireVertex(City data) {
+        if (data == null) throw new NullPointerException("NullPointerException: Start or End is null");
+        Integer v = index.get(data);
+        if (v == null) throw new NoSuchElementException("No path exists");
+        return v;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source until target is settled, reading the edges
+     * from the buffers.
+     */
+    private int run(SearchState search, int source, int target) {
+        int[] dist = search.dist;
+        IndexedMinHeap heap = search.heap;
+        final IntBuffer offsets = this.offsets;
+        final IntBuffer targets = this.targets;
+        final IntBuffer weights = this.weights;
+
+        search.start(source);
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            if (u == target) {
+                heap.clear();
+                return dist[u];
+            }
+            int du = dist[u];
+            for (int e = offsets.get(u), end = offsets.get(u + 1); e < end; e++)
+                search.relax(u, targets.get(e), du + weights.get(e));
+        }
+        return ShortestPathSearch.INFINITY;
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.Objects;
+
+/**
+ * Pair is an immutable pair of two values, for example the start and end of a
+ * route in a batch of queries.
+ *
+ * @param <A> the type of the first value
+ * @param <B> the type of the second value
+ */
+public class Pair<A, B> {
+    private final A first;
+    private final B second;
+
+    /**
+     * Creates a pair of two values
+     *
+     * @param first the first value
+     * @param second the second value
+     */
+    public Pair(A first, B second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * Returns the first value of the pair
+     *
+     * @return the first value
+     */
+    public A getFirst() { return first; }
+
+    /**
+     * Returns the second value of the pair
+     *
+     * @return the second value
+     */
+    public B getSecond() { return second; }
+
+    /**
+     * Checks whether this Pair holds the same two values as another object
+     *
+     * @param o Object to compare to
+     * @return true if o is a Pair with equal first and second values
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Pair)) return false;
+        Pair<?, ?> other = (Pair<?, ?>) o;
+        return Objects.equals(first, other.first) && Objects.equals(second, other.second);
+    }
+
+    @Override
+    public int hashCode() { return 31 * Objects.hashCode(first) + Objects.hashCode(second); }
+
+    @Override
+    public String toString() { return "(" + first + ", " + second + ")"; }
+}
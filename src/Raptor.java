@@ -0,0 +1,454 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Raptor answers multi-criteria journey queries on a Timetable with RAPTOR, the
+ * Round-bAsed Public Transit Optimized Router of Delling, Pajor and Werneck.
+ *
+ * ConnectionScan only finds the journey arriving first. Raptor finds every journey that is
+ * not beaten on both arrival time and number of transfers: the fastest journey, the one
+ * with fewest changes, and those in between that trade a change for an earlier arrival.
+ *
+ * The trips of the timetable are grouped into routes, trips that stop at the same Cities in
+ * the same order without overtaking each other. Round k of a query finds the earliest
+ * arrival at every stop using k trips: it scans each route serving a stop improved in round
+ * k - 1 once, boarding the earliest trip it can catch and getting off wherever that arrives
+ * sooner than before. The number of rounds is bounded by the number of transfers allowed.
+ *
+ * A range query finds these journeys for every departure in a time range with rRAPTOR,
+ * running one query per departure from the start, latest first, keeping the arrivals of the
+ * later departures as bounds for the earlier ones. The departures can be split among the
+ * threads of the common pool; each thread keeps its own labels.
+ *
+ * The route arrays never change after construction and every thread has its own working
+ * arrays, so one Raptor can be used by any number of threads at once.
+ */
+public class Raptor {
+    /** Transfers allowed when a query does not say. */
+    public static final int DEFAULT_MAX_TRANSFERS = 5;
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final Timetable timetable;
+    // the stops of route r are routeStops[routeStopOffsets[r]] through routeStops[routeStopOffsets[r + 1] - 1]
+    final int[] routeStopOffsets;
+    final int[] routeStops;
+    // the trips of route r, earliest first, are routeTrips[routeTripOffsets[r]] through
+    // routeTrips[routeTripOffsets[r + 1] - 1]; they hold timetable trip numbers
+    final int[] routeTripOffsets;
+    final int[] routeTrips;
+    // trip i of route r arrives at and departs from its stop at position p at
+    // arrivals[j] and departures[j], where j = routeTimeOffsets[r] + (i * length of r) + p
+    final int[] routeTimeOffsets;
+    final int[] arrivals;
+    final int[] departures;
+    // stop s is at position stopRoutePositions[j] of route stopRoutes[j], for j from
+    // stopRouteOffsets[s] to stopRouteOffsets[s + 1] - 1
+    final int[] stopRouteOffsets;
+    final int[] stopRoutes;
+    final int[] stopRoutePositions;
+
+    private final ThreadLocal<Labels> labels;
+
+    /**
+     * Builds the routes of timetable.
+     *
+     * @param timetable the timetable to search
+     * @throws NullPointerException if timetable is null
+     */
+    public Raptor(Timetable timetable) {
+        if (timetable == null) throw new NullPointerException("Cannot search a null timetable");
+        this.timetable = timetable;
+        Timetable tt = timetable;
+
+        // group the trips by their sequence of stops, ordered by departure from the first stop
+        LinkedHashMap<List<Integer>, List<Integer>> patterns = new LinkedHashMap<>();
+        for (int t = 0; t < tt.getTripCount(); t++) {
+            int first = tt.tripOffsets[t];
+            int last = tt.tripOffsets[t + 1];
+            if (first == last) continue; // skipped by the import
+            List<Integer> stops = new ArrayList<>(last - first + 1);
+            stops.add(tt.depStop[tt.tripConnections[first]]);
+            for (int k = first; k < last; k++) stops.add(tt.arrStop[tt.tripConnections[k]]);
+            patterns.computeIfAbsent(stops, key -> new ArrayList<>()).add(t);
+        }
+
+        // split each group into routes whose trips never overtake each other
+        List<int[]> routes = new ArrayList<>();      // stops of each route
+        List<List<Integer>> trips = new ArrayList<>(); // trips of each route
+        for (Map.Entry<List<Integer>, List<Integer>> pattern : patterns.entrySet()) {
+            List<Integer> group = pattern.getValue();
+            group.sort(Comparator.comparingInt(t -> tt.depTime[tt.tripConnections[tt.tripOffsets[t]]]));
+            int[] stops = pattern.getKey().stream().mapToInt(Integer::intValue).toArray();
+            int start = trips.size();
+            for (int t : group) {
+                int r = start;
+                while (r < trips.size() && !follows(trips.get(r).get(trips.get(r).size() - 1), t)) r++;
+                if (r == trips.size()) {
+                    routes.add(stops);
+                    trips.add(new ArrayList<>());
+                }
+                trips.get(r).add(t);
+            }
+        }
+
+        int routeCount = routes.size();
+        this.routeStopOffsets = new int[routeCount + 1];
+        this.routeTripOffsets = new int[routeCount + 1];
+        this.routeTimeOffsets = new int[routeCount + 1];
+        for (int r = 0; r < routeCount; r++) {
+            int length = routes.get(r).length;
+            routeStopOffsets[r + 1] = routeStopOffsets[r] + length;
+            routeTripOffsets[r + 1] = routeTripOffsets[r] + trips.get(r).size();
+            routeTimeOffsets[r + 1] = routeTimeOffsets[r] + length * trips.get(r).size();
+        }
+        this.routeStops = new int[routeStopOffsets[routeCount]];
+        this.routeTrips = new int[routeTripOffsets[routeCount]];
+        this.arrivals = new int[routeTimeOffsets[routeCount]];
+        this.departures = new int[routeTimeOffsets[routeCount]];
+        int[] routesAtStop = new int[tt.getStopCount() + 1];
+        for (int r = 0; r < routeCount; r++) {
+            int[] stops = routes.get(r);
+            System.arraycopy(stops, 0, routeStops, routeStopOffsets[r], stops.length);
+            for (int p = 0; p < stops.length; p++) routesAtStop[stops[p] + 1]++;
+            int j = routeTimeOffsets[r];
+            for (int i = 0; i < trips.get(r).size(); i++) {
+                int t = trips.get(r).get(i);
+                routeTrips[routeTripOffsets[r] + i] = t;
+                for (int p = 0; p < stops.length; p++, j++) {
+                    // the train arrives at p by the connection before it and leaves by the one after it
+                    int before = p == 0 ? -1 : tt.tripConnections[tt.tripOffsets[t] + p - 1];
+                    int after = p == stops.length - 1 ? -1 : tt.tripConnections[tt.tripOffsets[t] + p];
+                    arrivals[j] = before == -1 ? tt.depTime[after] : tt.arrTime[before];
+                    departures[j] = after == -1 ? tt.arrTime[before] : tt.depTime[after];
+                }
+            }
+        }
+
+        for (int s = 0; s < tt.getStopCount(); s++) routesAtStop[s + 1] += routesAtStop[s];
+        this.stopRouteOffsets = routesAtStop;
+        this.stopRoutes = new int[routeStops.length];
+        this.stopRoutePositions = new int[routeStops.length];
+        int[] next = Arrays.copyOf(stopRouteOffsets, tt.getStopCount());
+        for (int r = 0; r < routeCount; r++) {
+            for (int p = 0; p < routeStopOffsets[r + 1] - routeStopOffsets[r]; p++) {
+                int j = next[routeStops[routeStopOffsets[r] + p]]++;
+                stopRoutes[j] = r;
+                stopRoutePositions[j] = p;
+            }
+        }
+        this.labels = ThreadLocal.withInitial(() -> new Labels(tt.getStopCount(), routeCount));
+    }
+
+    /**
+     * Returns whether trip b is never earlier than trip a at any of their stops.
+     */
+    private boolean follows(int a, int b) {
+        Timetable tt = timetable;
+        for (int k = 0; k < tt.tripOffsets[a + 1] - tt.tripOffsets[a]; k++) {
+            int ca = tt.tripConnections[tt.tripOffsets[a] + k];
+            int cb = tt.tripConnections[tt.tripOffsets[b] + k];
+            if (tt.depTime[cb] < tt.depTime[ca] || tt.arrTime[cb] < tt.arrTime[ca]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the timetable this search runs on.
+     *
+     * @return the timetable
+     */
+    public Timetable getTimetable() { return timetable; }
+
+    /**
+     * Returns the number of routes the trips were grouped into.
+     *
+     * @return the number of routes
+     */
+    public int getRouteCount() { return routeStopOffsets.length - 1; }
+
+    /**
+     * Finds the journeys from start to end leaving no earlier than departure that are
+     * not beaten on both arrival time and number of transfers, with at most
+     * DEFAULT_MAX_TRANSFERS transfers.
+     *
+     * @param start the City to leave from
+     * @param end the City to go to
+     * @param departure the earliest departure time, in seconds since midnight
+     * @return the journeys, fewest transfers first, each arriving earlier than the one before,
+     *     empty if no train gets to end on this day
+     * @throws NullPointerException if start or end is null
+     * @throws IllegalArgumentException if start or end is not served by the timetable or they are the same
+     */
+    public List<Journey> journeys(City start, City end, int departure) {
+        return journeys(start, end, departure, DEFAULT_MAX_TRANSFERS);
+    }
+
+    /**
+     * Finds the journeys from start to end leaving no earlier than departure that are
+     * not beaten on both arrival time and number of transfers.
+     *
+     * @param start the City to leave from
+     * @param end the City to go to
+     * @param departure the earliest departure time, in seconds since midnight
+     * @param maxTransfers the most transfers a journey may have
+     * @return the journeys, fewest transfers first, each arriving earlier than the one before,
+     *     empty if no train gets to end on this day
+     * @throws NullPointerException if start or end is null
+     * @throws IllegalArgumentException if start or end is not served by the timetable,
+     *     they are the same, or maxTransfers is negative
+     */
+    public List<Journey> journeys(City start, City end, int departure, int maxTransfers) {
+        int s = stop(start);
+        int t = stop(end);
+        if (s == t) throw new IllegalArgumentException("Start and end are the same City");
+        if (maxTransfers < 0) throw new IllegalArgumentException("Cannot allow a negative number of transfers");
+        Labels l = labels.get();
+        int rounds = l.reset(maxTransfers + 1);
+        List<Journey> found = new ArrayList<>();
+        run(l, s, t, departure, INFINITY, rounds, found);
+        return found;
+    }
+
+    /**
+     * Finds, for every departure from start between from and until, the journeys to end
+     * that are not beaten on departure time, arrival time and number of transfers: no other
+     * journey leaves as late, arrives as early and changes trains as few times.
+     *
+     * @param start the City to leave from
+     * @param end the City to go to
+     * @param from the start of the departure range, in seconds since midnight
+     * @param until the end of the departure range, inclusive
+     * @param maxTransfers the most transfers a journey may have
+     * @param parallel whether to split the departures among the threads of the common pool
+     * @return the journeys, by departure time, then fewest transfers first
+     * @throws NullPointerException if start or end is null
+     * @throws IllegalArgumentException if start or end is not served by the timetable,
+     *     they are the same, maxTransfers is negative, or until is before from
+     */
+    public List<Journey> rangeJourneys(City start, City end, int from, int until, int maxTransfers, boolean parallel) {
+        int s = stop(start);
+        int t = stop(end);
+        if (s == t) throw new IllegalArgumentException("Start and end are the same City");
+        if (maxTransfers < 0) throw new IllegalArgumentException("Cannot allow a negative number of transfers");
+        if (until < from) throw new IllegalArgumentException("Departure range ends before it starts");
+
+        // every time a train leaves start within the range, latest first
+        int[] times = new int[0];
+        int n = 0;
+        for (int j = stopRouteOffsets[s]; j < stopRouteOffsets[s + 1]; j++) {
+            int r = stopRoutes[j];
+            int length = routeStopOffsets[r + 1] - routeStopOffsets[r];
+            if (stopRoutePositions[j] == length - 1) continue;
+            for (int i = 0; i < routeTripOffsets[r + 1] - routeTripOffsets[r]; i++) {
+                int time = departures[routeTimeOffsets[r] + i * length + stopRoutePositions[j]];
+                if (time < from || time > until) continue;
+                if (n == times.length) times = Arrays.copyOf(times, Math.max(16, 2 * n));
+                times[n++] = time;
+            }
+        }
+        int[] departuresFromStart = IntStream.of(Arrays.copyOf(times, n)).distinct()
+                .boxed().sorted(Comparator.reverseOrder()).mapToInt(Integer::intValue).toArray();
+
+        // rRAPTOR over contiguous slices of the departures, one set of labels per slice
+        int slices = parallel ? Math.max(1, Math.min(departuresFromStart.length, 4 * Runtime.getRuntime().availableProcessors())) : 1;
+        List<List<Journey>> found = new ArrayList<>();
+        for (int i = 0; i < slices; i++) found.add(new ArrayList<>());
+        IntStream range = IntStream.range(0, slices);
+        (parallel ? range.parallel() : range).forEach(i -> {
+            Labels l = labels.get();
+            int rounds = l.reset(maxTransfers + 1);
+            int first = (int) ((long) departuresFromStart.length * i / slices);
+            int last = (int) ((long) departuresFromStart.length * (i + 1) / slices);
+            for (int d = first; d < last; d++) run(l, s, t, departuresFromStart[d], until, rounds, found.get(i));
+        });
+
+        // keep the journeys no other journey beats on all three criteria
+        List<Journey> all = new ArrayList<>();
+        for (List<Journey> slice : found) all.addAll(slice);
+        all.sort(Comparator.comparingInt(Journey::getDepartureTime).reversed()
+                .thenComparingInt(Journey::getTransferCount).thenComparingInt(Journey::getArrivalTime));
+        List<Journey> pareto = new ArrayList<>();
+        for (Journey journey : all) {
+            boolean beaten = false;
+            for (Journey other : pareto) {
+                if (other.getTransferCount() <= journey.getTransferCount() && other.getArrivalTime() <= journey.getArrivalTime()) {
+                    beaten = true;
+                    break;
+                }
+            }
+            if (!beaten) pareto.add(journey);
+        }
+        pareto.sort(Comparator.comparingInt(Journey::getDepartureTime).thenComparingInt(Journey::getTransferCount));
+        return pareto;
+    }
+
+    /**
+     * Runs the rounds of one query from s at departure, boarding at s no later than until,
+     * starting from the arrivals already in l, and adds the journeys that improve the arrival
+     * at t to found.
+     */
+    private void run(Labels l, int s, int t, int departure, int until, int rounds, List<Journey> found) {
+        int[] change = timetable.changeTime;
+        l.clearMarks();
+        l.arrival[0][s] = departure;
+        l.route[0][s] = -1;
+        l.mark(s);
+        boolean[] improved = new boolean[rounds + 1];
+
+        for (int k = 1; k <= rounds && l.markedCount > 0; k++) {
+            int[] before = l.arrival[k - 1];
+            int[] now = l.arrival[k];
+            for (int p = 0; p < now.length; p++) {
+                if (before[p] < now[p]) l.copy(k - 1, k, p);
+            }
+
+            // queue every route through a marked stop, from the first marked position
+            int queued = 0;
+            for (int m = 0; m < l.markedCount; m++) {
+                int p = l.markedStops[m];
+                l.marked[p] = false;
+                for (int j = stopRouteOffsets[p]; j < stopRouteOffsets[p + 1]; j++) {
+                    int r = stopRoutes[j];
+                    if (l.queuedFrom[r] == -1) l.queuedRoutes[queued++] = r;
+                    if (l.queuedFrom[r] == -1 || stopRoutePositions[j] < l.queuedFrom[r])
+                        l.queuedFrom[r] = stopRoutePositions[j];
+                }
+            }
+            l.markedCount = 0;
+
+            for (int q = 0; q < queued; q++) {
+                int r = l.queuedRoutes[q];
+                int length = routeStopOffsets[r + 1] - routeStopOffsets[r];
+                int tripCount = routeTripOffsets[r + 1] - routeTripOffsets[r];
+                int times = routeTimeOffsets[r];
+                int trip = -1;
+                int boardedAt = -1;
+                for (int pos = l.queuedFrom[r]; pos < length; pos++) {
+                    int p = routeStops[routeStopOffsets[r] + pos];
+                    if (trip != -1) {
+                        int arrival = arrivals[times + trip * length + pos];
+                        if (arrival < now[p] && arrival < now[t]) {
+                            now[p] = arrival;
+                            l.route[k][p] = r;
+                            l.trip[k][p] = trip;
+                            l.boardedAt[k][p] = boardedAt;
+                            l.alightedAt[k][p] = pos;
+                            l.mark(p);
+                            if (p == t) improved[k] = true;
+                        }
+                    }
+                    if (pos == length - 1 || before[p] == INFINITY) continue;
+                    int ready = p == s ? before[p] : before[p] + change[p];
+                    if (trip == 0 || trip > 0 && departures[times + (trip - 1) * length + pos] < ready) continue;
+                    // the earliest trip leaving p at or after ready
+                    int low = 0;
+                    int high = trip == -1 ? tripCount : trip;
+                    while (low < high) {
+                        int mid = (low + high) >>> 1;
+                        if (departures[times + mid * length + pos] < ready) low = mid + 1;
+                        else high = mid;
+                    }
+                    if (low < (trip == -1 ? tripCount : trip) && (p != s || departures[times + low * length + pos] <= until)) {
+                        trip = low;
+                        boardedAt = pos;
+                    }
+                }
+                l.queuedFrom[r] = -1;
+            }
+        }
+
+        for (int k = 1; k <= rounds; k++) {
+            if (improved[k] && l.arrival[k][t] < l.arrival[k - 1][t]) found.add(journey(l, s, t, k));
+        }
+    }
+
+    /**
+     * Walks back from the label of t in round k to s, one trip per round.
+     */
+    private Journey journey(Labels l, int s, int t, int k) {
+        Timetable tt = timetable;
+        ArrayDeque<Journey.Leg> legs = new ArrayDeque<>();
+        int p = t;
+        while (p != s) {
+            int r = l.route[k][p];
+            int trip = routeTrips[routeTripOffsets[r] + l.trip[k][p]];
+            int board = tt.tripConnections[tt.tripOffsets[trip] + l.boardedAt[k][p]];
+            int alight = tt.tripConnections[tt.tripOffsets[trip] + l.alightedAt[k][p] - 1];
+            legs.addFirst(tt.leg(board, alight));
+            p = routeStops[routeStopOffsets[r] + l.boardedAt[k][p]];
+            k--;
+        }
+        return new Journey(legs.toArray(new Journey.Leg[0]));
+    }
+
+    private int stop(City city) {
+        if (city == null) throw new NullPointerException("NullPointerException: Start or End is null");
+        int stop = timetable.stopNumber(city);
+        if (stop == -1) throw new IllegalArgumentException(city.getName() + " is not served by the timetable");
+        return stop;
+    }
+
+    /**
+     * Labels holds the working arrays of the queries run by one thread: for each round and
+     * stop the earliest arrival and the trip it was reached by, and the marked stops and
+     * queued routes of the current round.
+     */
+    private static final class Labels {
+        int[][] arrival = new int[0][];
+        int[][] route = new int[0][];
+        int[][] trip = new int[0][];      // index of the trip within its route
+        int[][] boardedAt = new int[0][]; // positions in the route where it was boarded and left
+        int[][] alightedAt = new int[0][];
+        final boolean[] marked;
+        final int[] markedStops;
+        int markedCount;
+        final int[] queuedFrom;           // first position to scan each route from, -1 if not queued
+        final int[] queuedRoutes;
+        private final int stops;
+
+        Labels(int stops, int routes) {
+            this.stops = stops;
+            this.marked = new boolean[stops];
+            this.markedStops = new int[stops];
+            this.queuedFrom = new int[routes];
+            this.queuedRoutes = new int[routes];
+            Arrays.fill(queuedFrom, -1);
+        }
+
+        /**
+         * Forgets every arrival and makes room for rounds rounds, returning rounds.
+         */
+        int reset(int rounds) {
+            if (arrival.length < rounds + 1) {
+                arrival = new int[rounds + 1][stops];
+                route = new int[rounds + 1][stops];
+                trip = new int[rounds + 1][stops];
+                boardedAt = new int[rounds + 1][stops];
+                alightedAt = new int[rounds + 1][stops];
+            }
+            for (int[] round : arrival) Arrays.fill(round, INFINITY);
+            clearMarks();
+            return rounds;
+        }
+
+        void clearMarks() {
+            for (int m = 0; m < markedCount; m++) marked[markedStops[m]] = false;
+            markedCount = 0;
+        }
+
+        void mark(int stop) {
+            if (marked[stop]) return;
+            marked[stop] = true;
+            markedStops[markedCount++] = stop;
+        }
+
+        void copy(int from, int to, int stop) {
+            arrival[to][stop] = arrival[from][stop];
+            route[to][stop] = route[from][stop];
+            trip[to][stop] = trip[from][stop];
+            boardedAt[to][stop] = boardedAt[from][stop];
+            alightedAt[to][stop] = alightedAt[from][stop];
+        }
+    }
+}
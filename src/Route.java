@@ -0,0 +1,103 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Route is an immutable path through a CompactGraph, stored as the vertex numbers on
+ * the path and its total cost. The data items are looked up on demand by getStops,
+ * so routes are cheap to create and compare, as Yen's algorithm does by the hundred.
+ *
+ * @param <T> the data type stored at each graph vertex
+ */
+public class Route<T> implements Comparable<Route<T>> {
+    private final CompactGraph<T> graph;
+    private final int[] vertices;
+    private final int cost;
+
+    /**
+     * Creates a route through graph.
+     *
+     * @param graph the graph the route runs through
+     * @param vertices the vertex numbers on the route, from start to end; not copied
+     * @param cost the summed weight of the edges on the route
+     */
+    Route(CompactGraph<T> graph, int[] vertices, int cost) {
+        this.graph = graph;
+        this.vertices = vertices;
+        this.cost = cost;
+    }
+
+    /**
+     * Returns the summed weight of the edges on the route.
+     *
+     * @return the cost of the route
+     */
+    public int getCost() { return cost; }
+
+    /**
+     * Returns the number of vertices on the route, including start and end.
+     *
+     * @return the number of stops
+     */
+    public int size() { return vertices.length; }
+
+    /**
+     * Returns the data items on the route, from start to end, as an unmodifiable view.
+     *
+     * @return the stops of the route
+     */
+    public List<T> getStops() {
+        return new AbstractList<T>() {
+            public T get(int i) { return graph.dataAt(vertices[i]); }
+            public int size() { return vertices.length; }
+        };
+    }
+
+    /**
+     * Returns the vertex number of stop i.
+     */
+    int vertexAt(int i) { return vertices[i]; }
+
+    /**
+     * Orders routes by increasing cost, then by fewer stops.
+     *
+     * @param other the route being compared to
+     * @return negative, zero or positive as this route is cheaper, equal or more expensive
+     */
+    public int compareTo(Route<T> other) {
+        int cmp = Integer.compare(cost, other.cost);
+        return cmp != 0 ? cmp : Integer.compare(vertices.length, other.vertices.length);
+    }
+
+    /**
+     * Checks whether another object is a route through the same vertices
+     *
+     * @param o Object to compare to
+     * @return true if o is a Route with the same stops in the same order
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Route)) return false;
+        Route<?> other = (Route<?>) o;
+        return graph == other.graph && Arrays.equals(vertices, other.vertices);
+    }
+
+    @Override
+    public int hashCode() { return Arrays.hashCode(vertices); }
+
+    /**
+     * Returns the stops of the route separated by arrows, like "Rome -> Naples".
+     *
+     * @return a String representing this route
+     */
+    @Override
+    public String toString() {
+        StringBuilder route = new StringBuilder();
+        for (int i = 0; i < vertices.length; i++) {
+            if (i > 0) route.append(" -> ");
+            T data = graph.dataAt(vertices[i]);
+            route.append(data instanceof City ? ((City) data).getName() : String.valueOf(data));
+        }
+        return route.toString();
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * RouteCache is a bounded least recently used cache of routing results, keyed by the
+ * vertex numbers of a query's start and end and the search mode that answered it. When
+ * it is full, the route that was asked for least recently is evicted to make room.
+ *
+ * The cache does not know when the graph changes. Its owner must call invalidate after
+ * every change, because the vertex numbers and the routes are only valid for one version
+ * of the graph. Hit, miss, eviction and invalidation counts are kept so the capacity can
+ * be tuned against real traffic. All methods are synchronized.
+ *
+ * @param <V> the type of the cached routes
+ */
+public class RouteCache<V> {
+    private final int capacity;
+    private final LinkedHashMap<Long, V> routes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Creates an empty cache holding at most capacity routes.
+     *
+     * @param capacity the largest number of routes kept
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public RouteCache(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Route cache capacity must be positive");
+        this.capacity = capacity;
+        // access order turns the insertion ordered map into an LRU list
+        this.routes = new LinkedHashMap<Long, V>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                if (size() <= RouteCache.this.capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached route for a query and marks it as recently used.
+     *
+     * @param start vertex number of the start of the route
+     * @param end vertex number of the end of the route
+     * @param mode the search mode of the query
+     * @return the cached route, or null if it is not cached
+     */
+    public synchronized V get(int start, int end, SearchMode mode) {
+        V route = routes.get(key(start, end, mode));
+        if (route == null) misses++;
+        else hits++;
+        return route;
+    }
+
+    /**
+     * Caches the route for a query, evicting the least recently used route if the cache is full.
+     *
+     * @param start vertex number of the start of the route
+     * @param end vertex number of the end of the route
+     * @param mode the search mode of the query
+     * @param route the route to cache
+     */
+    public synchronized void put(int start, int end, SearchMode mode, V route) {
+        routes.put(key(start, end, mode), route);
+    }
+
+    /**
+     * Removes every cached route. Called whenever the graph changes.
+     */
+    public synchronized void invalidate() {
+        if (!routes.isEmpty()) invalidations++;
+        routes.clear();
+    }
+
+    /**
+     * Returns the largest number of routes kept.
+     *
+     * @return the capacity of the cache
+     */
+    public int getCapacity() { return capacity; }
+
+    /**
+     * Returns the number of routes currently cached.
+     *
+     * @return the number of cached routes
+     */
+    public synchronized int size() { return routes.size(); }
+
+    /**
+     * Returns the number of lookups that found a cached route.
+     *
+     * @return the hit count
+     */
+    public synchronized long getHitCount() { return hits; }
+
+    /**
+     * Returns the number of lookups that did not find a cached route.
+     *
+     * @return the miss count
+     */
+    public synchronized long getMissCount() { return misses; }
+
+    /**
+     * Returns the number of routes evicted to make room for newer ones.
+     *
+     * @return the eviction count
+     */
+    public synchronized long getEvictionCount() { return evictions; }
+
+    /**
+     * Returns the number of times a non-empty cache was cleared because the graph changed.
+     *
+     * @return the invalidation count
+     */
+    public synchronized long getInvalidationCount() { return invalidations; }
+
+    /**
+     * Returns the fraction of lookups that found a cached route.
+     *
+     * @return the hit rate, 0 if there have been no lookups
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public synchronized String toString() {
+        return String.format("RouteCache[size=%d/%d, hits=%d, misses=%d, evictions=%d, invalidations=%d]",
+                routes.size(), capacity, hits, misses, evictions, invalidations);
+    }
+
+    private static Long key(int start, int end, SearchMode mode) {
+        return ((long) start << 32 | (end & 0xffffffffL)) * SearchMode.values().length + mode.ordinal();
+    }
+}
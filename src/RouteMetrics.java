@@ -0,0 +1,44 @@
+/**
+ * RouteMetrics receives a measurement of every routing query a TrainSelector answers,
+ * see TrainSelector.setMetrics. RoutingMetrics is the standard implementation; another
+ * one can forward the measurements to any monitoring system.
+ *
+ * Methods are called on the thread that ran the query, right after it finished, so they
+ * should be quick and must be thread safe if the graph is queried from several threads.
+ */
+public interface RouteMetrics {
+
+    /**
+     * Called after a point to point query has been answered.
+     *
+     * @param mode the routing engine that answered the query
+     * @param nanos the time the query took, in nanoseconds
+     * @param settledVertices the vertices the search settled, 0 if the route came from the cache
+     * @param relaxedEdges the edges the search relaxed, 0 if the route came from the cache
+     * @param cacheHit true if the route came from the route cache
+     * @param found false if no path exists
+     */
+    public void queryCompleted(SearchMode mode, long nanos, int settledVertices, int relaxedEdges,
+                               boolean cacheHit, boolean found);
+
+    /**
+     * Called after a batch of queries, TrainSelector.getPathCosts or shortestPaths, has been
+     * answered. The batch runs one search per distinct start, shared by its queries.
+     *
+     * @param queries the number of queries in the batch
+     * @param searches the number of searches run
+     * @param nanos the time the whole batch took, in nanoseconds
+     * @param settledVertices the vertices settled by all the searches together
+     * @param relaxedEdges the edges relaxed by all the searches together
+     * @param noPath the number of queries for which no path exists
+     */
+    public void batchCompleted(int queries, int searches, long nanos, long settledVertices, long relaxedEdges, int noPath);
+
+    /**
+     * Called when the compact copy that queries run on is rebuilt after the graph changed.
+     *
+     * @param vertexCount the number of vertices
+     * @param edgeCount the number of directed edges
+     */
+    public void graphCompacted(int vertexCount, int edgeCount);
+}
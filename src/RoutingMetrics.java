@@ -0,0 +1,221 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * RoutingMetrics collects the measurements of a TrainSelector's routing queries: a latency
+ * histogram per routing engine, histograms of the vertices settled and edges relaxed per
+ * search, counts of cache hits and failed queries, the latency and size of query batches,
+ * and the size of the graph.
+ *
+ * Everything is recorded with atomic adds on counters and histograms, so any number of
+ * threads can record at once without locking, and reading the numbers never stops them.
+ * register makes the numbers visible to JMX tools such as JConsole under
+ * TrainRouteSelector:type=RoutingMetrics.
+ */
+public class RoutingMetrics implements RouteMetrics, RoutingMetricsMXBean {
+    private final EnumMap<SearchMode, Histogram> latency = new EnumMap<>(SearchMode.class); // nanoseconds
+    private final Histogram allLatency = new Histogram();
+    private final Histogram settled = new Histogram();
+    private final Histogram relaxed = new Histogram();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder noPath = new LongAdder();
+    private final Histogram batchLatency = new Histogram(); // nanoseconds per batch
+    private final LongAdder batchQueries = new LongAdder();
+    private final LongAdder batchSearches = new LongAdder();
+    private final LongAdder batchSettled = new LongAdder();
+    private final LongAdder batchRelaxed = new LongAdder();
+    private volatile int vertexCount;
+    private volatile int edgeCount;
+    private ObjectName name; // set while registered with JMX
+
+    /**
+     * Creates metrics with nothing recorded.
+     */
+    public RoutingMetrics() {
+        for (SearchMode mode : SearchMode.values()) latency.put(mode, new Histogram());
+    }
+
+    public void queryCompleted(SearchMode mode, long nanos, int settledVertices, int relaxedEdges,
+                               boolean cacheHit, boolean found) {
+        latency.get(mode).record(nanos);
+        allLatency.record(nanos);
+        if (cacheHit) {
+            cacheHits.increment();
+        }
+        else {
+            settled.record(settledVertices);
+            relaxed.record(relaxedEdges);
+        }
+        if (!found) noPath.increment();
+    }
+
+    public void batchCompleted(int queries, int searches, long nanos, long settledVertices, long relaxedEdges, int noPath) {
+        batchLatency.record(nanos);
+        batchQueries.add(queries);
+        batchSearches.add(searches);
+        batchSettled.add(settledVertices);
+        batchRelaxed.add(relaxedEdges);
+        this.noPath.add(noPath);
+    }
+
+    public void graphCompacted(int vertexCount, int edgeCount) {
+        this.vertexCount = vertexCount;
+        this.edgeCount = edgeCount;
+    }
+
+    /**
+     * Returns the latency histogram of one routing engine, in nanoseconds.
+     *
+     * @param mode the routing engine
+     * @return the latencies of the queries mode answered
+     */
+    public Histogram getLatency(SearchMode mode) { return latency.get(mode); }
+
+    /**
+     * Returns the latency histogram of all queries, in nanoseconds.
+     *
+     * @return the latencies of all queries
+     */
+    public Histogram getLatency() { return allLatency; }
+
+    /**
+     * Returns the histogram of the vertices settled per search.
+     *
+     * @return the settled vertex counts of the queries not answered from the cache
+     */
+    public Histogram getSettledVertices() { return settled; }
+
+    /**
+     * Returns the histogram of the edges relaxed per search.
+     *
+     * @return the relaxed edge counts of the queries not answered from the cache
+     */
+    public Histogram getRelaxedEdges() { return relaxed; }
+
+    /**
+     * Returns the latency histogram of query batches, in nanoseconds per batch.
+     *
+     * @return the latencies of the batches
+     */
+    public Histogram getBatchLatency() { return batchLatency; }
+
+    public long getQueryCount() { return allLatency.getCount(); }
+
+    public long getCacheHitCount() { return cacheHits.sum(); }
+
+    public double getCacheHitRate() {
+        long queries = getQueryCount();
+        return queries == 0 ? 0 : (double) getCacheHitCount() / queries;
+    }
+
+    public long getNoPathCount() { return noPath.sum(); }
+
+    public double getMeanLatencyMicros() { return allLatency.getMean() / 1000; }
+
+    public double getLatencyP50Micros() { return allLatency.getValueAtPercentile(50) / 1000.0; }
+
+    public double getLatencyP99Micros() { return allLatency.getValueAtPercentile(99) / 1000.0; }
+
+    public double getLatencyP999Micros() { return allLatency.getValueAtPercentile(99.9) / 1000.0; }
+
+    public double getMaxLatencyMicros() { return allLatency.getMax() / 1000.0; }
+
+    public Map<String, Long> getQueryCountByMode() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<SearchMode, Histogram> entry : latency.entrySet())
+            counts.put(entry.getKey().name(), entry.getValue().getCount());
+        return counts;
+    }
+
+    public Map<String, Double> getLatencyP99MicrosByMode() {
+        Map<String, Double> p99 = new LinkedHashMap<>();
+        for (Map.Entry<SearchMode, Histogram> entry : latency.entrySet())
+            if (entry.getValue().getCount() > 0)
+                p99.put(entry.getKey().name(), entry.getValue().getValueAtPercentile(99) / 1000.0);
+        return p99;
+    }
+
+    public double getMeanSettledVertices() { return settled.getMean(); }
+
+    public long getSettledVerticesP99() { return settled.getValueAtPercentile(99); }
+
+    public double getMeanRelaxedEdges() { return relaxed.getMean(); }
+
+    public long getBatchCount() { return batchLatency.getCount(); }
+
+    public long getBatchQueryCount() { return batchQueries.sum(); }
+
+    public long getBatchSearchCount() { return batchSearches.sum(); }
+
+    public double getMeanBatchLatencyMicros() { return batchLatency.getMean() / 1000; }
+
+    public double getBatchLatencyP99Micros() { return batchLatency.getValueAtPercentile(99) / 1000.0; }
+
+    public double getMeanBatchSettledVertices() {
+        long searches = getBatchSearchCount();
+        return searches == 0 ? 0 : (double) batchSettled.sum() / searches;
+    }
+
+    public double getMeanBatchRelaxedEdges() {
+        long searches = getBatchSearchCount();
+        return searches == 0 ? 0 : (double) batchRelaxed.sum() / searches;
+    }
+
+    public int getVertexCount() { return vertexCount; }
+
+    public int getEdgeCount() { return edgeCount; }
+
+    public void reset() {
+        for (Histogram histogram : latency.values()) histogram.reset();
+        allLatency.reset();
+        settled.reset();
+        relaxed.reset();
+        cacheHits.reset();
+        noPath.reset();
+        batchLatency.reset();
+        batchQueries.reset();
+        batchSearches.reset();
+        batchSettled.reset();
+        batchRelaxed.reset();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, under
+     * TrainRouteSelector:type=RoutingMetrics,name=graphName.
+     *
+     * @param graphName a name that tells this graph apart from others in the same JVM
+     * @throws IllegalStateException if the metrics are already registered, or the name is taken
+     */
+    public synchronized void register(String graphName) {
+        if (name != null) throw new IllegalStateException("Metrics are already registered as " + name);
+        try {
+            ObjectName objectName = new ObjectName("TrainRouteSelector:type=RoutingMetrics,name=" + ObjectName.quote(graphName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            name = objectName;
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("Could not register metrics " + graphName, e);
+        }
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server, if they are registered.
+     */
+    public synchronized void unregister() {
+        if (name == null) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("Could not unregister metrics " + name, e);
+        }
+        name = null;
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.Map;
+
+/**
+ * The JMX view of RoutingMetrics. Latencies are in microseconds; percentiles are read
+ * from the histograms, so they are exact to within 1.6%.
+ */
+public interface RoutingMetricsMXBean {
+
+    /** @return the number of point to point queries answered, batches are counted apart */
+    public long getQueryCount();
+
+    /** @return the number of queries answered from the route cache */
+    public long getCacheHitCount();
+
+    /** @return the fraction of queries answered from the route cache */
+    public double getCacheHitRate();
+
+    /** @return the number of queries for which no path exists, in batches too */
+    public long getNoPathCount();
+
+    /** @return the mean latency of a query */
+    public double getMeanLatencyMicros();
+
+    /** @return the median latency of a query */
+    public double getLatencyP50Micros();
+
+    /** @return the 99th percentile latency of a query */
+    public double getLatencyP99Micros();
+
+    /** @return the 99.9th percentile latency of a query */
+    public double getLatencyP999Micros();
+
+    /** @return the largest latency of a query */
+    public double getMaxLatencyMicros();
+
+    /** @return the number of queries answered by each routing engine */
+    public Map<String, Long> getQueryCountByMode();
+
+    /** @return the 99th percentile latency of each routing engine that answered queries */
+    public Map<String, Double> getLatencyP99MicrosByMode();
+
+    /** @return the mean number of vertices a search settled, over queries not answered from the cache */
+    public double getMeanSettledVertices();
+
+    /** @return the 99th percentile of the vertices a search settled */
+    public long getSettledVerticesP99();
+
+    /** @return the mean number of edges a search relaxed, over queries not answered from the cache */
+    public double getMeanRelaxedEdges();
+
+    /** @return the number of query batches answered */
+    public long getBatchCount();
+
+    /** @return the number of queries in all batches */
+    public long getBatchQueryCount();
+
+    /** @return the number of searches the batches ran, one per distinct start of a batch */
+    public long getBatchSearchCount();
+
+    /** @return the mean latency of a whole batch */
+    public double getMeanBatchLatencyMicros();
+
+    /** @return the 99th percentile latency of a whole batch */
+    public double getBatchLatencyP99Micros();
+
+    /** @return the mean number of vertices a batch search settled */
+    public double getMeanBatchSettledVertices();
+
+    /** @return the mean number of edges a batch search relaxed */
+    public double getMeanBatchRelaxedEdges();
+
+    /** @return the number of vertices of the graph the last query ran on */
+    public int getVertexCount();
+
+    /** @return the number of directed edges of the graph the last query ran on */
+    public int getEdgeCount();
+
+    /**
+     * Forgets every measurement so far. The graph size is kept.
+     */
+    public void reset();
+}
@@ -0,0 +1,592 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RoutingServer answers routing queries over HTTP with JSON, using the HttpServer built
+ * into the JDK:
+ *
+ *     GET  /route?from=Milan&amp;to=Lecce   the cost and the Cities of the shortest path
+ *     GET  /cost?from=Milan&amp;to=Lecce    the cost of the shortest path
+ *     POST /batch                        many queries on one version of the graph; the body is
+ *                                        {"queries": [{"from": "Milan", "to": "Lecce"}, ...], "paths": true}
+ *     GET  /health                       the version and size of the graph
+ *
+ * City names are matched like TrainSelector.getCity does. Errors are answered with a
+ * status code and {"error": "..."}: 400 for a bad request, 404 for an unknown City or
+ * when no path exists (a batch reports those per query instead), 503 when the server is
+ * overloaded and 504 when a request runs past its deadline.
+ *
+ * Requests are handled on virtual threads when the JVM has them (Java 21 and later),
+ * otherwise on a fixed pool of platform threads. All of them route on the lock-free
+ * snapshots of one ConcurrentTrainSelector, which can be updated while the server runs.
+ * A semaphore bounds the number of requests admitted, waiting for a thread or being
+ * worked on; one that finds no permit is turned away at once with 503 and Retry-After,
+ * so a burst cannot pile up unbounded work. Every request has a deadline, counted from
+ * when the server admitted it: a request that waited too long for a thread is answered
+ * with 504 without routing, and a batch stops at the first query that would start after
+ * it. A client can ask for a shorter deadline with the timeout parameter, in milliseconds.
+ * A request whose body stalls or trickles in is cut off by the JDK server, which closes
+ * connections that have not sent their whole request within sun.net.httpserver.maxReqTime
+ * seconds, so it cannot hold a permit and a thread forever.
+ * The first RoutingServer in a JVM sets that limit from its deadline unless it is
+ * already set, because the JDK reads it only once.
+ */
+public class RoutingServer {
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final int MAX_BATCH_QUERIES = 10000;
+    private static final String MAX_REQUEST_TIME_PROPERTY = "sun.net.httpserver.maxReqTime"; // seconds to receive a request
+    private static final ThreadLocal<Long> ADMITTED = new ThreadLocal<>(); // System.nanoTime() when the current request was admitted, null if it was turned away
+
+    private final ConcurrentTrainSelector<City> graph;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore permits; // one per request admitted and not yet answered
+    private final int maxConcurrent;
+    private final long deadlineNanos;
+    private volatile NameIndex names = new NameIndex(null);
+
+    /**
+     * An HTTP error status together with the message sent to the client.
+     */
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message, null, false, false);
+            this.status = status;
+        }
+    }
+
+    /**
+     * The Cities of one snapshot by normalized name, rebuilt when the snapshot changes.
+     */
+    private static final class NameIndex {
+        final ConcurrentTrainSelector.Snapshot<City> snapshot;
+        final HashMap<String, City> cities = new HashMap<>();
+
+        NameIndex(ConcurrentTrainSelector.Snapshot<City> snapshot) {
+            this.snapshot = snapshot;
+            if (snapshot == null) return;
+            CompactGraph<City> g = snapshot.getGraph();
+            for (int v = 0; v < g.getVertexCount(); v++)
+                cities.putIfAbsent(City.normalizeName(g.dataAt(v).getName()), g.dataAt(v));
+        }
+    }
+
+    /**
+     * Creates a server for graph on address. It does not accept requests until start is called.
+     *
+     * @param graph the network to route on
+     * @param address the address to listen on; port 0 picks a free port
+     * @param maxConcurrent the largest number of requests admitted at once
+     * @param deadlineMillis the longest time a request may take, from when it is admitted
+     * @throws IOException if the server cannot listen on address
+     * @throws NullPointerException if graph or address is null
+     * @throws IllegalArgumentException if maxConcurrent or deadlineMillis is not positive
+     */
+    public RoutingServer(ConcurrentTrainSelector<City> graph, InetSocketAddress address,
+                         int maxConcurrent, long deadlineMillis) throws IOException {
+        if (graph == null || address == null) throw new NullPointerException("Cannot serve a null graph or address");
+        if (maxConcurrent <= 0) throw new IllegalArgumentException("Concurrent request limit must be positive");
+        if (deadlineMillis <= 0) throw new IllegalArgumentException("Deadline must be positive");
+        this.graph = graph;
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent);
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        this.executor = newExecutor(Math.min(maxConcurrent, 64));
+        if (System.getProperty(MAX_REQUEST_TIME_PROPERTY) == null) // a stalled body must not hold a permit and a thread forever
+            System.setProperty(MAX_REQUEST_TIME_PROPERTY, Long.toString(TimeUnit.MILLISECONDS.toSeconds(deadlineMillis - 1) + 1));
+        this.server = HttpServer.create(address, 4096);
+        server.setExecutor(command -> {
+            if (!permits.tryAcquire()) {
+                command.run(); // answered with 503 on the dispatcher thread, see handle
+                return;
+            }
+            long admitted = System.nanoTime();
+            try {
+                executor.execute(() -> {
+                    ADMITTED.set(admitted);
+                    try {
+                        command.run();
+                    }
+                    finally {
+                        ADMITTED.remove();
+                        permits.release();
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        });
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Returns an executor that runs every task on a new virtual thread if this JVM has
+     * them, otherwise a pool of platform threads. Virtual threads are looked up by
+     * reflection, so the server still builds and runs on Java 11.
+     */
+    static ExecutorService newExecutor(int platformThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(platformThreads, runnable -> {
+                Thread thread = new Thread(runnable, "routing-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() { server.start(); }
+
+    /**
+     * Stops accepting requests, waits up to delaySeconds for the ones being answered,
+     * and shuts the threads down.
+     *
+     * @param delaySeconds the longest time to wait for running requests
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() { return server.getAddress().getPort(); }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Long admitted = ADMITTED.get();
+        if (admitted == null) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, error("Server is overloaded"));
+            return;
+        }
+        try {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            long deadline = admitted + deadlineNanos;
+            String timeout = query.get("timeout");
+            if (timeout != null) deadline = Math.min(deadline, admitted + TimeUnit.MILLISECONDS.toNanos(parseTimeout(timeout)));
+            checkDeadline(deadline);
+
+            String path = exchange.getRequestURI().getPath();
+            String response;
+            switch (path) {
+                case "/route":
+                    requireMethod(exchange, "GET");
+                    response = single(query, true);
+                    break;
+                case "/cost":
+                    requireMethod(exchange, "GET");
+                    response = single(query, false);
+                    break;
+                case "/batch":
+                    requireMethod(exchange, "POST");
+                    response = batch(readBody(exchange), deadline);
+                    break;
+                case "/health":
+                    requireMethod(exchange, "GET");
+                    response = health();
+                    break;
+                default:
+                    throw new HttpError(404, "Unknown endpoint " + path);
+            }
+            respond(exchange, 200, response);
+        }
+        catch (HttpError e) {
+            discardBody(exchange);
+            respond(exchange, e.status, error(e.getMessage()));
+        }
+        catch (Throwable e) { // never leave an exchange unanswered, not even after an Error
+            discardBody(exchange);
+            respond(exchange, 500, error("Internal error"));
+        }
+    }
+
+    /**
+     * Answers /route when withPath is set, otherwise /cost.
+     */
+    private String single(Map<String, String> query, boolean withPath) {
+        NameIndex index = currentNames();
+        City from = city(index, required(query, "from"));
+        City to = city(index, required(query, "to"));
+        Route<City> route;
+        try {
+            route = graph.route(index.snapshot, from, to);
+        }
+        catch (NoSuchElementException e) {
+            throw new HttpError(404, "No path exists");
+        }
+        StringBuilder json = new StringBuilder();
+        appendRoute(json, from, to, route, withPath);
+        return json.toString();
+    }
+
+    private String batch(String body, long deadline) {
+        Object request;
+        try {
+            request = Json.parse(body);
+        }
+        catch (IllegalArgumentException e) {
+            throw new HttpError(400, "Malformed JSON: " + e.getMessage());
+        }
+        if (!(request instanceof Map)) throw new HttpError(400, "Expected a JSON object");
+        Map<?, ?> fields = (Map<?, ?>) request;
+        Object queries = fields.get("queries");
+        if (!(queries instanceof List)) throw new HttpError(400, "Expected a queries array");
+        List<?> list = (List<?>) queries;
+        if (list.size() > MAX_BATCH_QUERIES) throw new HttpError(413, "At most " + MAX_BATCH_QUERIES + " queries per batch");
+        boolean withPaths = !Boolean.FALSE.equals(fields.get("paths"));
+
+        NameIndex index = currentNames();
+        StringBuilder json = new StringBuilder("{\"version\":").append(index.snapshot.getVersion()).append(",\"results\":[");
+        for (int i = 0; i < list.size(); i++) {
+            checkDeadline(deadline);
+            if (!(list.get(i) instanceof Map)) throw new HttpError(400, "Query " + i + " is not an object");
+            Map<?, ?> q = (Map<?, ?>) list.get(i);
+            if (!(q.get("from") instanceof String) || !(q.get("to") instanceof String))
+                throw new HttpError(400, "Query " + i + " needs from and to");
+            if (i > 0) json.append(',');
+            City from = index.cities.get(City.normalizeName((String) q.get("from")));
+            City to = index.cities.get(City.normalizeName((String) q.get("to")));
+            if (from == null || to == null) {
+                String unknown = (String) (from == null ? q.get("from") : q.get("to"));
+                json.append("{\"error\":").append(Json.quote("Unknown City: " + unknown)).append('}');
+                continue;
+            }
+            try {
+                appendRoute(json, from, to, graph.route(index.snapshot, from, to), withPaths);
+            }
+            catch (NoSuchElementException e) {
+                json.append("{\"from\":").append(Json.quote(from.getName())).append(",\"to\":").append(Json.quote(to.getName()))
+                        .append(",\"error\":\"No path exists\"}");
+            }
+        }
+        return json.append("]}").toString();
+    }
+
+    private String health() {
+        ConcurrentTrainSelector.Snapshot<City> snapshot = graph.snapshot();
+        return "{\"status\":\"ok\",\"version\":" + snapshot.getVersion()
+                + ",\"vertices\":" + snapshot.getGraph().getVertexCount()
+                + ",\"edges\":" + snapshot.getGraph().getEdgeCount()
+                + ",\"inFlight\":" + (maxConcurrent - permits.availablePermits()) + "}";
+    }
+
+    private static void appendRoute(StringBuilder json, City from, City to, Route<City> route, boolean withPath) {
+        json.append("{\"from\":").append(Json.quote(from.getName()))
+                .append(",\"to\":").append(Json.quote(to.getName()))
+                .append(",\"cost\":").append(route.getCost());
+        if (withPath) {
+            json.append(",\"path\":[");
+            List<City> stops = route.getStops();
+            for (int i = 0; i < stops.size(); i++) {
+                if (i > 0) json.append(',');
+                json.append(Json.quote(stops.get(i).getName()));
+            }
+            json.append(']');
+        }
+        json.append('}');
+    }
+
+    /**
+     * Returns the name index of the current snapshot, building it if the graph has changed.
+     */
+    private NameIndex currentNames() {
+        ConcurrentTrainSelector.Snapshot<City> snapshot = graph.snapshot();
+        NameIndex index = names;
+        if (index.snapshot != snapshot) {
+            index = new NameIndex(snapshot);
+            names = index; // racing threads build equal indexes, any of them may win
+        }
+        return index;
+    }
+
+    private static City city(NameIndex index, String name) {
+        City city = index.cities.get(City.normalizeName(name));
+        if (city == null) throw new HttpError(404, "Unknown City: " + name);
+        return city;
+    }
+
+    private static void checkDeadline(long deadline) {
+        if (System.nanoTime() - deadline > 0) throw new HttpError(504, "Deadline exceeded");
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equals(method)) {
+            exchange.getResponseHeaders().set("Allow", method);
+            throw new HttpError(405, "Use " + method);
+        }
+    }
+
+    private static String required(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) throw new HttpError(400, "Missing parameter " + name);
+        return value;
+    }
+
+    private static long parseTimeout(String timeout) {
+        try {
+            long millis = Long.parseLong(timeout);
+            if (millis > 0) return millis;
+        }
+        catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new HttpError(400, "timeout must be a positive number of milliseconds");
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) return query;
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) continue;
+            int equals = pair.indexOf('=');
+            try {
+                String name = URLDecoder.decode(equals == -1 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+                String value = equals == -1 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+                query.put(name, value);
+            }
+            catch (IllegalArgumentException e) {
+                throw new HttpError(400, "Malformed query string");
+            }
+        }
+        return query;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (body.size() + read > MAX_BODY_BYTES) throw new HttpError(413, "Request body is larger than " + MAX_BODY_BYTES + " bytes");
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads what is left of the request body, up to MAX_BODY_BYTES, so a request failed
+     * before its body was read does not have the connection reset under its response.
+     * Requests turned away with 503 are not drained, that would hold up the dispatcher.
+     */
+    private static void discardBody(HttpExchange exchange) {
+        byte[] buffer = new byte[8192];
+        try {
+            InputStream in = exchange.getRequestBody();
+            for (long left = MAX_BODY_BYTES; left > 0; ) {
+                int read = in.read(buffer);
+                if (read == -1) break;
+                left -= read;
+            }
+        }
+        catch (IOException e) {
+            // the client went away, the response will fail on its own
+        }
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + Json.quote(message) + "}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Json reads and writes the little JSON the server needs, so it has no dependencies.
+     * parse returns Maps, Lists, Strings, Doubles, Booleans and null.
+     */
+    static final class Json {
+        static final int MAX_DEPTH = 32; // deepest nesting of arrays and objects accepted
+        private final String text;
+        private int p;
+        private int depth;
+
+        private Json(String text) { this.text = text; }
+
+        /**
+         * Parses one JSON value.
+         *
+         * @throws IllegalArgumentException if text is not valid JSON or nests deeper than MAX_DEPTH
+         */
+        static Object parse(String text) {
+            Json json = new Json(text);
+            Object value = json.value();
+            json.skipSpace();
+            if (json.p != text.length()) throw json.error("unexpected text after the value");
+            return value;
+        }
+
+        /**
+         * Returns s as a JSON string literal.
+         */
+        static String quote(String s) {
+            StringBuilder out = new StringBuilder(s.length() + 2).append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') out.append('\\').append(c);
+                else if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+                else out.append(c);
+            }
+            return out.append('"').toString();
+        }
+
+        private Object value() {
+            skipSpace();
+            if (p == text.length()) throw error("unexpected end");
+            char c = text.charAt(p);
+            if (c == '{') return object();
+            if (c == '[') return array();
+            if (c == '"') return string();
+            if (text.startsWith("true", p)) { p += 4; return Boolean.TRUE; }
+            if (text.startsWith("false", p)) { p += 5; return Boolean.FALSE; }
+            if (text.startsWith("null", p)) { p += 4; return null; }
+            return number();
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            enter();
+            p++;
+            skipSpace();
+            if (p < text.length() && text.charAt(p) == '}') { p++; depth--; return map; }
+            while (true) {
+                skipSpace();
+                if (p == text.length() || text.charAt(p) != '"') throw error("expected a field name");
+                String name = string();
+                skipSpace();
+                expect(':');
+                map.put(name, value());
+                skipSpace();
+                if (p < text.length() && text.charAt(p) == ',') { p++; continue; }
+                expect('}');
+                depth--;
+                return map;
+            }
+        }
+
+        private List<Object> array() {
+            List<Object> list = new ArrayList<>();
+            enter();
+            p++;
+            skipSpace();
+            if (p < text.length() && text.charAt(p) == ']') { p++; depth--; return list; }
+            while (true) {
+                list.add(value());
+                skipSpace();
+                if (p < text.length() && text.charAt(p) == ',') { p++; continue; }
+                expect(']');
+                depth--;
+                return list;
+            }
+        }
+
+        /**
+         * Counts one more level of nesting, so deeply nested input fails as bad JSON
+         * instead of overflowing the stack.
+         */
+        private void enter() {
+            if (++depth > MAX_DEPTH) throw error("nested deeper than " + MAX_DEPTH + " levels");
+        }
+
+        private String string() {
+            StringBuilder out = new StringBuilder();
+            p++;
+            while (true) {
+                if (p >= text.length()) throw error("unterminated string");
+                char c = text.charAt(p++);
+                if (c == '"') return out.toString();
+                if (c != '\\') { out.append(c); continue; }
+                if (p >= text.length()) throw error("unterminated string");
+                char escape = text.charAt(p++);
+                switch (escape) {
+                    case '"': case '\\': case '/': out.append(escape); break;
+                    case 'b': out.append('\b'); break;
+                    case 'f': out.append('\f'); break;
+                    case 'n': out.append('\n'); break;
+                    case 'r': out.append('\r'); break;
+                    case 't': out.append('\t'); break;
+                    case 'u':
+                        if (p + 4 > text.length()) throw error("bad unicode escape");
+                        try {
+                            out.append((char) Integer.parseInt(text.substring(p, p + 4), 16));
+                        }
+                        catch (NumberFormatException e) {
+                            throw error("bad unicode escape");
+                        }
+                        p += 4;
+                        break;
+                    default: throw error("bad escape \\" + escape);
+                }
+            }
+        }
+
+        private Double number() {
+            int start = p;
+            while (p < text.length() && "+-0123456789.eE".indexOf(text.charAt(p)) >= 0) p++;
+            if (start == p) throw error("unexpected character " + text.charAt(p));
+            try {
+                return Double.valueOf(text.substring(start, p));
+            }
+            catch (NumberFormatException e) {
+                throw error("bad number");
+            }
+        }
+
+        private void expect(char c) {
+            if (p >= text.length() || text.charAt(p) != c) throw error("expected " + c);
+            p++;
+        }
+
+        private void skipSpace() {
+            while (p < text.length() && Character.isWhitespace(text.charAt(p))) p++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + p);
+        }
+    }
+
+    /**
+     * Serves the bundled network on the port given as the first argument, 8080 by default.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        ConcurrentTrainSelector<City> graph = new ConcurrentTrainSelector<>(UserInterface.loadGraph());
+        RoutingServer server = new RoutingServer(graph, new InetSocketAddress(port), 1024, 2000);
+        server.start();
+        System.out.println("Routing server listening on http://localhost:" + server.getPort() + "/");
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * A SearchHeuristic gives ShortestPathSearch a lower bound on the remaining distance
+ * from a vertex to the target of a query, which turns Dijkstra's algorithm into A*.
+ *
+ * Estimates must never be larger than the true distance and must be consistent:
+ * for every edge (u, v) with weight w, estimate(u, t) <= w + estimate(v, t). With such
+ * a heuristic every vertex is still settled at most once.
+ */
+public interface SearchHeuristic {
+
+    /**
+     * Returns a lower bound on the distance from vertex to target.
+     *
+     * @param vertex the vertex number to estimate from
+     * @param target the vertex number of the query target
+     * @return a lower bound on the distance from vertex to target (0 or positive integer)
+     */
+    public int estimate(int vertex, int target);
+}
@@ -0,0 +1,17 @@
+/**
+ * The routing engines TrainSelector can answer a shortest path query with. Every mode
+ * returns the same optimal path cost, they only differ in how much of the graph they search.
+ */
+public enum SearchMode {
+    /** Dijkstra's algorithm from the start until the destination is settled. */
+    DIJKSTRA,
+
+    /** A* guided by the great-circle distance between Cities, see GeoHeuristic. */
+    A_STAR,
+
+    /** Dijkstra's algorithm from both ends at once, see BidirectionalSearch. */
+    BIDIRECTIONAL,
+
+    /** A* guided by landmark distances and the triangle inequality, see Landmarks. */
+    ALT
+}
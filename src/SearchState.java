@@ -0,0 +1,104 @@
+import java.util.Arrays;
+
+/**
+ * SearchState holds the per-vertex arrays of the Dijkstra searches run by one thread, for
+ * the engines that run their own search loop over edges ShortestPathSearch cannot read:
+ * OffHeapGraph, whose edges are in buffers, and CustomizableRoutePlanner, whose searches
+ * also follow clique edges. A vertex's distance, predecessor and via are only valid when
+ * it was reached by the current search, so nothing has to be cleared between searches.
+ */
+class SearchState {
+    int[] dist;
+    int[] pred;
+    int[] via;       // what the edge from pred stands for, null unless asked for
+    int[] reached;   // stamp of the last search that reached each vertex
+    IndexedMinHeap heap;
+    private final boolean withVia;
+    private int stamp;
+
+    /**
+     * Creates the arrays for searches on n vertices.
+     *
+     * @param n the number of vertices
+     * @param withVia whether to keep a via slot per vertex
+     */
+    SearchState(int n, boolean withVia) {
+        this.withVia = withVia;
+        allocate(n);
+    }
+
+    /**
+     * Makes room for searches on n vertices, starting over when the arrays have to grow.
+     *
+     * @param n the number of vertices
+     * @return this state
+     */
+    SearchState fit(int n) {
+        if (dist.length < n) allocate(n);
+        return this;
+    }
+
+    /**
+     * Starts a new search from source, leaving every other vertex unreached.
+     *
+     * @param source the vertex to search from
+     */
+    void start(int source) {
+        if (++stamp == 0) { // wrapped around after 2^32 searches
+            Arrays.fill(reached, 0);
+            stamp = 1;
+        }
+        dist[source] = 0;
+        pred[source] = -1;
+        if (withVia) via[source] = -1;
+        reached[source] = stamp;
+        heap.add(source, 0);
+    }
+
+    /**
+     * Returns whether the current search has reached v, i.e. whether dist[v] is set.
+     *
+     * @param v a vertex number
+     * @return true if v was reached
+     */
+    boolean isReached(int v) { return reached[v] == stamp; }
+
+    /**
+     * Offers y a path of length d through x, taking it if y is unreached or still queued
+     * with a longer one.
+     *
+     * @return true if the path was taken
+     */
+    boolean relax(int x, int y, int d) {
+        if (reached[y] != stamp) {
+            reached[y] = stamp;
+            dist[y] = d;
+            pred[y] = x;
+            heap.add(y, d);
+            return true;
+        }
+        if (d < dist[y] && heap.contains(y)) {
+            dist[y] = d;
+            pred[y] = x;
+            heap.decreaseKey(y, d);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Like relax(x, y, d), and records via for y when the path is taken.
+     */
+    void relax(int x, int y, int d, int via) {
+        if (relax(x, y, d)) this.via[y] = via;
+    }
+
+    private void allocate(int n) {
+        dist = new int[n];
+        pred = new int[n];
+        via = withVia ? new int[n] : null;
+        reached = new int[n];
+        heap = new IndexedMinHeap(n);
+        stamp = 0;
+    }
+}
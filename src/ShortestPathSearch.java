@@ -0,0 +1,383 @@
+import java.util.*;
+
+/**
+ * ShortestPathSearch runs Dijkstra's shortest path algorithm over a CompactGraph.
+ *
+ * Tentative distances and predecessors are kept in int arrays indexed by vertex number,
+ * settled vertices in a bitset, and the frontier in an IndexedMinHeap that lowers the key
+ * of a queued vertex instead of queueing it twice. A vertex only counts as visited once it
+ * is settled (removed from the heap), so a cheaper route found later always replaces the
+ * current one. Paths are recovered from the predecessor array at the end, so nothing is
+ * copied while the search runs, and one query costs O((V + E) log V). Given a
+ * SearchHeuristic the same loop runs A* instead.
+ *
+ * A search object is reusable: each run only resets the vertices the previous run
+ * touched. It is not thread safe, use one search object per thread.
+ *
+ * @param <T> the data type stored at each graph vertex
+ */
+public class ShortestPathSearch<T> {
+    /** Distance of a vertex that has not been reached. */
+    public static final int INFINITY = Integer.MAX_VALUE;
+
+    private final CompactGraph<T> graph;
+    private final int[] dist;       // tentative distance of each vertex
+    private final int[] pred;       // predecessor of each vertex on its current path
+    private final int[] estimate;   // heuristic estimate of each reached vertex (A* only)
+    private final long[] settled;   // bitset of settled vertices
+    private final IndexedMinHeap heap;
+    private final int[] touched;    // vertices whose state must be reset before the next run
+    private final int[] targetMark; // targetMark[v] == runStamp when v is a target of runToTargets
+    private int runStamp;
+    private int[] vertexBlock;      // vertexBlock[v] == blockStamp when runAvoiding must not enter v
+    private int[] edgeBlock;        // edgeBlock[e] == blockStamp when runAvoiding must not use edge e
+    private int blockStamp;
+    private int touchedCount;
+    private int settledCount;       // vertices settled by the last run
+    private int relaxedCount;       // edges relaxed by the last run
+
+    /**
+     * Creates a search over graph.
+     *
+     * @param graph the graph to search
+     * @throws NullPointerException if graph is null
+     */
+    public ShortestPathSearch(CompactGraph<T> graph) {
+        if (graph == null) throw new NullPointerException("Cannot search a null graph");
+        int n = graph.getVertexCount();
+        this.graph = graph;
+        this.dist = new int[n];
+        this.pred = new int[n];
+        this.estimate = new int[n];
+        this.settled = new long[(n + 63) >>> 6];
+        this.heap = new IndexedMinHeap(n);
+        this.touched = new int[n];
+        this.targetMark = new int[n];
+        Arrays.fill(dist, INFINITY);
+        Arrays.fill(pred, -1);
+    }
+
+    /**
+     * Returns the graph this search runs over.
+     *
+     * @return the graph being searched
+     */
+    public CompactGraph<T> getGraph() { return graph; }
+
+    /**
+     * Runs Dijkstra's algorithm from source. The search stops as soon as target is
+     * settled, or settles every reachable vertex when target is -1.
+     *
+     * @param source vertex number of the start of the path
+     * @param target vertex number of the end of the path, or -1 to search the whole graph
+     * @return the distance from source to target, or INFINITY if target cannot be reached
+     */
+    public int run(int source, int target) {
+        return run(source, target, null);
+    }
+
+    /**
+     * Runs A* from source to target. Vertices are settled in order of their distance from
+     * source plus the heuristic estimate of their distance to target, so the search heads
+     * towards target instead of growing evenly in every direction. A null heuristic runs
+     * plain Dijkstra's algorithm.
+     *
+     * @param source vertex number of the start of the path
+     * @param target vertex number of the end of the path, or -1 to search the whole graph
+     * @param heuristic consistent lower bound on the distance to target, or null
+     * @return the distance from source to target, or INFINITY if target cannot be reached
+     */
+    public int run(int source, int target, SearchHeuristic heuristic) {
+        reset();
+        if (target == -1) heuristic = null;
+        final int[] offsets = graph.offsets;
+        final int[] targets = graph.targets;
+        final int[] weights = graph.weights;
+
+        reach(source, 0, -1, target, heuristic);
+        heap.add(source, estimate[source]);
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            settled[u >>> 6] |= 1L << u;
+            settledCount++;
+            if (u == target) return dist[u];
+            int du = dist[u];
+            for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+                int v = targets[e];
+                if ((settled[v >>> 6] & (1L << v)) != 0) continue;
+                relaxedCount++;
+                int d = du + weights[e];
+                if (d < dist[v]) {
+                    reach(v, d, u, target, heuristic);
+                    heap.offer(v, d + estimate[v]);
+                }
+            }
+        }
+        return target == -1 ? 0 : INFINITY;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source until every vertex in targets[from..to) is
+     * settled, so one search answers all queries that share a source. Targets may repeat.
+     *
+     * @param source vertex number of the start of the paths
+     * @param targets array holding the vertex numbers of the ends of the paths
+     * @param from index of the first target in targets
+     * @param to index after the last target in targets
+     * @return the number of distinct targets reached
+     */
+    public int runToTargets(int source, int[] targets, int from, int to) {
+        reset();
+        if (++runStamp == 0) { // stamp wrapped around, forget all old marks
+            Arrays.fill(targetMark, 0);
+            runStamp = 1;
+        }
+        int remaining = 0;
+        for (int i = from; i < to; i++) {
+            if (targetMark[targets[i]] != runStamp) {
+                targetMark[targets[i]] = runStamp;
+                remaining++;
+            }
+        }
+        if (remaining == 0) return 0;
+        final int[] offsets = graph.offsets;
+        final int[] edgeTargets = graph.targets;
+        final int[] weights = graph.weights;
+
+        int reached = 0;
+        reach(source, 0, -1, -1, null);
+        heap.add(source, 0);
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            settled[u >>> 6] |= 1L << u;
+            settledCount++;
+            if (targetMark[u] == runStamp && ++reached == remaining) break;
+            int du = dist[u];
+            for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+                int v = edgeTargets[e];
+                if ((settled[v >>> 6] & (1L << v)) != 0) continue;
+                relaxedCount++;
+                int d = du + weights[e];
+                if (d < dist[v]) {
+                    reach(v, d, u, -1, null);
+                    heap.offer(v, d);
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Unblocks every vertex and edge blocked for runAvoiding. Only a counter is
+     * incremented, so clearing is O(1).
+     */
+    public void clearBlocks() {
+        if (vertexBlock == null) {
+            vertexBlock = new int[dist.length];
+            edgeBlock = new int[graph.targets.length];
+        }
+        if (++blockStamp == 0) { // stamp wrapped around, forget all old blocks
+            Arrays.fill(vertexBlock, 0);
+            Arrays.fill(edgeBlock, 0);
+            blockStamp = 1;
+        }
+    }
+
+    /**
+     * Keeps runAvoiding from entering v until the next clearBlocks.
+     *
+     * @param v the vertex number to block
+     */
+    public void blockVertex(int v) {
+        if (vertexBlock == null) clearBlocks();
+        vertexBlock[v] = blockStamp;
+    }
+
+    /**
+     * Keeps runAvoiding from using edge e until the next clearBlocks.
+     *
+     * @param e the edge number to block, see CompactGraph.findEdge
+     */
+    public void blockEdge(int e) {
+        if (vertexBlock == null) clearBlocks();
+        edgeBlock[e] = blockStamp;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source to target without entering blocked vertices or
+     * using blocked edges, as needed for the spur searches of Yen's algorithm.
+     *
+     * @param source vertex number of the start of the path, which must not be blocked
+     * @param target vertex number of the end of the path
+     * @return the distance from source to target, or INFINITY if target cannot be reached
+     */
+    public int runAvoiding(int source, int target) {
+        if (vertexBlock == null) clearBlocks();
+        reset();
+        final int[] offsets = graph.offsets;
+        final int[] targets = graph.targets;
+        final int[] weights = graph.weights;
+        final int[] vertexBlock = this.vertexBlock;
+        final int[] edgeBlock = this.edgeBlock;
+        final int stamp = blockStamp;
+
+        reach(source, 0, -1, -1, null);
+        heap.add(source, 0);
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            settled[u >>> 6] |= 1L << u;
+            settledCount++;
+            if (u == target) return dist[u];
+            int du = dist[u];
+            for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+                int v = targets[e];
+                if ((settled[v >>> 6] & (1L << v)) != 0 || edgeBlock[e] == stamp || vertexBlock[v] == stamp) continue;
+                relaxedCount++;
+                int d = du + weights[e];
+                if (d < dist[v]) {
+                    reach(v, d, u, -1, null);
+                    heap.offer(v, d);
+                }
+            }
+        }
+        return INFINITY;
+    }
+
+    /**
+     * Starts a search from source that is then advanced one vertex at a time with
+     * settleNext, so callers can stop as soon as they have seen enough.
+     *
+     * @param source vertex number of the start of the search
+     */
+    public void start(int source) {
+        reset();
+        reach(source, 0, -1, -1, null);
+        heap.add(source, 0);
+    }
+
+    /**
+     * Settles the closest vertex that is not settled yet, continuing the search begun by start.
+     *
+     * @param limit the largest distance a vertex may have to be settled
+     * @return the vertex number settled, or -1 if no unsettled vertex is within limit
+     */
+    public int settleNext(int limit) {
+        if (heap.isEmpty() || heap.peekKey() > limit) return -1;
+        final int[] offsets = graph.offsets;
+        final int[] targets = graph.targets;
+        final int[] weights = graph.weights;
+        int u = heap.poll();
+        settled[u >>> 6] |= 1L << u;
+        settledCount++;
+        int du = dist[u];
+        for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+            int v = targets[e];
+            if ((settled[v >>> 6] & (1L << v)) != 0) continue;
+            relaxedCount++;
+            int d = du + weights[e];
+            if (d < dist[v]) {
+                reach(v, d, u, -1, null);
+                heap.offer(v, d);
+            }
+        }
+        return u;
+    }
+
+    /**
+     * Returns the distance found for v by the last run.
+     *
+     * @param v a vertex number
+     * @return the distance from the source to v, or INFINITY if v was not reached
+     */
+    public int distance(int v) { return dist[v]; }
+
+    /**
+     * Returns the predecessor of v on the path found by the last run.
+     *
+     * @param v a vertex number
+     * @return the vertex before v on its path, or -1 for the source and unreached vertices
+     */
+    public int predecessor(int v) { return pred[v]; }
+
+    /**
+     * Returns whether the last run settled v, i.e. whether distance(v) is final.
+     *
+     * @param v a vertex number
+     * @return true if v was settled
+     */
+    public boolean isSettled(int v) { return (settled[v >>> 6] & (1L << v)) != 0; }
+
+    /**
+     * Returns the number of vertices the last run settled.
+     *
+     * @return the number of settled vertices
+     */
+    public int getSettledCount() { return settledCount; }
+
+    /**
+     * Returns the number of edges the last run relaxed.
+     *
+     * @return the number of relaxed edges
+     */
+    public int getRelaxedCount() { return relaxedCount; }
+
+    /**
+     * Returns the vertex numbers on the path the last run found to target.
+     *
+     * @param target a vertex number reached by the last run
+     * @return the vertex numbers on the path, from the source to target
+     * @throws NoSuchElementException if target was not reached
+     */
+    public int[] pathTo(int target) {
+        if (dist[target] == INFINITY) throw new NoSuchElementException("No path exists");
+        int length = 0;
+        for (int v = target; v != -1; v = pred[v]) length++;
+        int[] path = new int[length];
+        for (int v = target; v != -1; v = pred[v]) path[--length] = v;
+        return path;
+    }
+
+    /**
+     * Returns the data items on the path the last run found to target.
+     *
+     * @param target a vertex number reached by the last run
+     * @return the data items on the path, from the source to target
+     * @throws NoSuchElementException if target was not reached
+     */
+    public LinkedList<T> dataPathTo(int target) {
+        if (dist[target] == INFINITY) throw new NoSuchElementException("No path exists");
+        LinkedList<T> path = new LinkedList<>();
+        for (int v = target; v != -1; v = pred[v])
+            path.addFirst(graph.dataAt(v));
+        return path;
+    }
+
+    /**
+     * Records a new tentative distance and predecessor for v. The heuristic estimate
+     * of v only depends on v and target, so it is computed once when v is first reached.
+     */
+    private void reach(int v, int d, int from, int target, SearchHeuristic heuristic) {
+        if (dist[v] == INFINITY) {
+            touched[touchedCount++] = v;
+            estimate[v] = heuristic == null ? 0 : heuristic.estimate(v, target);
+        }
+        dist[v] = d;
+        pred[v] = from;
+    }
+
+    /**
+     * Clears the state left behind by the previous run.
+     */
+    private void reset() {
+        for (int i = 0; i < touchedCount; i++) {
+            int v = touched[i];
+            dist[v] = INFINITY;
+            pred[v] = -1;
+            settled[v >>> 6] = 0;
+        }
+        touchedCount = 0;
+        settledCount = 0;
+        relaxedCount = 0;
+        heap.clear();
+    }
+}
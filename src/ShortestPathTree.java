@@ -0,0 +1,188 @@
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * ShortestPathTree holds the shortest paths from one source to every vertex within an
+ * optional cost cutoff, such as "all Cities within 300 km of Rome".
+ *
+ * The tree is grown lazily. Its search settles vertices in order of distance only as far
+ * as the questions asked so far require: stream hands out vertices as they are settled,
+ * and distance or pathTo for a far vertex keep the search going until it is settled. While
+ * it grows, the tree holds a whole ShortestPathSearch, about nine ints per vertex. Once
+ * it is complete, the distances and predecessors are copied into two int arrays and the
+ * search is dropped, so a finished one-to-all table costs two ints per vertex plus the
+ * settle order of the vertices in the tree.
+ *
+ * The tree belongs to the compact graph it was created on and does not see later changes
+ * to the TrainSelector. It is not thread safe.
+ *
+ * @param <T> the data type stored at each graph vertex
+ */
+public class ShortestPathTree<T> {
+    private final CompactGraph<T> graph;
+    private ShortestPathSearch<T> search; // null once the tree is complete
+    private final T source;
+    private final int cutoff;
+    private int[] order;     // settled vertex numbers, in order of distance
+    private int count;       // number of settled vertices in order
+    private boolean done;    // true when nothing within cutoff is left to settle
+    private int[] dist;      // distance of each vertex once the tree is complete, INFINITY outside it
+    private int[] pred;      // predecessor of each vertex once the tree is complete, -1 for the source
+
+    /**
+     * Creates the tree of shortest paths from source within cutoff.
+     *
+     * @param graph the graph to search
+     * @param source the data item of the source vertex
+     * @param cutoff the largest path cost included in the tree
+     * @throws IllegalArgumentException if cutoff is negative
+     * @throws NoSuchElementException if source is not in graph
+     */
+    public ShortestPathTree(CompactGraph<T> graph, T source, int cutoff) {
+        if (cutoff < 0) throw new IllegalArgumentException("Cutoff cannot be negative");
+        int s = graph.indexOf(source);
+        if (s == -1) throw new NoSuchElementException("No path exists");
+        this.graph = graph;
+        this.source = source;
+        this.cutoff = cutoff;
+        this.search = new ShortestPathSearch<>(graph);
+        this.order = new int[Math.min(16, graph.getVertexCount())];
+        search.start(s);
+    }
+
+    /**
+     * Returns the data item of the source vertex.
+     *
+     * @return the source of every path in the tree
+     */
+    public T getSource() { return source; }
+
+    /**
+     * Returns the largest path cost included in the tree.
+     *
+     * @return the cutoff, Integer.MAX_VALUE if there is none
+     */
+    public int getCutoff() { return cutoff; }
+
+    /**
+     * Returns the cost of the shortest path from the source to end.
+     *
+     * @param end the data item of the destination vertex
+     * @return the path cost, or ShortestPathSearch.INFINITY if end cannot be reached within the cutoff
+     * @throws NoSuchElementException if end is not in the graph
+     */
+    public int distance(T end) {
+        int t = graph.indexOf(end);
+        if (t == -1) throw new NoSuchElementException("No path exists");
+        if (!settle(t)) return ShortestPathSearch.INFINITY;
+        return done ? dist[t] : search.distance(t);
+    }
+
+    /**
+     * Returns whether end can be reached from the source within the cutoff.
+     *
+     * @param end the data item of the destination vertex
+     * @return true if end is in the tree
+     */
+    public boolean isReachable(T end) {
+        int t = graph.indexOf(end);
+        return t != -1 && settle(t);
+    }
+
+    /**
+     * Returns the shortest path from the source to end.
+     *
+     * @param end the data item of the destination vertex
+     * @return list of data items on the path, including both the source and end
+     * @throws NoSuchElementException if end cannot be reached within the cutoff
+     *     including when end is not in the graph
+     */
+    public List<T> pathTo(T end) {
+        int t = graph.indexOf(end);
+        if (t == -1 || !settle(t)) throw new NoSuchElementException("No path exists");
+        if (!done) return search.dataPathTo(t);
+        LinkedList<T> path = new LinkedList<>();
+        for (int v = t; v != -1; v = pred[v])
+            path.addFirst(graph.dataAt(v));
+        return path;
+    }
+
+    /**
+     * Returns the number of vertices reachable within the cutoff, completing the search.
+     *
+     * @return the number of vertices in the tree, including the source
+     */
+    public int size() {
+        while (advance()) { }
+        return count;
+    }
+
+    /**
+     * Returns the reachable vertices in order of their distance from the source, the
+     * source first. Vertices are only searched for as the stream is consumed, so
+     * taking the first few of a large tree is cheap.
+     *
+     * @return a sequential stream of the data items in the tree
+     */
+    public Stream<T> stream() {
+        Spliterator<T> vertices = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL) {
+            private int next = 0;
+
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (next == count && !advance()) return false;
+                action.accept(graph.dataAt(order[next++]));
+                return true;
+            }
+        };
+        return StreamSupport.stream(vertices, false);
+    }
+
+    /**
+     * Settles vertices until t is settled or the tree is complete.
+     */
+    private boolean settle(int t) {
+        while (!done) {
+            if (search.isSettled(t)) return true;
+            advance();
+        }
+        return dist[t] != ShortestPathSearch.INFINITY;
+    }
+
+    /**
+     * Settles one more vertex and records it.
+     */
+    private boolean advance() {
+        if (done) return false;
+        int v = search.settleNext(cutoff);
+        if (v == -1) {
+            complete();
+            return false;
+        }
+        if (count == order.length) order = Arrays.copyOf(order, Math.min(graph.getVertexCount(), 2 * order.length));
+        order[count++] = v;
+        return true;
+    }
+
+    /**
+     * Copies the distances and predecessors of the settled vertices out of the search
+     * and drops it.
+     */
+    private void complete() {
+        int n = graph.getVertexCount();
+        dist = new int[n];
+        pred = new int[n];
+        Arrays.fill(dist, ShortestPathSearch.INFINITY);
+        Arrays.fill(pred, -1);
+        for (int i = 0; i < count; i++) {
+            int v = order[i];
+            dist[v] = search.distance(v);
+            pred[v] = search.predecessor(v);
+        }
+        order = Arrays.copyOf(order, count);
+        search = null;
+        done = true;
+    }
+}
@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Timetable holds the scheduled trains of one service day between the Cities of a
+ * TrainSelector, imported from a feed in the style of GTFS.
+ *
+ * A feed is a directory of CSV files whose first row names the columns:
+ *
+ *     stops.txt       stop_id, stop_name, and optionally city, the name of the City the
+ *                     stop belongs to when stop_name is the name of a station
+ *     trips.txt       trip_id, and optionally trip_short_name, shown instead of trip_id
+ *     stop_times.txt  trip_id, arrival_time, departure_time, stop_id, stop_sequence
+ *     transfers.txt   optional: from_stop_id, to_stop_id, min_transfer_time
+ *
+ * Times are H:MM:SS or H:MM since midnight and may pass 24:00 for trains running after
+ * midnight. Other files and columns, such as calendars, are ignored, so every trip is
+ * taken to run on the day of the query. All stops of one City are treated as one stop.
+ * Changing trains in a City takes the min_transfer_time given for it in transfers.txt,
+ * or DEFAULT_CHANGE_TIME; staying on a train takes no time.
+ *
+ * The timetable is stored as primitive arrays of connections, one per train moving from
+ * one stop to the next, sorted by departure time, which is the layout the Connection Scan
+ * Algorithm scans (see ConnectionScan). The arrays never change after the import, so a
+ * Timetable can be shared by any number of threads.
+ */
+public class Timetable {
+    /** Seconds it takes to change trains in a City that transfers.txt has no time for. */
+    public static final int DEFAULT_CHANGE_TIME = 300;
+
+    private static final int TIME_BITS = 18;       // times are below 2^18 s, about 72 hours
+    private static final int INDEX_BITS = 27;      // at most 2^27 connections
+
+    final City[] cities;            // the City of each stop number
+    final HashMap<City, Integer> stopNumbers = new HashMap<>();
+    final int[] changeTime;         // seconds needed to change trains at each stop
+    final String[] tripNames;       // the name of each trip number
+
+    // connection c leaves depStop[c] at depTime[c] and reaches arrStop[c] at arrTime[c] on trip[c]
+    final int[] depStop;
+    final int[] arrStop;
+    final int[] depTime;
+    final int[] arrTime;
+    final int[] trip;
+    // the connections of trip t in the order the train runs them are
+    // tripConnections[tripOffsets[t]] through tripConnections[tripOffsets[t + 1] - 1]
+    final int[] tripOffsets;
+    final int[] tripConnections;
+    final int[] tripPosition;       // index of each connection in tripConnections
+
+    private final List<String> problems;
+
+    private Timetable(City[] cities, int[] changeTime, String[] tripNames, int[] depStop, int[] arrStop,
+                      int[] depTime, int[] arrTime, int[] trip, List<String> problems) {
+        this.cities = cities;
+        for (int i = 0; i < cities.length; i++) stopNumbers.put(cities[i], i);
+        this.changeTime = changeTime;
+        this.tripNames = tripNames;
+        this.depStop = depStop;
+        this.arrStop = arrStop;
+        this.depTime = depTime;
+        this.arrTime = arrTime;
+        this.trip = trip;
+        this.problems = Collections.unmodifiableList(problems);
+
+        int m = depStop.length;
+        this.tripOffsets = new int[tripNames.length + 1];
+        for (int c = 0; c < m; c++) tripOffsets[trip[c] + 1]++;
+        for (int t = 0; t < tripNames.length; t++) tripOffsets[t + 1] += tripOffsets[t];
+        this.tripConnections = new int[m];
+        this.tripPosition = new int[m];
+        int[] next = Arrays.copyOf(tripOffsets, tripNames.length);
+        // connections of one trip are sorted by departure in the order the train runs them
+        for (int c = 0; c < m; c++) {
+            tripPosition[c] = next[trip[c]]++;
+            tripConnections[tripPosition[c]] = c;
+        }
+    }
+
+    /**
+     * Imports the feed in directory feed, matching its stops to the Cities of graph by name.
+     * Rows that cannot be imported, such as stops of unknown Cities or trips whose times go
+     * backwards, are skipped and listed by getProblems.
+     *
+     * @param feed the directory holding the feed files
+     * @param graph the network whose Cities the stops belong to
+     * @return the timetable of the feed
+     * @throws IOException if a required file or column is missing or cannot be read
+     * @throws NullPointerException if feed or graph is null
+     */
+    public static Timetable load(Path feed, TrainSelector<City> graph) throws IOException {
+        if (feed == null || graph == null) throw new NullPointerException("Cannot load a timetable with null feed or graph");
+        CsvLoader loader = new CsvLoader();
+
+        // stops: stop id -> stop number, one stop number per City
+        HashMap<String, Integer> stopIds = new HashMap<>();
+        ArrayList<City> cities = new ArrayList<>();
+        HashMap<City, Integer> numbers = new HashMap<>();
+        loader.readTable(feed.resolve("stops.txt"), new CsvLoader.TableReader() {
+            int id;
+            int name;
+            int city;
+
+            public void header(CsvLoader.Row header, Path file) throws IOException {
+                id = header.column("stop_id", file);
+                name = header.column("stop_name", file);
+                city = header.optionalColumn("city");
+            }
+
+            public void row(CsvLoader.Row row) {
+                String cityName = city != -1 && city < row.fieldCount() ? row.string(city) : "";
+                if (cityName.isEmpty()) cityName = row.string(name);
+                City c = graph.getCity(cityName);
+                if (c == null) throw new IllegalArgumentException("unknown City " + cityName);
+                Integer number = numbers.get(c);
+                if (number == null) {
+                    number = cities.size();
+                    numbers.put(c, number);
+                    cities.add(c);
+                }
+                stopIds.put(row.string(id), number);
+            }
+        });
+
+        // trips: trip id -> trip number
+        HashMap<String, Integer> tripIds = new HashMap<>();
+        ArrayList<String> tripNames = new ArrayList<>();
+        loader.readTable(feed.resolve("trips.txt"), new CsvLoader.TableReader() {
+            int id;
+            int shortName;
+
+            public void header(CsvLoader.Row header, Path file) throws IOException {
+                id = header.column("trip_id", file);
+                shortName = header.optionalColumn("trip_short_name");
+            }
+
+            public void row(CsvLoader.Row row) {
+                String tripId = row.string(id);
+                if (tripIds.containsKey(tripId)) throw new IllegalArgumentException("duplicate trip " + tripId);
+                String name = shortName != -1 && shortName < row.fieldCount() ? row.string(shortName) : "";
+                tripIds.put(tripId, tripNames.size());
+                tripNames.add(name.isEmpty() ? tripId : name);
+            }
+        });
+
+        // stop times, kept as parallel arrays until they are sorted into trips
+        int[][] times = new int[5][1024]; // trip, sequence, stop, arrival, departure
+        int[] count = new int[1];
+        loader.readTable(feed.resolve("stop_times.txt"), new CsvLoader.TableReader() {
+            int tripColumn;
+            int arrival;
+            int departure;
+            int stop;
+            int sequence;
+
+            public void header(CsvLoader.Row header, Path file) throws IOException {
+                tripColumn = header.column("trip_id", file);
+                arrival = header.column("arrival_time", file);
+                departure = header.column("departure_time", file);
+                stop = header.column("stop_id", file);
+                sequence = header.column("stop_sequence", file);
+            }
+
+            public void row(CsvLoader.Row row) {
+                Integer t = tripIds.get(row.string(tripColumn));
+                if (t == null) throw new IllegalArgumentException("unknown trip " + row.string(tripColumn));
+                Integer s = stopIds.get(row.string(stop));
+                if (s == null) throw new IllegalArgumentException("unknown stop " + row.string(stop));
+                int arrive = parseTime(row.string(arrival));
+                int depart = parseTime(row.string(departure));
+                if (depart < arrive) throw new IllegalArgumentException("departs before it arrives");
+                int seq = row.parseInt(sequence);
+                if (count[0] == times[0].length)
+                    for (int i = 0; i < times.length; i++) times[i] = Arrays.copyOf(times[i], 2 * count[0]);
+                int i = count[0]++;
+                times[0][i] = t;
+                times[1][i] = seq;
+                times[2][i] = s;
+                times[3][i] = arrive;
+                times[4][i] = depart;
+            }
+        });
+
+        int[] change = new int[cities.size()];
+        Arrays.fill(change, DEFAULT_CHANGE_TIME);
+        Path transfers = feed.resolve("transfers.txt");
+        if (Files.exists(transfers)) {
+            boolean[] given = new boolean[cities.size()];
+            loader.readTable(transfers, new CsvLoader.TableReader() {
+                int from;
+                int to;
+                int time;
+
+                public void header(CsvLoader.Row header, Path file) throws IOException {
+                    from = header.column("from_stop_id", file);
+                    to = header.column("to_stop_id", file);
+                    time = header.column("min_transfer_time", file);
+                }
+
+                public void row(CsvLoader.Row row) {
+                    Integer a = stopIds.get(row.string(from));
+                    Integer b = stopIds.get(row.string(to));
+                    if (a == null || b == null) throw new IllegalArgumentException("unknown stop");
+                    if (!a.equals(b)) return; // only changes within a City are modelled
+                    int seconds = row.parseInt(time);
+                    if (seconds < 0) throw new IllegalArgumentException("negative transfer time");
+                    change[a] = given[a] ? Math.min(change[a], seconds) : seconds;
+                    given[a] = true;
+                }
+            });
+        }
+
+        List<String> problems = new ArrayList<>(loader.getProblems());
+        return build(cities.toArray(new City[0]), change, tripNames.toArray(new String[0]), times, count[0], problems);
+    }
+
+    /**
+     * Turns stop times into connections sorted by departure time.
+     */
+    private static Timetable build(City[] cities, int[] change, String[] tripNames, int[][] times, int n,
+                                   List<String> problems) throws IOException {
+        // group the stop times by trip with a counting sort, then order each trip by sequence
+        int trips = tripNames.length;
+        int[] offsets = new int[trips + 1];
+        for (int i = 0; i < n; i++) offsets[times[0][i] + 1]++;
+        for (int t = 0; t < trips; t++) offsets[t + 1] += offsets[t];
+        long[] order = new long[n]; // sequence in the high bits, stop time index in the low bits
+        int[] next = Arrays.copyOf(offsets, trips);
+        for (int i = 0; i < n; i++) order[next[times[0][i]]++] = ((long) times[1][i] << 32) | i;
+
+        int m = 0;
+        long[] keys = new long[Math.max(0, n - 1)];
+        int[][] connections = new int[5][Math.max(0, n - 1)]; // depStop, arrStop, depTime, arrTime, trip
+        for (int t = 0; t < trips; t++) {
+            Arrays.sort(order, offsets[t], offsets[t + 1]);
+            int start = m;
+            boolean valid = true;
+            for (int k = offsets[t]; k + 1 < offsets[t + 1]; k++) {
+                int from = (int) order[k];
+                int to = (int) order[k + 1];
+                if ((order[k] >>> 32) == (order[k + 1] >>> 32) || times[3][to] < times[4][from]) {
+                    valid = false;
+                    break;
+                }
+                connections[0][m] = times[2][from];
+                connections[1][m] = times[2][to];
+                connections[2][m] = times[4][from];
+                connections[3][m] = times[3][to];
+                connections[4][m] = t;
+                if (times[3][to] >= 1 << TIME_BITS) throw new IOException("Times must be below " + (1 << TIME_BITS) / 3600 + " hours");
+                m++;
+            }
+            if (!valid) {
+                problems.add("stop_times.txt: trip " + tripNames[t] + " skipped, its stops repeat a sequence number or go back in time");
+                m = start;
+            }
+        }
+        if (m >= 1 << INDEX_BITS) throw new IOException("Timetable has more than " + (1 << INDEX_BITS) + " connections");
+
+        // sort by departure, then arrival; ties keep trip order so a train's zero minute hops stay in sequence
+        for (int c = 0; c < m; c++)
+            keys[c] = ((long) connections[2][c] << (TIME_BITS + INDEX_BITS)) | ((long) connections[3][c] << INDEX_BITS) | c;
+        Arrays.sort(keys, 0, m);
+        int[][] sorted = new int[5][m];
+        for (int i = 0; i < m; i++) {
+            int c = (int) (keys[i] & ((1 << INDEX_BITS) - 1));
+            for (int f = 0; f < 5; f++) sorted[f][i] = connections[f][c];
+        }
+        return new Timetable(cities, change, tripNames, sorted[0], sorted[1], sorted[2], sorted[3], sorted[4], problems);
+    }
+
+    /**
+     * Parses a time of day given as H:MM:SS or H:MM.
+     *
+     * @param time the time, hours may be 24 or more
+     * @return the seconds since midnight
+     * @throws IllegalArgumentException if time is not in one of those forms
+     */
+    public static int parseTime(String time) {
+        String[] parts = time.trim().split(":");
+        if (parts.length < 2 || parts.length > 3) throw new IllegalArgumentException("bad time " + time);
+        try {
+            int hours = Integer.parseInt(parts[0]);
+            int minutes = Integer.parseInt(parts[1]);
+            int seconds = parts.length == 3 ? Integer.parseInt(parts[2]) : 0;
+            if (hours < 0 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59) throw new IllegalArgumentException("bad time " + time);
+            return hours * 3600 + minutes * 60 + seconds;
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad time " + time);
+        }
+    }
+
+    /**
+     * Formats seconds since midnight as HH:MM, with hours past 23 for times after midnight.
+     *
+     * @param seconds the time to format
+     * @return the time as HH:MM
+     */
+    public static String formatTime(int seconds) {
+        return String.format("%02d:%02d", seconds / 3600, seconds / 60 % 60);
+    }
+
+    /**
+     * Returns the rows of the feed that were skipped, with their file and line number.
+     *
+     * @return the problems found while importing
+     */
+    public List<String> getProblems() { return problems; }
+
+    /**
+     * Returns the number of Cities served by the timetable.
+     *
+     * @return the number of stops
+     */
+    public int getStopCount() { return cities.length; }
+
+    /**
+     * Returns the number of trips in the timetable.
+     *
+     * @return the number of trips
+     */
+    public int getTripCount() { return tripNames.length; }
+
+    /**
+     * Returns the number of connections, trains running from one stop to the next.
+     *
+     * @return the number of connections
+     */
+    public int getConnectionCount() { return depStop.length; }
+
+    /**
+     * Returns whether any train stops in city.
+     *
+     * @param city the City to look for
+     * @return true if city is a stop of the timetable
+     */
+    public boolean serves(City city) { return stopNumbers.containsKey(city); }
+
+    /**
+     * Returns the stop number of city.
+     */
+    int stopNumber(City city) {
+        Integer number = stopNumbers.get(city);
+        return number == null ? -1 : number;
+    }
+
+    /**
+     * Returns the first connection that departs at or after time.
+     */
+    int firstConnectionAfter(int time) {
+        int low = 0;
+        int high = depTime.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (depTime[mid] < time) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the leg of the trip of connection board from where it is boarded to where
+     * connection alight arrives.
+     */
+    Journey.Leg leg(int board, int alight) {
+        int first = tripPosition[board];
+        int last = tripPosition[alight];
+        City[] stops = new City[last - first + 2];
+        stops[0] = cities[depStop[board]];
+        for (int k = first; k <= last; k++)
+            stops[k - first + 1] = cities[arrStop[tripConnections[k]]];
+        return new Journey.Leg(tripNames[trip[board]], stops, depTime[board], arrTime[alight]);
+    }
+}
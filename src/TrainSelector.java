@@ -1,40 +1,62 @@
 import java.util.*;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.stream.IntStream;
 
 public class TrainSelector<T> implements GraphADT<T> {
 
     /**
      * Vertex objects group a data field with an adjacency list of weighted
-     * directed edges that lead away from them.
+     * directed edges that lead away from them, and a list of the edges that
+     * lead to them, so that removals only visit the edges of the vertex.
      */
     protected class Vertex {
         public T data; // vertex label or application specific data
         public LinkedList<Edge> edgesLeaving;
+        public LinkedList<Edge> edgesEntering; // the same Edge objects, as stored in their sources
 
         public Vertex(T data) {
             this.data = data;
             this.edgesLeaving = new LinkedList<>();
+            this.edgesEntering = new LinkedList<>();
         }
 
     }
 
     /**
-     * Edge objects are stored within their source vertex, and group together
-     * their target destination vertex, along with an integer weight.
+     * Edge objects are stored within their source vertex and their target vertex,
+     * and group together both of them, along with an integer weight.
      */
     protected class Edge {
+        public Vertex source;
         public Vertex target;
         public int weight;
 
-        public Edge(Vertex target, int weight) {
+        public Edge(Vertex source, Vertex target, int weight) {
+            this.source = source;
             this.target = target;
             this.weight = weight;
         }
     }
 
     protected Hashtable<T, Vertex> vertices; // holds graph vertices, key=data
+    private HashMap<String, Vertex> cityIndex = new HashMap<>(); // City vertices, key=normalized name
+    private HashMap<String, ArrayDeque<Vertex>> shadowedCities = new HashMap<>(); // Cities whose name cityIndex gives to another
+    private CompactGraph<T> compact; // frozen copy used for routing, null once the graph changes
+    private ShortestPathSearch<T> search; // reusable search over compact
+    private GeoHeuristic geoHeuristic; // A* heuristic calibrated against compact
+    private BidirectionalSearch<T> bidirectionalSearch; // reusable two-sided search over compact
+    private Landmarks<T> landmarks; // ALT heuristic computed on compact
+    private int landmarkCount = 8; // landmarks chosen when the ALT heuristic is (re)built
+    private Landmarks.Strategy landmarkStrategy = Landmarks.Strategy.FARTHEST;
+    private final ThreadLocal<ShortestPathSearch<T>> batchSearch = new ThreadLocal<>(); // per-thread search for batches
+    private KShortestPaths<T> kShortestPaths; // alternative route finder over compact
+    private RouteCache<Path> routeCache; // recently found paths, null when caching is off
+    private long version; // incremented every time the graph changes
+    private ArrayList<GraphListener<T>> listeners = new ArrayList<>(); // told about every change
+    private boolean edgesPending; // edges are only in compact until thaw copies them into the vertices
+    private RouteMetrics metrics; // told about every routing query, null when metrics are off
+    private boolean cacheHit; // whether the last query was answered from routeCache
     public TrainSelector() { vertices = new Hashtable<>(); }
 
     /**
@@ -48,15 +70,21 @@ public class TrainSelector<T> implements GraphADT<T> {
     public boolean insertVertex(T data) {
         if(data == null)
             throw new NullPointerException("Cannot add null vertex");
+        thaw();
         if(vertices.containsKey(data)) return false; // duplicate values are not allowed
-        vertices.put(data, new Vertex(data));
+        Vertex vertex = new Vertex(data);
+        vertices.put(data, vertex);
+        if (data instanceof City) indexCity(vertex);
+        graphChanged();
+        for (GraphListener<T> listener : listeners) listener.vertexInserted(data);
         return true;
     }
 
     /**
      * Remove a vertex from the graph.
      * Also removes all edges adjacent to the vertex from the graph (all edges
-     * that have the vertex as a source or a destination vertex).
+     * that have the vertex as a source or a destination vertex). Only those
+     * edges are visited, not the rest of the graph.
      *
      * @param data the data item stored in the vertex to remove
      * @return true if a vertex with *data* has been removed, false if it was not in the graph
@@ -64,29 +92,36 @@ public class TrainSelector<T> implements GraphADT<T> {
      */
     public boolean removeVertex(T data) {
         if(data == null) throw new NullPointerException("Cannot remove null vertex");
+        thaw();
         Vertex removeVertex = vertices.get(data);
         if(removeVertex == null) return false; // vertex not found within graph
-        // search all vertices for edges targeting removeVertex
-        for(Vertex v : vertices.values()) {
-            Edge removeEdge = null;
-            for(Edge e : v.edgesLeaving)
-                if(e.target == removeVertex)
-                    removeEdge = e;
-            // and remove any such edges that are found
-            if(removeEdge != null) v.edgesLeaving.remove(removeEdge);
+        // remove the edges targeting removeVertex from their sources
+        for(Edge e : removeVertex.edgesEntering) {
+            if(e.source == removeVertex) continue; // a loop, removed with the vertex below
+            e.source.edgesLeaving.remove(e);
+            edgeChanged(e.source.data, data, e.weight, ShortestPathSearch.INFINITY);
         }
         // finally remove the vertex and all edges contained within it
-        return vertices.remove(data) != null;
+        graphChanged();
+        boolean removed = vertices.remove(data) != null;
+        if (data instanceof City) unindexCity(removeVertex);
+        for (Edge e : removeVertex.edgesLeaving) {
+            if (e.target != removeVertex) e.target.edgesEntering.remove(e);
+            edgeChanged(data, e.target.data, e.weight, ShortestPathSearch.INFINITY);
+        }
+        for (GraphListener<T> listener : listeners) listener.vertexRemoved(data);
+        return removed;
     }
 
     /**
-     * Insert a new directed edge with a positive edge weight into the graph.
+     * Insert a new edge with a positive edge weight into the graph. Railroads run both
+     * ways, so this inserts or reweights the directed edges in both directions.
      *
      * @param source the data item contained in the source vertex for the edge
      * @param target the data item contained in the target vertex for the edge
      * @param weight the weight for the edge (has to be a positive integer)
      * @return true if the edge could be inserted or its weight updated, false
-     *     if the edge with the same weight was already in the graph
+     *     if the edge with the same weight was already in the graph both ways
      * @throws IllegalArgumentException if either source or target or both are not in the graph,
      *     or if its weight is < 0
      * @throws NullPointerException if either source or target or both are null
@@ -94,6 +129,7 @@ public class TrainSelector<T> implements GraphADT<T> {
     public boolean insertEdge(T source, T target, int weight) {
         if(source == null || target == null)
             throw new NullPointerException("Cannot add edge with null source or target");
+        thaw();
         Vertex sourceVertex = this.vertices.get(source);
         Vertex targetVertex = this.vertices.get(target);
         if(sourceVertex == null || targetVertex == null)
@@ -101,20 +137,38 @@ public class TrainSelector<T> implements GraphADT<T> {
         if(weight < 0)
             throw new IllegalArgumentException("Cannot add edge with negative weight");
         // handle cases where edge already exists between these verticies
-        for(Edge e : sourceVertex.edgesLeaving)
-            if(e.target == targetVertex) {
-                if(e.weight == weight) return false; // edge already exists
-                else e.weight = weight; // otherwise update weight of existing edge
-                return true;
+        Edge existing = findEdge(sourceVertex, targetVertex);
+        if(existing != null) {
+            Edge reverse = reverseOf(existing);
+            if(existing.weight == weight && reverse != null && reverse.weight == weight) return false; // edge already exists
+            graphChanged();
+            if(existing.weight != weight) { // otherwise update weight of existing edges
+                int oldWeight = existing.weight;
+                existing.weight = weight;
+                edgeChanged(source, target, oldWeight, weight);
+            }
+            if(reverse == null) { // only one way, for example in a graph read from an older snapshot
+                link(targetVertex, sourceVertex, weight);
+                edgeChanged(target, source, ShortestPathSearch.INFINITY, weight);
             }
-        // otherwise add new edge to sourceVertex
-        sourceVertex.edgesLeaving.add(new Edge(targetVertex,weight));
-        targetVertex.edgesLeaving.add(new Edge(sourceVertex,weight));
+            else if(reverse.weight != weight) {
+                int oldWeight = reverse.weight;
+                reverse.weight = weight;
+                edgeChanged(target, source, oldWeight, weight);
+            }
+            return true;
+        }
+        // otherwise add new edges in both directions
+        link(sourceVertex, targetVertex, weight);
+        link(targetVertex, sourceVertex, weight);
+        graphChanged();
+        edgeChanged(source, target, ShortestPathSearch.INFINITY, weight);
+        edgeChanged(target, source, ShortestPathSearch.INFINITY, weight);
         return true;
     }
 
     /**
-     * Remove an edge from the graph.
+     * Remove an edge from the graph, in both directions like insertEdge inserted it.
      *
      * @param source the data item contained in the source vertex for the edge
      * @param target the data item contained in the target vertex for the edge
@@ -124,21 +178,67 @@ public class TrainSelector<T> implements GraphADT<T> {
      */
     public boolean removeEdge(T source, T target) {
         if(source == null || target == null) throw new NullPointerException("Cannot remove edge with null source or target");
+        thaw();
         Vertex sourceVertex = this.vertices.get(source);
         Vertex targetVertex = this.vertices.get(target);
         if(sourceVertex == null || targetVertex == null) throw new IllegalArgumentException("Cannot remove edge with vertices that do not exist");
         // find edge to remove
-        Edge removeEdge = null;
-        for(Edge e : sourceVertex.edgesLeaving)
-            if(e.target == targetVertex)
-                removeEdge = e;
-        if(removeEdge != null) { // remove edge that is successfully found
-            sourceVertex.edgesLeaving.remove(removeEdge);
+        Edge removeEdge = findEdge(sourceVertex, targetVertex);
+        if(removeEdge != null) { // remove edge that is successfully found, and its reverse
+            Edge reverse = reverseOf(removeEdge);
+            unlink(removeEdge);
+            if(reverse != null) unlink(reverse);
+            graphChanged();
+            edgeChanged(source, target, removeEdge.weight, ShortestPathSearch.INFINITY);
+            if(reverse != null) edgeChanged(target, source, reverse.weight, ShortestPathSearch.INFINITY);
             return true;
         }
         return false; // otherwise return false to indicate failure to find
     }
 
+    /**
+     * Returns the edge from source to target, searching whichever of the
+     * edges leaving source and the edges entering target is shorter.
+     */
+    private Edge findEdge(Vertex source, Vertex target) {
+        if(source.edgesLeaving.size() <= target.edgesEntering.size()) {
+            for(Edge e : source.edgesLeaving)
+                if(e.target == target) return e;
+        }
+        else {
+            for(Edge e : target.edgesEntering)
+                if(e.source == source) return e;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the edge going the other way than edge, or null if there is none.
+     */
+    private Edge reverseOf(Edge edge) {
+        for(Edge e : edge.source.edgesEntering)
+            if(e.source == edge.target && e != edge) return e;
+        return null;
+    }
+
+    /**
+     * Adds a new directed edge to the adjacency lists of both of its vertices.
+     */
+    private Edge link(Vertex source, Vertex target, int weight) {
+        Edge edge = new Edge(source, target, weight);
+        source.edgesLeaving.add(edge);
+        target.edgesEntering.add(edge);
+        return edge;
+    }
+
+    /**
+     * Removes a directed edge from the adjacency lists of both of its vertices.
+     */
+    private void unlink(Edge edge) {
+        edge.source.edgesLeaving.remove(edge);
+        edge.target.edgesEntering.remove(edge);
+    }
+
     /**
      * Check if the graph contains a vertex with data item *data*.
      *
@@ -161,6 +261,7 @@ public class TrainSelector<T> implements GraphADT<T> {
      */
     public boolean containsEdge(T source, T target) {
         if(source == null || target == null) throw new NullPointerException("Cannot contain edge adjacent to null data");
+        thaw();
         Vertex sourceVertex = vertices.get(source);
         Vertex targetVertex = vertices.get(target);
         if(sourceVertex == null) return false;
@@ -182,6 +283,7 @@ public class TrainSelector<T> implements GraphADT<T> {
      */
     public int getWeight(T source, T target) {
         if(source == null || target == null) throw new NullPointerException("Cannot contain weighted edge adjacent to null data");
+        thaw();
         Vertex sourceVertex = vertices.get(source);
         Vertex targetVertex = vertices.get(target);
         if(sourceVertex == null || targetVertex == null) throw new IllegalArgumentException("Cannot retrieve weight of edge between vertices that do not exist");
@@ -200,6 +302,7 @@ public class TrainSelector<T> implements GraphADT<T> {
      * @return the number of edges in the graph
      */
     public int getEdgeCount() {
+        if (edgesPending) return compact.getEdgeCount();
         int edgeCount = 0;
         for(Vertex v : vertices.values())
             edgeCount += v.edgesLeaving.size();
@@ -224,6 +327,190 @@ public class TrainSelector<T> implements GraphADT<T> {
         return vertices.size() == 0;
     }
 
+    /**
+     * Returns a frozen CompactGraph copy of this graph. The copy is built on first
+     * use and shared by all routing queries until the graph is changed again.
+     *
+     * @return a CompactGraph holding the current vertices and edges of this graph
+     */
+    public CompactGraph<T> compact() {
+        if (compact == null) {
+            compact = new CompactGraph<>(this);
+            if (metrics != null) metrics.graphCompacted(compact.getVertexCount(), compact.targets.length);
+        }
+        return compact;
+    }
+
+    /**
+     * Creates a graph from a CompactGraph, for example one read from a NetworkSnapshot.
+     * Only the vertices are created; the edges are used from graph for routing, and only
+     * copied into the adjacency lists by thaw once something needs them there.
+     *
+     * @param graph the vertices and edges of the new graph
+     * @return a graph holding the vertices and edges of graph
+     */
+    static <T> TrainSelector<T> fromCompact(CompactGraph<T> graph) {
+        TrainSelector<T> selector = new TrainSelector<>();
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            T data = graph.dataAt(v);
+            TrainSelector<T>.Vertex vertex = selector.new Vertex(data);
+            selector.vertices.put(data, vertex);
+            if (data instanceof City) selector.indexCity(vertex);
+        }
+        selector.compact = graph;
+        selector.edgesPending = true;
+        return selector;
+    }
+
+    /**
+     * Copies the edges of a graph created by fromCompact into the adjacency lists of its
+     * vertices. Called before anything reads or changes the adjacency lists.
+     */
+    void thaw() {
+        if (!edgesPending) return;
+        edgesPending = false;
+        CompactGraph<T> graph = compact;
+        for (int u = 0; u < graph.getVertexCount(); u++) {
+            Vertex source = vertices.get(graph.dataAt(u));
+            for (int e = graph.firstEdge(u); e < graph.endEdge(u); e++)
+                link(source, vertices.get(graph.dataAt(graph.target(e))), graph.weight(e));
+        }
+    }
+
+    /**
+     * Drops the compact copy and routing state after the graph has been changed.
+     */
+    private void graphChanged() {
+        version++;
+        compact = null;
+        search = null;
+        geoHeuristic = null;
+        bidirectionalSearch = null;
+        landmarks = null;
+        kShortestPaths = null;
+        if (routeCache != null) routeCache.invalidate();
+    }
+
+    /**
+     * Tells the listeners that a directed edge was inserted, removed or reweighted.
+     */
+    private void edgeChanged(T source, T target, int oldWeight, int newWeight) {
+        for (GraphListener<T> listener : listeners) listener.edgeChanged(source, target, oldWeight, newWeight);
+    }
+
+    /**
+     * Registers a listener that is told about every change made to this graph from now on.
+     *
+     * @param listener the listener to add
+     * @throws NullPointerException if listener is null
+     */
+    public void addGraphListener(GraphListener<T> listener) {
+        if (listener == null) throw new NullPointerException("Graph listener is null");
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with addGraphListener.
+     *
+     * @param listener the listener to remove
+     * @return true if the listener was registered
+     */
+    public boolean removeGraphListener(GraphListener<T> listener) {
+        return listeners.remove(listener);
+    }
+
+    /**
+     * Returns a counter that is incremented every time a vertex or edge is inserted,
+     * removed or reweighted. Results computed from this graph stay valid for as long
+     * as the version does not change.
+     *
+     * @return the current version of the graph
+     */
+    public long getVersion() { return version; }
+
+    /**
+     * Caches up to capacity recently found paths, so that repeated queries for the same
+     * start and end are answered without searching. The cache is cleared whenever the
+     * graph changes.
+     *
+     * @param capacity the largest number of paths kept, or 0 to turn caching off
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    public void setRouteCache(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Route cache capacity cannot be negative");
+        routeCache = capacity == 0 ? null : new RouteCache<>(capacity);
+    }
+
+    /**
+     * Returns the route cache, whose statistics show how well it is working.
+     *
+     * @return the route cache, or null if caching is off
+     */
+    public RouteCache<?> getRouteCache() { return routeCache; }
+
+    /**
+     * Reports the latency, settled vertices and relaxed edges of every point to point query,
+     * and of every batch answered by getPathCosts or shortestPaths, to metrics, for example
+     * a RoutingMetrics. With no metrics set, which is the default, queries are not timed at all.
+     *
+     * @param metrics the metrics to report to, or null to turn metrics off
+     */
+    public void setMetrics(RouteMetrics metrics) {
+        this.metrics = metrics;
+        if (metrics != null && compact != null) metrics.graphCompacted(compact.getVertexCount(), compact.targets.length);
+    }
+
+    /**
+     * Returns the metrics queries are reported to.
+     *
+     * @return the metrics, or null if metrics are off
+     */
+    public RouteMetrics getMetrics() { return metrics; }
+
+    /**
+     * Sets how many landmarks the ALT search mode uses and how they are chosen.
+     * The landmark tables are recomputed on the next ALT query.
+     *
+     * @param count the number of landmarks
+     * @param strategy how the landmarks are chosen
+     * @throws IllegalArgumentException if count is not positive
+     * @throws NullPointerException if strategy is null
+     */
+    public void setLandmarks(int count, Landmarks.Strategy strategy) {
+        if (strategy == null) throw new NullPointerException("Landmark strategy is null");
+        if (count <= 0) throw new IllegalArgumentException("Landmark count must be positive");
+        landmarkCount = count;
+        landmarkStrategy = strategy;
+        landmarks = null;
+    }
+
+    /**
+     * Uses already computed landmark tables for the ALT search mode, for example ones
+     * loaded with Landmarks.load. They are dropped when the graph changes.
+     *
+     * @param landmarks landmark tables computed on compact()
+     * @throws IllegalArgumentException if the landmarks were computed on a different graph
+     * @throws NullPointerException if landmarks is null
+     */
+    public void setLandmarks(Landmarks<T> landmarks) {
+        if (landmarks == null) throw new NullPointerException("Landmarks are null");
+        if (landmarks.getGraph() != compact()) throw new IllegalArgumentException("Landmarks were computed on a different graph");
+        this.landmarks = landmarks;
+    }
+
+    /**
+     * Returns the landmark tables the ALT search mode uses, computing them if needed.
+     *
+     * @return the landmarks of the current graph
+     */
+    public Landmarks<T> getLandmarks() {
+        if (landmarks == null) {
+            CompactGraph<T> graph = compact();
+            landmarks = new Landmarks<>(graph, Math.min(landmarkCount, graph.getVertexCount()), landmarkStrategy);
+        }
+        return landmarks;
+    }
+
 
     /**
      * Path objects store a discovered path of vertices and the overal distance of cost
@@ -236,7 +523,7 @@ public class TrainSelector<T> implements GraphADT<T> {
     protected class Path implements Comparable<Path> {
         public Vertex start; // first vertex within path
         public int distance; // sumed weight of all edges in path
-        public List dataSequence; // ordered sequence of data from vertices in path
+        public List<T> dataSequence; // ordered sequence of data from vertices in path
         public Vertex end; // last vertex within path
 
         /**
@@ -252,6 +539,18 @@ public class TrainSelector<T> implements GraphADT<T> {
             this.end = start;
         }
 
+        /**
+         * Creates a path from an already known sequence of vertex data and its distance.
+         * @param dataSequence data of the vertices on the path, from start to end
+         * @param distance summed weight of all edges on the path
+         */
+        public Path(LinkedList<T> dataSequence, int distance) {
+            this.start = vertices.get(dataSequence.getFirst());
+            this.end = vertices.get(dataSequence.getLast());
+            this.distance = distance;
+            this.dataSequence = dataSequence;
+        }
+
         /**
          * This extension constructor makes a copy of the path passed into it as an argument
          * without affecting the original path object (copyPath). The path is then extended
@@ -316,13 +615,46 @@ public class TrainSelector<T> implements GraphADT<T> {
     }
 
     public City getCity(City city, TrainSelector<T> graph) {
-        for (Vertex v : graph.vertices.values()) {
-            City othr = (City) v.data;
-            if (city.compareTo(othr) == 0) {
-                return (City) v.data;
-            }
+        return graph.getCity(city.getName());
+    }
+
+    /**
+     * Returns the City in this graph with the given name. Names are matched
+     * ignoring case, accents and surrounding whitespace, see City.normalizeName.
+     *
+     * @param name name of the City to look up
+     * @return the City with that name, or null if there is none
+     * @throws NullPointerException if name is null
+     */
+    public City getCity(String name) {
+        if (name == null) throw new NullPointerException("City name is null");
+        Vertex v = cityIndex.get(City.normalizeName(name));
+        return v == null ? null : (City) v.data;
+    }
+
+    /**
+     * Adds a new City vertex to the name index. If a City with the same name is
+     * already in the graph, the name keeps referring to that one.
+     */
+    private void indexCity(Vertex vertex) {
+        String key = City.normalizeName(((City) vertex.data).getName());
+        if (cityIndex.putIfAbsent(key, vertex) != null)
+            shadowedCities.computeIfAbsent(key, k -> new ArrayDeque<>()).add(vertex);
+    }
+
+    /**
+     * Removes a deleted City vertex from the name index. If another City with the
+     * same name is still in the graph, the name now refers to the one added first.
+     */
+    private void unindexCity(Vertex removed) {
+        String key = City.normalizeName(((City) removed.data).getName());
+        ArrayDeque<Vertex> shadowed = shadowedCities.get(key);
+        if (cityIndex.remove(key, removed)) {
+            if (shadowed == null) return;
+            cityIndex.put(key, shadowed.poll());
         }
-        return null; // Returns null if City is not found
+        else if (shadowed != null) shadowed.remove(removed);
+        if (shadowed != null && shadowed.isEmpty()) shadowedCities.remove(key);
     }
 
     /**
@@ -330,6 +662,7 @@ public class TrainSelector<T> implements GraphADT<T> {
      * between two vertices in this graph: start and end. This path contains an ordered list
      * of the data within each node on this path, and also the distance or cost of all edges
      * that are a part of this path.
+     * The search itself runs on the compact copy of this graph, see ShortestPathSearch.
      * 
      * @param start data item within first node in path
      * @param end data item within last node in path
@@ -338,49 +671,92 @@ public class TrainSelector<T> implements GraphADT<T> {
      *     including when no vertex containing start or end can be found
      */
     protected Path dijkstrasShortestPath(T start, T end) {
-        int numVtx = this.getVertexCount();
-        int numEdges = this.getEdgeCount();
-        if (numVtx == 0 || numEdges == 0) throw new NullPointerException("NullPointerException: This Graph has no vertices or edges");
+        return findPath(start, end, SearchMode.DIJKSTRA);
+    }
+
+    /**
+     * Finds the shortest path between start and end with the given search mode.
+     * Every mode finds a path of the same, minimal cost.
+     *
+     * @param start data item within first node in path
+     * @param end data item within last node in path
+     * @param mode the routing engine used to answer the query
+     * @return the shortest path from start to end
+     * @throws NoSuchElementException when no path from start to end can be found,
+     *     including when no vertex containing start or end can be found
+     */
+    protected Path findPath(T start, T end, SearchMode mode) {
+        // counted on the compact graph, which is kept between queries, so a cache hit stays O(1)
+        CompactGraph<T> graph = vertices.isEmpty() ? null : compact();
+        if (graph == null || graph.getEdgeCount() == 0) throw new NullPointerException("NullPointerException: This Graph has no vertices or edges");
         if (start == null || end == null) throw new NullPointerException("NullPointerException: Start or End is null");
+        if (mode == null) throw new NullPointerException("NullPointerException: Search mode is null");
 
-        // Visited nodes
-        LinkedList<Vertex> visited = new LinkedList<>();
-        //Priority Queue of paths
-        PriorityQueue<Path> paths_pq = new PriorityQueue<Path>();
-        
-        Path first_Path = new Path(vertices.get(start));
-        paths_pq.add(first_Path);
-        visited.add(vertices.get(start));
-        
-        //while pq not empty, remove and look at at highest priority path
-        while(!paths_pq.isEmpty()) {
-            Path currentPath = paths_pq.remove();
-            
-            // If current path ends at Target, return current path
-            if(currentPath.end.equals(vertices.get(end))) {
-                return currentPath;
-            }
-            // Loops through neighbors
-            for(Edge edge : currentPath.end.edgesLeaving) {
-                // See if neighbor visited
-                boolean isVisited = false;
-                for(Vertex vertex : visited) {
-                    if(edge.target == vertex) {
-                    isVisited = true;
-                    }
-                }
-                // If vertex not visited, copy path and extend, then add to queue
-                if(!isVisited) {
-                    Path newPath = new Path(currentPath);
-                    newPath.extend(edge);
-                    paths_pq.add(newPath);
-                    visited.add(edge.target);
-                }
-            }
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if (s == -1 || t == -1) throw new NoSuchElementException("No path exists");
+
+        if (metrics == null) return cachedSearch(graph, s, t, mode);
+        long begin = System.nanoTime();
+        boolean found = false;
+        try {
+            Path path = cachedSearch(graph, s, t, mode);
+            found = true;
+            return path;
+        }
+        finally {
+            long nanos = System.nanoTime() - begin;
+            if (cacheHit) metrics.queryCompleted(mode, nanos, 0, 0, true, true);
+            else if (mode == SearchMode.BIDIRECTIONAL)
+                metrics.queryCompleted(mode, nanos, bidirectionalSearch.getSettledCount(), bidirectionalSearch.getRelaxedCount(), false, found);
+            else
+                metrics.queryCompleted(mode, nanos, search.getSettledCount(), search.getRelaxedCount(), false, found);
+        }
+    }
+
+    /**
+     * Answers a query from the route cache if it holds the path, otherwise searches and caches it.
+     */
+    private Path cachedSearch(CompactGraph<T> graph, int s, int t, SearchMode mode) {
+        cacheHit = false;
+        if (routeCache == null) return search(graph, s, t, mode);
+        Path path = routeCache.get(s, t, mode);
+        cacheHit = path != null;
+        if (path == null) {
+            path = search(graph, s, t, mode);
+            // cached paths are shared between callers, so they must not be modified
+            path.dataSequence = Collections.unmodifiableList(path.dataSequence);
+            routeCache.put(s, t, mode, path);
+        }
+        return path;
+    }
+
+    /**
+     * Runs the search mode from vertex number s to vertex number t of graph.
+     */
+    private Path search(CompactGraph<T> graph, int s, int t, SearchMode mode) {
+        if (mode == SearchMode.BIDIRECTIONAL) {
+            if (bidirectionalSearch == null) bidirectionalSearch = new BidirectionalSearch<>(graph);
+            int distance = bidirectionalSearch.run(s, t);
+            if (distance == ShortestPathSearch.INFINITY) throw new NoSuchElementException("No path exists");
+            return new Path(bidirectionalSearch.dataPath(), distance);
+        }
+
+        if (search == null) search = new ShortestPathSearch<>(graph);
+        int distance;
+        if (mode == SearchMode.A_STAR) {
+            if (geoHeuristic == null) geoHeuristic = new GeoHeuristic(graph);
+            distance = search.run(s, t, geoHeuristic);
+        }
+        else if (mode == SearchMode.ALT) {
+            distance = search.run(s, t, getLandmarks());
+        }
+        else {
+            distance = search.run(s, t);
         }
-        
         // No path found
-        throw new NoSuchElementException("No path exists"); 
+        if (distance == ShortestPathSearch.INFINITY) throw new NoSuchElementException("No path exists");
+        return new Path(search.dataPathTo(t), distance);
     }
 
 
@@ -390,13 +766,28 @@ public class TrainSelector<T> implements GraphADT<T> {
      *
      * @param start the data item in the starting vertex for the path
      * @param end the data item in the destination vertex for the path
-     * @return list of data item in vertices in order on the shortest path between vertex
+     * @return a new list of data item in vertices in order on the shortest path between vertex
      * with data item start and vertex with data item end, including both start and end
      * @throws NoSuchElementException when no path from start to end can be found
      *     including when no vertex containing start or end can be found
      */
     public List<T> shortestPath(T start, T end) {
-        return dijkstrasShortestPath(start,end).dataSequence;
+        return new LinkedList<>(dijkstrasShortestPath(start,end).dataSequence); // cached paths are shared, callers get their own list
+    }
+
+    /**
+     * Returns the shortest path between start and end, found with the given search mode.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the destination vertex for the path
+     * @param mode the routing engine used to answer the query
+     * @return a new list of data item in vertices in order on the shortest path between vertex
+     * with data item start and vertex with data item end, including both start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public List<T> shortestPath(T start, T end, SearchMode mode) {
+        return new LinkedList<>(findPath(start, end, mode).dataSequence);
     }
 
     /**
@@ -416,6 +807,19 @@ public class TrainSelector<T> implements GraphADT<T> {
         return final_path;
     }
 
+    /**
+     * Returns string representation of the shortest path
+     * found with the given search mode
+     * 
+     * @param start Starting data item in starting Vertex of path
+     * @param end Final data item in path
+     * @param mode the routing engine used to answer the query
+     * @return String representaion of Cities in shortest path
+     */
+    public String getShortestPathString(T start, T end, SearchMode mode) {
+        return findPath(start, end, mode).toString();
+    }
+
 
     /**
      * Returns the cost of the path (sum over edge weights) between start and end.
@@ -432,30 +836,190 @@ public class TrainSelector<T> implements GraphADT<T> {
         return dijkstrasShortestPath(start, end).distance;
     }
 
-    public static TrainSelector<City> collectRailroads(TrainSelector<City> graph) {
-        String file_path = "../data/railroads.csv";
-        String line = "";
+    /**
+     * Returns the cost of the shortest path between start and end, found with the given search mode.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the end vertex for the path
+     * @param mode the routing engine used to answer the query
+     * @return the cost of the shortest path between vertex with data item start
+     * and vertex with data item end, including all edges between start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public int getPathCost(T start, T end, SearchMode mode) {
+        return findPath(start, end, mode).distance;
+    }
+
+    /**
+     * Returns up to k loopless paths between start and end, cheapest first, found with
+     * Yen's algorithm. The first one is the shortest path, the others are alternatives
+     * for when it is busy.
+     *
+     * @param start the data item in the starting vertex for the paths
+     * @param end the data item in the destination vertex for the paths
+     * @param k the largest number of paths to return
+     * @return the k cheapest paths in order of cost, fewer if there are no more
+     * @throws IllegalArgumentException if k is not positive
+     * @throws NullPointerException if start or end is null
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public List<Route<T>> kShortestPaths(T start, T end, int k) {
+        if (kShortestPaths == null) kShortestPaths = new KShortestPaths<>(compact());
+        return kShortestPaths.find(start, end, k);
+    }
+
+    /**
+     * Returns the shortest paths from start to every vertex of the graph. The paths are
+     * searched lazily, as the returned tree is asked about them.
+     *
+     * @param start the data item in the source vertex of the paths
+     * @return the tree of shortest paths from start
+     * @throws NullPointerException if start is null
+     * @throws NoSuchElementException if no vertex containing start can be found
+     */
+    public ShortestPathTree<T> shortestPathTree(T start) {
+        return shortestPathTree(start, ShortestPathSearch.INFINITY);
+    }
+
+    /**
+     * Returns the shortest paths from start to every vertex that can be reached with a path
+     * cost of at most cutoff, for example every City within 300 km of Rome. The search stops
+     * at the cutoff, so the cost depends on the size of the answer rather than the graph.
+     *
+     * @param start the data item in the source vertex of the paths
+     * @param cutoff the largest path cost included
+     * @return the tree of shortest paths from start within cutoff
+     * @throws IllegalArgumentException if cutoff is negative
+     * @throws NullPointerException if start is null
+     * @throws NoSuchElementException if no vertex containing start can be found
+     */
+    public ShortestPathTree<T> shortestPathTree(T start, int cutoff) {
+        if (start == null) throw new NullPointerException("NullPointerException: Start or End is null");
+        return new ShortestPathTree<>(compact(), start, cutoff);
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(file_path))) {
-            br.readLine();
-            while ((line = br.readLine()) != null) {
-                String[] railData = line.split(",");
-                
-                City start = new City(railData[0]);
-                start = graph.getCity(start, graph);
+    /**
+     * Finds the shortest paths for a batch of (start, end) queries. Queries are grouped by
+     * start so that each start is searched only once, and the groups are searched in
+     * parallel on the common fork-join pool, each worker thread reusing its own search state.
+     *
+     * @param queries the (start, end) pairs to route
+     * @return the shortest path for each query, in the order of queries; an entry is null
+     *     when no path exists, including when start or end is not in the graph
+     * @throws NullPointerException if queries, a query, or its start or end is null
+     */
+    public List<List<T>> shortestPaths(Collection<Pair<T, T>> queries) {
+        Object[] routes = new Object[queries.size()];
+        runBatch(queries, new int[routes.length], routes);
+        List<List<T>> result = new ArrayList<>(routes.length);
+        for (Object route : routes) {
+            @SuppressWarnings("unchecked")
+            List<T> path = (List<T>) route;
+            result.add(path);
+        }
+        return result;
+    }
 
-                if (start == null) { System.out.println("Start is Null"); }
+    /**
+     * Finds the shortest path costs for a batch of (start, end) queries, the same way
+     * shortestPaths does but without building the paths.
+     *
+     * @param queries the (start, end) pairs to route
+     * @return the cost of the shortest path for each query, in the order of queries;
+     *     ShortestPathSearch.INFINITY when no path exists, including when start or end
+     *     is not in the graph
+     * @throws NullPointerException if queries, a query, or its start or end is null
+     */
+    public int[] getPathCosts(Collection<Pair<T, T>> queries) {
+        int[] costs = new int[queries.size()];
+        runBatch(queries, costs, null);
+        return costs;
+    }
 
-                City dest = new City(railData[1]);
-                dest = graph.getCity(dest, graph);
+    /**
+     * Answers a batch of queries, filling costs and, if it is not null, routes.
+     */
+    private void runBatch(Collection<Pair<T, T>> queries, int[] costs, Object[] routes) {
+        RouteMetrics metrics = this.metrics;
+        long begin = metrics == null ? 0 : System.nanoTime();
+        CompactGraph<T> graph = compact();
+        int n = graph.getVertexCount();
+        int q = costs.length;
+        int[] sources = new int[q];
+        int[] ends = new int[q];
+        int[] groupSize = new int[n + 1];
+        int i = 0;
+        for (Pair<T, T> query : queries) {
+            if (query == null || query.getFirst() == null || query.getSecond() == null)
+                throw new NullPointerException("NullPointerException: Start or End is null");
+            sources[i] = graph.indexOf(query.getFirst());
+            ends[i] = graph.indexOf(query.getSecond());
+            costs[i] = ShortestPathSearch.INFINITY;
+            if (sources[i] != -1 && ends[i] != -1) groupSize[sources[i] + 1]++;
+            i++;
+        }
 
-                if (dest == null) { System.out.println("Destination is Null"); }
+        // counting sort the answerable queries by start, groupStart[s] is the first query of start s
+        int[] groupStart = groupSize;
+        for (int v = 0; v < n; v++) groupStart[v + 1] += groupStart[v];
+        int[] order = new int[groupStart[n]];
+        int[] targets = new int[order.length];
+        int[] next = Arrays.copyOf(groupStart, n);
+        for (i = 0; i < q; i++) {
+            if (sources[i] == -1 || ends[i] == -1) continue;
+            int slot = next[sources[i]]++;
+            order[slot] = i;
+            targets[slot] = ends[i];
+        }
 
-                int weight = Integer.parseInt(railData[2].trim()); 
+        int[] starts = new int[n];
+        int groups = 0;
+        for (int v = 0; v < n; v++)
+            if (groupStart[v + 1] > groupStart[v]) starts[groups++] = v;
 
-                graph.insertEdge(start, dest, weight);
+        long[] settled = metrics == null ? null : new long[groups];
+        long[] relaxed = metrics == null ? null : new long[groups];
+        IntStream.range(0, groups).parallel().forEach(g -> {
+            int s = starts[g];
+            ShortestPathSearch<T> search = batchSearch.get();
+            if (search == null || search.getGraph() != graph) {
+                search = new ShortestPathSearch<>(graph);
+                batchSearch.set(search);
             }
+            search.runToTargets(s, targets, groupStart[s], groupStart[s + 1]);
+            for (int k = groupStart[s]; k < groupStart[s + 1]; k++) {
+                int d = search.distance(targets[k]);
+                costs[order[k]] = d;
+                if (routes != null && d != ShortestPathSearch.INFINITY) routes[order[k]] = search.dataPathTo(targets[k]);
+            }
+            if (settled != null) {
+                settled[g] = search.getSettledCount();
+                relaxed[g] = search.getRelaxedCount();
+            }
+        });
 
+        if (metrics != null) {
+            long settledVertices = 0;
+            long relaxedEdges = 0;
+            for (int g = 0; g < groups; g++) {
+                settledVertices += settled[g];
+                relaxedEdges += relaxed[g];
+            }
+            int noPath = 0;
+            for (int cost : costs) if (cost == ShortestPathSearch.INFINITY) noPath++;
+            metrics.batchCompleted(q, groups, System.nanoTime() - begin, settledVertices, relaxedEdges, noPath);
+        }
+    }
+
+    public static TrainSelector<City> collectRailroads(TrainSelector<City> graph) {
+        String file_path = "../data/railroads.csv";
+
+        try {
+            CsvLoader loader = new CsvLoader();
+            loader.loadRailroads(graph, Paths.get(file_path), Runtime.getRuntime().availableProcessors());
+            for (String problem : loader.getProblems()) System.out.println("Skipped " + problem);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -464,21 +1028,11 @@ public class TrainSelector<T> implements GraphADT<T> {
 
     public static TrainSelector<City> collectCities(TrainSelector<City> graph) {
         String file_path = "../data/italian_cities.csv";
-        String line = "";
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file_path))) {
-            br.readLine();
-            while ((line = br.readLine()) != null) {
-                String[] cityData = line.split(",");
-
-                String name = cityData[0];
-                String region = cityData[6];
-                int pop = Integer.parseInt(cityData[7].trim()); 
-
-                City city = new City(name, region, pop);
-                graph.insertVertex(city);
-            }
 
+        try {
+            CsvLoader loader = new CsvLoader();
+            loader.loadCities(graph, Paths.get(file_path));
+            for (String problem : loader.getProblems()) System.out.println("Skipped " + problem);
         } catch (IOException e) {
             e.printStackTrace();
         }
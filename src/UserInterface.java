@@ -1,7 +1,16 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.Scanner;
 
 public class UserInterface {
 
+    private static final String CITIES_CSV = "../data/italian_cities.csv";
+    private static final String RAILROADS_CSV = "../data/railroads.csv";
+    private static final String SNAPSHOT = "../data/railnetwork.snapshot";
+
     private static final String[] CITIES = {
             "Ancona", "Bari", "Bergamo", "Balogna", "Bolzano",
             "Caserta", "Catanzaro", "Cortina d'Ampezzo", "Cremona", "Fiumicino",  
@@ -23,16 +32,40 @@ public class UserInterface {
      * @return City object corresponding to input
      */
     public static <T> City getNextCity(Scanner scnr, TrainSelector<T> graph) {
-        String city_name;
-        // city_name = scnr.nextLine().toLowerCase().replaceAll("\\s", "");
-        // System.out.println("City name:" + city_name);
-        city_name = scnr.nextLine();
-        city_name = city_name.substring(0, 1).toUpperCase() + city_name.substring(1);
-        
+        // names are matched ignoring case and accents, so "rome" and "ROME" both work
+        String city_name = scnr.nextLine();
+        return graph.getCity(city_name);
+    }
 
-        City startCity = new City(city_name);
-        City s = graph.getCity(startCity, graph);
-        return s;
+    /**
+     * Loads the train network from its binary snapshot if the snapshot is newer than
+     * the CSV files, otherwise imports the CSV files and writes a new snapshot for the
+     * next start.
+     *
+     * @return Graph of train network
+     */
+    public static TrainSelector<City> loadGraph() {
+        Path snapshot = Paths.get(SNAPSHOT);
+        try {
+            if (Files.isRegularFile(snapshot)) {
+                FileTime written = Files.getLastModifiedTime(snapshot);
+                if (written.compareTo(Files.getLastModifiedTime(Paths.get(CITIES_CSV))) > 0 &&
+                        written.compareTo(Files.getLastModifiedTime(Paths.get(RAILROADS_CSV))) > 0)
+                    return NetworkSnapshot.read(snapshot);
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Could not read network snapshot, importing CSV files: " + e.getMessage());
+        }
+
+        TrainSelector<City> graph = new TrainSelector<City>().graphSetup();
+        try {
+            NetworkSnapshot.write(graph, snapshot);
+        }
+        catch (IOException e) {
+            System.out.println("Could not write network snapshot: " + e.getMessage());
+        }
+        return graph;
     }
 
     public static void main(String[] args) {
@@ -71,7 +104,8 @@ public class UserInterface {
         // Sets up Graph
         TrainSelector<City> graph = new TrainSelector<City>();
         try {
-            graph = graph.graphSetup();
+            graph = loadGraph();
+            graph.setRouteCache(256); // a few popular city pairs make up most queries
         }
         catch (Exception e) {
             System.out.println("Graph unsuccessfully made");
@@ -3,6 +3,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Enumeration;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -64,7 +65,7 @@ public class routeTester {
      */
     @Test
     public void graphSetupTester() {
-        TrainSelector<City> nc = graphSetup();
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
 
         assertEquals(35, nc.getVertexCount());
         assertEquals(80, nc.getEdgeCount());
@@ -108,7 +109,7 @@ public class routeTester {
      */
     @Test
     public void nullInputTester() {
-        TrainSelector<City> nc = graphSetup();
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
         City n = new City("Start");
         City d = new City("End");
 
@@ -123,7 +124,7 @@ public class routeTester {
         assertThrows(NullPointerException.class, ()-> { nc.removeEdge(null, null); });
         
         // Contains Vertex or Edge
-        assertThrows(NullPointerException.class, ()-> { nc.containsEdge(null); });
+        assertThrows(NullPointerException.class, ()-> { nc.containsEdge(null, null); });
         assertThrows(NullPointerException.class, ()-> { nc.containsVertex(null); });
         
         
@@ -142,6 +143,1186 @@ public class routeTester {
         
     }
 
+    /**
+     * Checks that a CompactGraph holds the same vertices,
+     * edges and weights as the graph it was built from
+     */
+    @Test
+    public void compactGraphTester() {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        CompactGraph<City> cg = new CompactGraph<>(nc);
+
+        assertEquals(nc.getVertexCount(), cg.getVertexCount());
+        assertEquals(nc.getEdgeCount(), cg.getEdgeCount());
+
+        City milan = nc.getCity(new City("Milan"), nc);
+        City genoa = nc.getCity(new City("Genoa"), nc);
+        City rome = nc.getCity(new City("Rome"), nc);
+
+        assertTrue(cg.containsVertex(milan));
+        assertTrue(cg.containsEdge(milan, genoa));
+        assertFalse(cg.containsEdge(milan, rome));
+        assertEquals(nc.getWeight(milan, genoa), cg.getWeight(milan, genoa));
+        assertEquals(milan, cg.dataAt(cg.indexOf(milan)));
+
+        List<City> path = cg.shortestPath(milan, rome);
+        assertEquals(milan, path.get(0));
+        assertEquals(rome, path.get(path.size() - 1));
+
+        // CompactGraph is frozen
+        assertThrows(UnsupportedOperationException.class, ()-> { cg.insertEdge(milan, rome, 10); });
+        assertThrows(UnsupportedOperationException.class, ()-> { cg.removeVertex(milan); });
+    }
+
+    /**
+     * Checks that Dijkstra's algorithm replaces a route found
+     * early with a cheaper one found later
+     */
+    @Test
+    public void dijkstraTester() {
+        TrainSelector<City> nc = new TrainSelector<>();
+        City a = new City("A");
+        City b = new City("B");
+        City c = new City("C");
+        City d = new City("D");
+
+        nc.insertVertex(a);
+        nc.insertVertex(b);
+        nc.insertVertex(c);
+        nc.insertVertex(d);
+        nc.insertEdge(a, b, 1);
+        nc.insertEdge(b, c, 1);
+        nc.insertEdge(a, c, 5);
+
+        // a -> c directly costs 5, going through b costs 2
+        assertEquals(2, nc.getPathCost(a, c));
+        assertEquals(List.of(a, b, c), nc.shortestPath(a, c));
+
+        // changing the graph must be reflected by the next query
+        nc.insertEdge(a, c, 1);
+        assertEquals(1, nc.getPathCost(a, c));
+        assertEquals(List.of(a, c), nc.shortestPath(a, c));
+
+        // d has no edges
+        assertThrows(NoSuchElementException.class, ()-> { nc.getPathCost(a, d); });
+    }
+
+    /**
+     * Checks that A* finds routes as short as Dijkstra's
+     * algorithm while settling fewer vertices
+     */
+    @Test
+    public void aStarTester() {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        City turin = nc.getCity(new City("Turin"), nc);
+        City reggio = nc.getCity(new City("Reggio di Calabria"), nc);
+
+        assertEquals(45.0792, turin.getLat(), 1e-9);
+        assertEquals(7.6761, turin.getLng(), 1e-9);
+        assertTrue(turin.distanceTo(reggio) > 900);
+
+        // every pair of cities has the same cost with both engines
+        CompactGraph<City> cg = nc.compact();
+        for (int a = 0; a < cg.getVertexCount(); a++) {
+            for (int b = 0; b < cg.getVertexCount(); b++) {
+                assertEquals(nc.getPathCost(cg.dataAt(a), cg.dataAt(b)),
+                        nc.getPathCost(cg.dataAt(a), cg.dataAt(b), SearchMode.A_STAR));
+            }
+        }
+        assertEquals(nc.getShortestPathString(turin, reggio), nc.getShortestPathString(turin, reggio, SearchMode.A_STAR));
+
+        ShortestPathSearch<City> search = new ShortestPathSearch<>(cg);
+        search.run(cg.indexOf(turin), cg.indexOf(reggio));
+        int dijkstraSettled = search.getSettledCount();
+        search.run(cg.indexOf(turin), cg.indexOf(reggio), new GeoHeuristic(cg));
+        assertTrue(search.getSettledCount() < dijkstraSettled);
+    }
+
+    /**
+     * Checks that bidirectional search finds routes
+     * as short as Dijkstra's algorithm
+     */
+    @Test
+    public void bidirectionalTester() {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        CompactGraph<City> cg = nc.compact();
+
+        for (int a = 0; a < cg.getVertexCount(); a++) {
+            for (int b = 0; b < cg.getVertexCount(); b++) {
+                City start = cg.dataAt(a);
+                City end = cg.dataAt(b);
+                assertEquals(nc.getPathCost(start, end), nc.getPathCost(start, end, SearchMode.BIDIRECTIONAL));
+
+                List<City> path = nc.shortestPath(start, end, SearchMode.BIDIRECTIONAL);
+                assertEquals(start, path.get(0));
+                assertEquals(end, path.get(path.size() - 1));
+                int cost = 0;
+                for (int i = 1; i < path.size(); i++)
+                    cost += nc.getWeight(path.get(i - 1), path.get(i));
+                assertEquals(nc.getPathCost(start, end), cost);
+            }
+        }
+    }
+
+    /**
+     * Checks that a contraction hierarchy answers every query with
+     * the same cost as Dijkstra's algorithm, before and after saving it
+     */
+    @Test
+    public void contractionHierarchyTester() throws java.io.IOException {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        CompactGraph<City> cg = nc.compact();
+        ContractionHierarchy ch = new ContractionHierarchy(nc);
+
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("italy", ".ch");
+        ch.save(file);
+        ContractionHierarchy loaded = ContractionHierarchy.load(file, nc);
+        java.nio.file.Files.delete(file);
+
+        for (int a = 0; a < cg.getVertexCount(); a++) {
+            for (int b = 0; b < cg.getVertexCount(); b++) {
+                City start = cg.dataAt(a);
+                City end = cg.dataAt(b);
+                int cost = nc.getPathCost(start, end);
+                assertEquals(cost, ch.getPathCost(start, end));
+                assertEquals(cost, loaded.getPathCost(start, end));
+
+                // unpacked paths only use edges of the original graph
+                List<City> path = loaded.shortestPath(start, end);
+                assertEquals(start, path.get(0));
+                assertEquals(end, path.get(path.size() - 1));
+                int sum = 0;
+                for (int i = 1; i < path.size(); i++)
+                    sum += nc.getWeight(path.get(i - 1), path.get(i));
+                assertEquals(cost, sum);
+            }
+        }
+
+        // a damaged file, or one saved before the graph changed, is rejected
+        file = java.nio.file.Files.createTempFile("italy", ".ch");
+        try {
+            ch.save(file);
+            byte[] bytes = java.nio.file.Files.readAllBytes(file);
+            bytes[bytes.length - 4] = 0x7f; // the last shortcut now skips a vertex that does not exist
+            java.nio.file.Files.write(file, bytes);
+            java.nio.file.Path damaged = file;
+            assertThrows(java.io.IOException.class, ()-> { ContractionHierarchy.load(damaged, nc); });
+
+            ch.save(file);
+            City milan = nc.getCity("Milan");
+            nc.insertEdge(milan, nc.getCity("Genoa"), nc.getWeight(milan, nc.getCity("Genoa")) + 1);
+            java.nio.file.Path stale = file;
+            assertThrows(java.io.IOException.class, ()-> { ContractionHierarchy.load(stale, nc); });
+        }
+        finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Checks that ALT finds routes as short as Dijkstra's algorithm
+     * with both landmark strategies, and after saving the landmarks
+     */
+    @Test
+    public void landmarkTester() throws java.io.IOException {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        CompactGraph<City> cg = nc.compact();
+        City rome = nc.getCity(new City("Rome"), nc);
+        City milan = nc.getCity(new City("Milan"), nc);
+
+        nc.setLandmarks(2, Landmarks.Strategy.POPULATION);
+        assertEquals(List.of(rome, milan), nc.getLandmarks().getLandmarks());
+
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("italy", ".alt");
+        nc.getLandmarks().save(file);
+
+        for (Landmarks.Strategy strategy : Landmarks.Strategy.values()) {
+            nc.setLandmarks(4, strategy);
+            for (int a = 0; a < cg.getVertexCount(); a++) {
+                for (int b = 0; b < cg.getVertexCount(); b++) {
+                    assertEquals(nc.getPathCost(cg.dataAt(a), cg.dataAt(b)),
+                            nc.getPathCost(cg.dataAt(a), cg.dataAt(b), SearchMode.ALT));
+                }
+            }
+        }
+
+        Landmarks<City> loaded = Landmarks.load(file, nc.compact());
+        assertEquals(List.of(rome, milan), loaded.getLandmarks());
+        nc.setLandmarks(loaded);
+        assertEquals(nc.getPathCost(milan, rome), nc.getPathCost(milan, rome, SearchMode.ALT));
+
+        // a damaged file, or one saved before the graph changed, is rejected
+        byte[] saved = java.nio.file.Files.readAllBytes(file);
+        byte[] bytes = saved.clone();
+        bytes[12] = (byte) 0xff; // the landmark count is now negative
+        java.nio.file.Files.write(file, bytes);
+        assertThrows(java.io.IOException.class, ()-> { Landmarks.load(file, nc.compact()); });
+        bytes = saved.clone();
+        bytes[saved.length - 4 * 2 - 8 * 2 * cg.getVertexCount()] = 0x7f; // the first landmark is not a vertex
+        java.nio.file.Files.write(file, bytes);
+        assertThrows(java.io.IOException.class, ()-> { Landmarks.load(file, nc.compact()); });
+        java.nio.file.Files.write(file, saved);
+
+        // weight changes that add up to nothing still make the saved tables stale
+        City florence = nc.getCity("Florence");
+        City pisa = nc.getCity("Pisa");
+        City genoa = nc.getCity("Genoa");
+        nc.insertEdge(florence, pisa, nc.getWeight(florence, pisa) + 10);
+        nc.insertEdge(milan, genoa, nc.getWeight(milan, genoa) - 10);
+        assertThrows(java.io.IOException.class, ()-> { Landmarks.load(file, nc.compact()); });
+        java.nio.file.Files.delete(file);
+    }
+
+    /**
+     * Checks that hub labels give the same costs and equally
+     * short paths as Dijkstra's algorithm
+     */
+    @Test
+    public void hubLabelTester() {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        CompactGraph<City> cg = nc.compact();
+
+        // label in contraction hierarchy order, most important city first
+        ContractionHierarchy ch = new ContractionHierarchy(nc);
+        int[] order = new int[cg.getVertexCount()];
+        for (int v = 0; v < order.length; v++)
+            order[order.length - 1 - ch.getRank(cg.dataAt(v))] = v;
+        HubLabels<City> labels = new HubLabels<>(cg, order, true);
+        HubLabels<City> costOnly = new HubLabels<>(cg, false);
+
+        for (int a = 0; a < cg.getVertexCount(); a++) {
+            for (int b = 0; b < cg.getVertexCount(); b++) {
+                City start = cg.dataAt(a);
+                City end = cg.dataAt(b);
+                int cost = nc.getPathCost(start, end);
+                assertEquals(cost, labels.getPathCost(start, end));
+                assertEquals(cost, costOnly.getPathCost(start, end));
+
+                List<City> path = labels.shortestPath(start, end);
+                assertEquals(start, path.get(0));
+                assertEquals(end, path.get(path.size() - 1));
+                int sum = 0;
+                for (int i = 1; i < path.size(); i++)
+                    sum += nc.getWeight(path.get(i - 1), path.get(i));
+                assertEquals(cost, sum);
+            }
+        }
+        City rome = nc.getCity(new City("Rome"), nc);
+        assertThrows(IllegalStateException.class, ()-> { costOnly.shortestPath(rome, rome); });
+    }
+
+    @Test
+    public void distanceMatrixTester() throws java.io.IOException {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("routes", ".matrix");
+        try {
+            DistanceMatrix.build(nc, file);
+            DistanceMatrix matrix = DistanceMatrix.open(file, nc);
+            CompactGraph<City> cg = nc.compact();
+            assertEquals(cg.getVertexCount(), matrix.getVertexCount());
+
+            for (int a = 0; a < cg.getVertexCount(); a++) {
+                for (int b = 0; b < cg.getVertexCount(); b++) {
+                    City start = cg.dataAt(a);
+                    City end = cg.dataAt(b);
+                    int cost = nc.getPathCost(start, end);
+                    assertEquals(cost, matrix.getPathCost(start, end));
+
+                    List<City> path = matrix.shortestPath(start, end);
+                    assertEquals(start, path.get(0));
+                    assertEquals(end, path.get(path.size() - 1));
+                    int sum = 0;
+                    for (int i = 1; i < path.size(); i++)
+                        sum += nc.getWeight(path.get(i - 1), path.get(i));
+                    assertEquals(cost, sum);
+                }
+            }
+            City rome = nc.getCity(new City("Rome"), nc);
+            assertThrows(NullPointerException.class, ()-> { matrix.getPathCost(rome, null); });
+            assertThrows(NoSuchElementException.class, ()-> { matrix.getPathCost(rome, new City("Atlantis")); });
+
+            // a matrix built before the graph changed is stale and is not opened
+            City milan = nc.getCity("Milan");
+            nc.insertEdge(milan, nc.getCity("Genoa"), nc.getWeight(milan, nc.getCity("Genoa")) + 1);
+            assertThrows(java.io.IOException.class, ()-> { DistanceMatrix.open(file, nc); });
+
+            // a header length that does not match the names is rejected, not mapped
+            DistanceMatrix.build(nc, file);
+            try (java.io.RandomAccessFile raw = new java.io.RandomAccessFile(file.toFile(), "rw")) {
+                raw.seek(12);
+                int headerLength = raw.readInt();
+                raw.seek(12);
+                raw.writeInt(headerLength - 8);
+            }
+            assertThrows(java.io.IOException.class, ()-> { DistanceMatrix.open(file, nc); });
+
+            // zero weight lines make ties between trees, paths must still come from one tree
+            java.util.Random random = new java.util.Random(305);
+            for (int trial = 0; trial < 500; trial++) {
+                TrainSelector<City> small = new TrainSelector<>();
+                City[] cities = new City[4 + random.nextInt(5)];
+                for (int i = 0; i < cities.length; i++) {
+                    cities[i] = new City("C" + i);
+                    small.insertVertex(cities[i]);
+                }
+                for (int i = 0; i < 3 * cities.length; i++) {
+                    int a = random.nextInt(cities.length);
+                    int b = random.nextInt(cities.length);
+                    if (a != b) small.insertEdge(cities[a], cities[b], random.nextInt(3));
+                }
+                DistanceMatrix.build(small, file);
+                DistanceMatrix zero = DistanceMatrix.open(file, small);
+                for (City start : cities) {
+                    for (City end : cities) {
+                        int cost;
+                        try {
+                            cost = small.getPathCost(start, end);
+                        }
+                        catch (NoSuchElementException e) {
+                            assertThrows(NoSuchElementException.class, ()-> { zero.shortestPath(start, end); });
+                            continue;
+                        }
+                        List<City> path = zero.shortestPath(start, end);
+                        assertTrue(path.size() <= cities.length);
+                        assertEquals(end, path.get(path.size() - 1));
+                        int sum = 0;
+                        for (int i = 1; i < path.size(); i++)
+                            sum += small.getWeight(path.get(i - 1), path.get(i));
+                        assertEquals(cost, sum);
+                    }
+                }
+            }
+        }
+        finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void routeCacheTester() {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        nc.setRouteCache(2);
+        RouteCache<?> cache = nc.getRouteCache();
+        City rome = nc.getCity(new City("Rome"), nc);
+        City milan = nc.getCity(new City("Milan"), nc);
+        City naples = nc.getCity(new City("Naples"), nc);
+
+        int cost = nc.getPathCost(milan, rome);
+        List<City> path = nc.shortestPath(milan, rome);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        List<City> copy = new java.util.ArrayList<>(path);
+        path.clear(); // callers get their own list, the cached path is untouched
+        assertEquals(copy, nc.shortestPath(milan, rome));
+        assertEquals(nc.getShortestPathString(milan, rome), nc.getShortestPathString(milan, rome, SearchMode.DIJKSTRA));
+
+        // a third pair evicts the least recently used one
+        nc.getPathCost(rome, naples);
+        nc.getPathCost(naples, milan);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        // changing the graph clears the cache and the new route is found
+        long version = nc.getVersion();
+        nc.insertEdge(milan, rome, 1);
+        assertTrue(nc.getVersion() > version);
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getInvalidationCount());
+        assertTrue(nc.getPathCost(milan, rome) < cost);
+        assertEquals(1, nc.getPathCost(milan, rome));
+
+        nc.setRouteCache(0);
+        assertNull(nc.getRouteCache());
+        assertThrows(IllegalArgumentException.class, ()-> { nc.setRouteCache(-1); });
+    }
+
+    @Test
+    public void cityLookupTester() {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        City rome = nc.getCity("Rome");
+        assertNotNull(rome);
+        assertSame(rome, nc.getCity("rome"));
+        assertSame(rome, nc.getCity("  ROME "));
+        assertSame(rome, nc.getCity(new City("Rome"), nc));
+        assertNull(nc.getCity("Atlantis"));
+        assertNull(nc.getCity(""));
+        assertThrows(NullPointerException.class, ()-> { nc.getCity((String) null); });
+
+        // accents are ignored and equal Cities hash alike
+        City forli = new City("Forl\u00ec", "Emilia-Romagna", 117913);
+        nc.insertVertex(forli);
+        assertSame(forli, nc.getCity("forli"));
+        assertEquals(forli.hashCode(), new City("Forl\u00ec", "Emilia-Romagna", 117913).hashCode());
+        assertTrue(nc.containsVertex(new City("Forl\u00ec", "Emilia-Romagna", 117913)));
+
+        // removed Cities can no longer be found
+        nc.removeVertex(forli);
+        assertNull(nc.getCity("Forli"));
+    }
+
+    @Test
+    public void batchQueryTester() {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        CompactGraph<City> cg = nc.compact();
+        List<Pair<City, City>> queries = new java.util.ArrayList<>();
+        for (int a = 0; a < cg.getVertexCount(); a++)
+            for (int b = cg.getVertexCount() - 1; b >= 0; b--)
+                queries.add(new Pair<>(cg.dataAt(b), cg.dataAt(a)));
+        queries.add(new Pair<>(cg.dataAt(0), new City("Atlantis")));
+
+        List<List<City>> paths = nc.shortestPaths(queries);
+        int[] costs = nc.getPathCosts(queries);
+        assertEquals(queries.size(), paths.size());
+        assertEquals(queries.size(), costs.length);
+        for (int i = 0; i < queries.size() - 1; i++) {
+            City start = queries.get(i).getFirst();
+            City end = queries.get(i).getSecond();
+            int cost = nc.getPathCost(start, end);
+            assertEquals(cost, costs[i]);
+            List<City> path = paths.get(i);
+            assertEquals(start, path.get(0));
+            assertEquals(end, path.get(path.size() - 1));
+            int sum = 0;
+            for (int j = 1; j < path.size(); j++)
+                sum += nc.getWeight(path.get(j - 1), path.get(j));
+            assertEquals(cost, sum);
+        }
+        assertNull(paths.get(queries.size() - 1));
+        assertEquals(ShortestPathSearch.INFINITY, costs[queries.size() - 1]);
+        assertThrows(NullPointerException.class, ()-> { nc.shortestPaths(java.util.Arrays.asList(new Pair<City, City>(null, null))); });
+    }
+
+    @Test
+    public void shortestPathTreeTester() {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        CompactGraph<City> cg = nc.compact();
+        City rome = nc.getCity("Rome");
+
+        // the full tree matches point to point queries
+        ShortestPathTree<City> tree = nc.shortestPathTree(rome);
+        assertEquals(rome, tree.getSource());
+        for (int v = 0; v < cg.getVertexCount(); v++) {
+            City end = cg.dataAt(v);
+            assertEquals(nc.getPathCost(rome, end), tree.distance(end));
+            List<City> path = tree.pathTo(end);
+            assertEquals(rome, path.get(0));
+            assertEquals(end, path.get(path.size() - 1));
+        }
+        assertEquals(cg.getVertexCount(), tree.size());
+        // complete, the tree answers from its own arrays without the search
+        for (int v = 0; v < cg.getVertexCount(); v++) {
+            City end = cg.dataAt(v);
+            assertEquals(nc.getPathCost(rome, end), tree.distance(end));
+            List<City> path = tree.pathTo(end);
+            int sum = 0;
+            for (int i = 1; i < path.size(); i++)
+                sum += nc.getWeight(path.get(i - 1), path.get(i));
+            assertEquals(tree.distance(end), sum);
+        }
+        assertEquals(cg.getVertexCount(), tree.stream().count());
+
+        // with a cutoff, the stream holds exactly the Cities within budget in distance order
+        int budget = nc.getPathCost(rome, nc.getCity("Florence"));
+        ShortestPathTree<City> near = nc.shortestPathTree(rome, budget);
+        List<City> within = near.stream().collect(java.util.stream.Collectors.toList());
+        assertEquals(rome, within.get(0));
+        int last = 0;
+        for (City c : within) {
+            int d = nc.getPathCost(rome, c);
+            assertTrue(d <= budget);
+            assertTrue(d >= last);
+            last = d;
+        }
+        int expected = 0;
+        for (int v = 0; v < cg.getVertexCount(); v++)
+            if (nc.getPathCost(rome, cg.dataAt(v)) <= budget) expected++;
+        assertEquals(expected, within.size());
+        assertEquals(expected, near.size());
+
+        // Cities past the cutoff are unreachable
+        City far = within.get(0);
+        for (int v = 0; v < cg.getVertexCount(); v++)
+            if (nc.getPathCost(rome, cg.dataAt(v)) > budget) far = cg.dataAt(v);
+        assertEquals(ShortestPathSearch.INFINITY, near.distance(far));
+        assertFalse(near.isReachable(far));
+        City unreachable = far;
+        assertThrows(NoSuchElementException.class, ()-> { near.pathTo(unreachable); });
+        assertThrows(IllegalArgumentException.class, ()-> { nc.shortestPathTree(rome, -1); });
+        assertThrows(NoSuchElementException.class, ()-> { nc.shortestPathTree(new City("Atlantis")); });
+    }
+
+    @Test
+    public void kShortestPathsTester() {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        City milan = nc.getCity("Milan");
+        City naples = nc.getCity("Naples");
+
+        List<Route<City>> routes = nc.kShortestPaths(milan, naples, 10);
+        assertEquals(10, routes.size());
+        assertEquals(nc.getPathCost(milan, naples), routes.get(0).getCost());
+        assertEquals(nc.getShortestPathString(milan, naples), routes.get(0).toString());
+        java.util.Set<List<City>> distinct = new java.util.HashSet<>();
+        for (int i = 0; i < routes.size(); i++) {
+            Route<City> route = routes.get(i);
+            List<City> stops = route.getStops();
+            assertEquals(milan, stops.get(0));
+            assertEquals(naples, stops.get(stops.size() - 1));
+            assertEquals(stops.size(), new java.util.HashSet<>(stops).size()); // loopless
+            int sum = 0;
+            for (int j = 1; j < stops.size(); j++)
+                sum += nc.getWeight(stops.get(j - 1), stops.get(j));
+            assertEquals(sum, route.getCost());
+            if (i > 0) assertTrue(routes.get(i - 1).getCost() <= route.getCost());
+            distinct.add(new java.util.ArrayList<>(stops));
+        }
+        assertEquals(routes.size(), distinct.size());
+
+        assertEquals(1, nc.kShortestPaths(milan, milan, 3).size());
+        assertThrows(IllegalArgumentException.class, ()-> { nc.kShortestPaths(milan, naples, 0); });
+        assertThrows(NoSuchElementException.class, ()-> { nc.kShortestPaths(milan, new City("Atlantis"), 2); });
+    }
+
+    @Test
+    public void concurrentGraphTester() throws InterruptedException {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        City milan = nc.getCity("Milan");
+        City rome = nc.getCity("Rome");
+        int normal = nc.getPathCost(milan, rome);
+        ConcurrentTrainSelector<City> live = new ConcurrentTrainSelector<>(nc);
+        assertEquals(normal, live.getPathCost(milan, rome));
+        assertEquals(nc.getShortestPathString(milan, rome), live.getShortestPathString(milan, rome));
+
+        // readers only ever see the graph with or without the express line, never a mix
+        java.util.concurrent.atomic.AtomicReference<Throwable> failure = new java.util.concurrent.atomic.AtomicReference<>();
+        java.util.concurrent.atomic.AtomicBoolean running = new java.util.concurrent.atomic.AtomicBoolean(true);
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        int cost = live.getPathCost(milan, rome);
+                        if (cost != normal && cost != 1) throw new AssertionError("Unexpected cost " + cost);
+                    }
+                }
+                catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+            readers[i].start();
+        }
+        for (int i = 0; i < 200; i++) {
+            live.update(g -> {
+                g.insertEdge(milan, rome, 1);
+                g.insertEdge(rome, milan, 1);
+            });
+            live.update(g -> {
+                g.removeEdge(milan, rome);
+                g.removeEdge(rome, milan);
+            });
+        }
+        running.set(false);
+        for (Thread reader : readers) reader.join();
+        assertNull(failure.get());
+
+        // a held snapshot keeps its version while new ones are published
+        ConcurrentTrainSelector.Snapshot<City> before = live.snapshot();
+        ConcurrentTrainSelector.Snapshot<City> after = live.update(g -> g.insertEdge(milan, rome, 1));
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(1, live.getPathCost(milan, rome));
+        assertEquals(-1, before.getGraph().findEdge(before.getGraph().indexOf(milan), before.getGraph().indexOf(rome)));
+        assertFalse(live.insertEdge(milan, rome, 1));
+        assertThrows(IllegalArgumentException.class, ()-> { live.insertEdge(milan, new City("Atlantis"), 1); });
+    }
+
+    @Test
+    public void dynamicShortestPathsTester() {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        City milan = nc.getCity("Milan");
+        City rome = nc.getCity("Rome");
+        City florence = nc.getCity("Florence");
+        DynamicShortestPaths<City> dynamic = new DynamicShortestPaths<>(nc);
+        dynamic.addSource(milan);
+        dynamic.addSource(rome);
+
+        java.util.Map<City, Integer> before = new java.util.HashMap<>();
+        for (City end : allCities(nc))
+            before.put(end, nc.getPathCost(milan, end));
+
+        // slow running out of Florence towards Milan, then a closure, then a new express line
+        nc.insertEdge(florence, nc.shortestPath(florence, milan).get(1), 500);
+        nc.removeEdge(milan, nc.shortestPath(milan, rome).get(1));
+        nc.insertEdge(milan, rome, 50);
+        nc.insertEdge(rome, milan, 50);
+
+        java.util.Map<City, java.util.Set<City>> changes = dynamic.takeChanges();
+        java.util.Set<City> changedFromMilan = new java.util.HashSet<>();
+        for (City end : allCities(nc)) {
+            int cost = costOrInfinity(nc, milan, end);
+            assertEquals(cost, dynamic.distance(milan, end));
+            if (cost != before.get(end)) changedFromMilan.add(end);
+            assertEquals(nc.getPathCost(rome, end), dynamic.distance(rome, end));
+            List<City> path = dynamic.shortestPath(rome, end);
+            assertEquals(rome, path.get(0));
+            assertEquals(end, path.get(path.size() - 1));
+        }
+        assertEquals(changedFromMilan, changes.get(milan));
+        assertTrue(dynamic.takeChanges().isEmpty());
+
+        // removing a City removes its tree and every path through it
+        nc.removeVertex(florence);
+        assertThrows(NoSuchElementException.class, ()-> { dynamic.distance(milan, florence); });
+        for (City end : allCities(nc))
+            assertEquals(costOrInfinity(nc, rome, end), dynamic.distance(rome, end));
+        assertThrows(IllegalArgumentException.class, ()-> { dynamic.distance(florence, rome); });
+        dynamic.close();
+    }
+
+    private static int costOrInfinity(TrainSelector<City> graph, City start, City end) {
+        try {
+            return graph.getPathCost(start, end);
+        }
+        catch (NoSuchElementException e) {
+            return ShortestPathSearch.INFINITY;
+        }
+    }
+
+    private static List<City> allCities(TrainSelector<City> graph) {
+        List<City> cities = new java.util.ArrayList<>();
+        CompactGraph<City> cg = graph.compact();
+        for (int v = 0; v < cg.getVertexCount(); v++)
+            cities.add(cg.dataAt(v));
+        return cities;
+    }
+
+    @Test
+    public void networkSnapshotTester() throws java.io.IOException {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("railnetwork", ".snapshot");
+        try {
+            NetworkSnapshot.write(nc, file);
+            TrainSelector<City> loaded = NetworkSnapshot.read(file);
+            assertEquals(nc.getVertexCount(), loaded.getVertexCount());
+            assertEquals(nc.getEdgeCount(), loaded.getEdgeCount());
+
+            for (City start : allCities(nc)) {
+                City copy = loaded.getCity(start.getName());
+                assertEquals(start, copy);
+                assertEquals(start.getLat(), copy.getLat());
+                for (City end : allCities(nc))
+                    assertEquals(costOrInfinity(nc, start, end), costOrInfinity(loaded, copy, loaded.getCity(end.getName())));
+            }
+
+            // the loaded graph can still be changed
+            City milan = loaded.getCity("Milan");
+            City rome = loaded.getCity("Rome");
+            assertFalse(loaded.containsEdge(milan, rome));
+            loaded.insertEdge(milan, rome, 1);
+            assertEquals(1, loaded.getPathCost(milan, rome));
+            assertEquals(nc.getEdgeCount() + 1, loaded.getEdgeCount());
+
+            // a damaged file is rejected
+            byte[] bytes = java.nio.file.Files.readAllBytes(file);
+            bytes[bytes.length - 1] ^= 1;
+            java.nio.file.Files.write(file, bytes);
+            assertThrows(java.io.IOException.class, ()-> { NetworkSnapshot.read(file); });
+        }
+        finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Checks that CsvLoader reads quoted names, reports bad rows
+     * with their line numbers, and gives the same graph on several threads
+     */
+    @Test
+    public void csvLoaderTester() throws java.io.IOException {
+        java.nio.file.Path cities = java.nio.file.Files.createTempFile("cities", ".csv");
+        java.nio.file.Path railroads = java.nio.file.Files.createTempFile("railroads", ".csv");
+        try {
+            java.nio.file.Files.write(cities, ("city,lat,lng,country,iso2,iso3,Region,population\n"
+                    + "\"Reggio, Emilia\",44.70,10.63,Italy,IT,ITA,\"Emilia \"\"Romagna\"\"\",171944\r\n"
+                    + "Bari,41.1253,16.8667,Italy,IT,ITA,Puglia,many\n"
+                    + "\n"
+                    + "Rome,41.8931,12.4828,Italy,IT,ITA,Lazio,2872800").getBytes());
+            StringBuilder rows = new StringBuilder("start,destination,weight\n");
+            rows.append("Rome,\"Reggio, Emilia\",5\n");
+            rows.append("Rome,Atlantis,3\n");
+            rows.append("Rome\n");
+            int repeated = 200000; // over 4 MB, so every thread gets a slice
+            for (int i = 0; i < repeated; i++) rows.append("\"Reggio, Emilia\" , Rome , ").append(i % 7 + 1).append('\n');
+            java.nio.file.Files.write(railroads, rows.toString().getBytes());
+
+            for (int threads = 1; threads <= 4; threads++) {
+                TrainSelector<City> nc = new TrainSelector<>();
+                CsvLoader loader = new CsvLoader();
+                assertEquals(2, loader.loadCities(nc, cities));
+                loader.loadRailroads(nc, railroads, threads);
+
+                City reggio = nc.getCity("reggio, emilia");
+                City rome = nc.getCity("Rome");
+                assertEquals("Emilia \"Romagna\"", reggio.getRegion());
+                assertEquals(44.70, reggio.getLat());
+                assertEquals(2872800, rome.getPop());
+                assertEquals((repeated - 1) % 7 + 1, nc.getPathCost(reggio, rome)); // rows are inserted in file order
+
+                List<String> problems = loader.getProblems();
+                assertEquals(3, problems.size());
+                assertTrue(problems.get(0).contains(":3: "));
+                assertTrue(problems.get(1).contains(":3: unknown City Atlantis"));
+                assertTrue(problems.get(2).contains(":4: "));
+            }
+        }
+        finally {
+            java.nio.file.Files.deleteIfExists(cities);
+            java.nio.file.Files.deleteIfExists(railroads);
+        }
+    }
+
+    /**
+     * Checks that RoutingMetrics counts queries, cache hits and searches,
+     * that its histograms give percentiles within their precision,
+     * and that the metrics can be read through JMX
+     */
+    @Test
+    public void routingMetricsTester() throws Exception {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100000; i++) histogram.record(i);
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50000.5, histogram.getMean());
+        assertEquals(50000, histogram.getValueAtPercentile(50), 50000 / 64);
+        assertEquals(99000, histogram.getValueAtPercentile(99), 99000 / 64);
+        assertEquals(100, histogram.getValueAtPercentile(0.1)); // small values are exact
+
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        City milan = nc.getCity("Milan");
+        City lecce = nc.getCity("Lecce");
+        City atlantis = new City("Atlantis", "Nowhere", 0);
+        nc.insertVertex(atlantis);
+        nc.setRouteCache(16);
+        RoutingMetrics metrics = new RoutingMetrics();
+        nc.setMetrics(metrics);
+
+        for (SearchMode mode : SearchMode.values()) nc.getPathCost(milan, lecce, mode);
+        nc.getPathCost(milan, lecce); // answered from the cache
+        assertThrows(NoSuchElementException.class, ()-> { nc.getPathCost(milan, atlantis); });
+
+        assertEquals(SearchMode.values().length + 2, metrics.getQueryCount());
+        assertEquals(1, metrics.getCacheHitCount());
+        assertEquals(1, metrics.getNoPathCount());
+        assertEquals(3, (long) metrics.getQueryCountByMode().get("DIJKSTRA")); // the cached query and the failed one are DIJKSTRA too
+        assertEquals(SearchMode.values().length + 1, metrics.getSettledVertices().getCount());
+        assertTrue(metrics.getMeanSettledVertices() > 1);
+        assertTrue(metrics.getMeanRelaxedEdges() > 1);
+        assertTrue(metrics.getLatencyP99Micros() > 0);
+        assertEquals(nc.getVertexCount(), metrics.getVertexCount());
+        assertEquals(2 * nc.getEdgeCount(), metrics.getEdgeCount());
+
+        // a batch is reported once, with one search per distinct start
+        City rome = nc.getCity("Rome");
+        nc.getPathCosts(java.util.Arrays.asList(new Pair<>(milan, lecce), new Pair<>(milan, rome),
+                new Pair<>(rome, lecce), new Pair<>(milan, atlantis)));
+        assertEquals(1, metrics.getBatchCount());
+        assertEquals(4, metrics.getBatchQueryCount());
+        assertEquals(2, metrics.getBatchSearchCount());
+        assertEquals(2, metrics.getNoPathCount());
+        assertEquals(SearchMode.values().length + 2, metrics.getQueryCount());
+        assertTrue(metrics.getMeanBatchSettledVertices() > 1);
+        assertTrue(metrics.getBatchLatencyP99Micros() > 0);
+
+        metrics.register("routingMetricsTester");
+        try {
+            javax.management.ObjectName name = new javax.management.ObjectName(
+                    "TrainRouteSelector:type=RoutingMetrics,name=\"routingMetricsTester\"");
+            javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+            assertEquals(metrics.getQueryCount(), server.getAttribute(name, "QueryCount"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "QueryCount"));
+            assertEquals(0L, server.getAttribute(name, "BatchCount"));
+        }
+        finally {
+            metrics.unregister();
+        }
+
+        // turned off, queries are not measured
+        nc.setMetrics(null);
+        nc.getPathCost(milan, lecce, SearchMode.A_STAR);
+        assertEquals(0, metrics.getQueryCount());
+    }
+
+    /**
+     * Checks that RoutingServer answers route, cost and batch queries
+     * as JSON and reports errors with their status codes
+     */
+    @Test
+    public void routingServerTester() throws Exception {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        int cost = nc.getPathCost(nc.getCity("Milan"), nc.getCity("Lecce"));
+        ConcurrentTrainSelector<City> graph = new ConcurrentTrainSelector<>(nc);
+        RoutingServer server = new RoutingServer(graph, new java.net.InetSocketAddress("127.0.0.1", 0), 64, 2000);
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getPort();
+            java.net.http.HttpClient client = java.net.http.HttpClient.newHttpClient();
+            java.net.http.HttpResponse<String> response = client.send(
+                    java.net.http.HttpRequest.newBuilder(java.net.URI.create(base + "/route?from=milan&to=Lecce")).build(),
+                    java.net.http.HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().contains("\"cost\":" + cost));
+            assertTrue(response.body().contains("\"path\":[\"Milan\","));
+
+            response = client.send(java.net.http.HttpRequest.newBuilder(java.net.URI.create(base + "/batch"))
+                            .POST(java.net.http.HttpRequest.BodyPublishers.ofString(
+                                    "{\"queries\": [{\"from\": \"Rome\", \"to\": \"Rome\"}, {\"from\": \"Rome\", \"to\": \"Atlantis\"}], \"paths\": false}"))
+                            .build(),
+                    java.net.http.HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().contains("{\"from\":\"Rome\",\"to\":\"Rome\",\"cost\":0}"));
+            assertTrue(response.body().contains("{\"error\":\"Unknown City: Atlantis\"}"));
+
+            String[] failing = {"/cost?from=Rome", "/cost?from=Rome&to=Atlantis", "/nowhere"};
+            int[] status = {400, 404, 404};
+            for (int i = 0; i < failing.length; i++) {
+                response = client.send(java.net.http.HttpRequest.newBuilder(java.net.URI.create(base + failing[i])).build(),
+                        java.net.http.HttpResponse.BodyHandlers.ofString());
+                assertEquals(status[i], response.statusCode());
+                assertTrue(response.body().startsWith("{\"error\":"));
+            }
+
+            // nesting too deep for the parser is bad JSON, not a stack overflow
+            StringBuilder deep = new StringBuilder();
+            for (int i = 0; i < 200000; i++) deep.append('[');
+            assertThrows(IllegalArgumentException.class, ()-> { RoutingServer.Json.parse(deep.toString()); });
+            response = client.send(java.net.http.HttpRequest.newBuilder(java.net.URI.create(base + "/batch"))
+                            .POST(java.net.http.HttpRequest.BodyPublishers.ofString(deep.toString())).build(),
+                    java.net.http.HttpResponse.BodyHandlers.ofString());
+            assertEquals(400, response.statusCode());
+
+            // a batch that cannot finish within its timeout
+            StringBuilder many = new StringBuilder("{\"queries\": [");
+            for (int i = 0; i < 10000; i++) many.append(i > 0 ? "," : "").append("{\"from\": \"Milan\", \"to\": \"Lecce\"}");
+            response = client.send(java.net.http.HttpRequest.newBuilder(java.net.URI.create(base + "/batch?timeout=1"))
+                            .POST(java.net.http.HttpRequest.BodyPublishers.ofString(many.append("]}").toString())).build(),
+                    java.net.http.HttpResponse.BodyHandlers.ofString());
+            assertEquals(504, response.statusCode());
+        }
+        finally {
+            server.stop(0);
+        }
+
+        // with one permit, a request still sending its body turns the next one away
+        RoutingServer single = new RoutingServer(graph, new java.net.InetSocketAddress("127.0.0.1", 0), 1, 2000);
+        single.start();
+        try (java.net.Socket slow = new java.net.Socket("127.0.0.1", single.getPort())) {
+            java.io.OutputStream out = slow.getOutputStream();
+            out.write(("POST /batch HTTP/1.1\r\nHost: localhost\r\nContent-Length: 100\r\n\r\n{").getBytes());
+            out.flush();
+            java.net.http.HttpClient client = java.net.http.HttpClient.newHttpClient();
+            java.net.http.HttpResponse<String> response = null;
+            for (int attempt = 0; attempt < 50; attempt++) { // until the slow request holds the permit
+                response = client.send(java.net.http.HttpRequest.newBuilder(
+                                java.net.URI.create("http://127.0.0.1:" + single.getPort() + "/health")).build(),
+                        java.net.http.HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 503) break;
+                Thread.sleep(20);
+            }
+            assertEquals(503, response.statusCode());
+            assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+
+            // the stalled body is cut off after the request time limit, and its permit comes back
+            slow.setSoTimeout(30000);
+            try {
+                assertEquals(-1, slow.getInputStream().read());
+            }
+            catch (java.net.SocketException e) {
+                // reset by the server, cut off as well
+            }
+            for (int attempt = 0; attempt < 50; attempt++) {
+                response = client.send(java.net.http.HttpRequest.newBuilder(
+                                java.net.URI.create("http://127.0.0.1:" + single.getPort() + "/health")).build(),
+                        java.net.http.HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 200) break;
+                Thread.sleep(20);
+            }
+            assertEquals(200, response.statusCode());
+        }
+        finally {
+            single.stop(0);
+        }
+    }
+
+    /**
+     * Checks that a Timetable imports a feed onto the Cities of the graph,
+     * and that ConnectionScan finds earliest arrivals, their legs and profiles
+     */
+    @Test
+    public void timetableTester() throws java.io.IOException {
+        java.nio.file.Path feed = java.nio.file.Files.createTempDirectory("feed");
+        try {
+            java.nio.file.Files.write(feed.resolve("stops.txt"), ("stop_id,stop_name,city\n"
+                    + "MI,Milano Centrale,Milan\n"
+                    + "BO,Bologna,\n"
+                    + "FI,Firenze SMN,Florence\n"
+                    + "RMT,Roma Termini,Rome\n"
+                    + "RTB,Roma Tiburtina,Rome\n"
+                    + "XX,Atlantis,\n").getBytes());
+            java.nio.file.Files.write(feed.resolve("trips.txt"), ("trip_id,trip_short_name\n"
+                    + "1,FR 9501\n2,R3\n3,R4\n4,R5\n5,\n").getBytes());
+            java.nio.file.Files.write(feed.resolve("stop_times.txt"), ("trip_id,arrival_time,departure_time,stop_id,stop_sequence\n"
+                    + "1,08:00:00,08:00:00,MI,1\n1,09:05:00,09:07:00,BO,2\n1,09:45:00,09:47:00,FI,3\n1,11:20:00,11:20:00,RMT,4\n"
+                    + "2,06:00:00,06:00:00,MI,1\n2,07:00:00,07:00:00,BO,2\n"
+                    + "3,07:03:00,07:03:00,BO,1\n3,07:40:00,07:40:00,FI,2\n"
+                    + "4,07:50:00,07:50:00,FI,1\n4,09:30:00,09:30:00,RTB,2\n"
+                    + "5,23:00:00,23:00:00,MI,1\n5,22:00:00,22:00:00,BO,2\n").getBytes());
+            java.nio.file.Files.write(feed.resolve("transfers.txt"), ("from_stop_id,to_stop_id,min_transfer_time\n"
+                    + "BO,BO,120\n").getBytes());
+
+            TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+            City milan = nc.getCity("Milan");
+            City rome = nc.getCity("Rome");
+            Timetable timetable = Timetable.load(feed, nc);
+            assertEquals(4, timetable.getStopCount()); // both stations of Rome are one stop
+            assertEquals(6, timetable.getConnectionCount());
+            assertTrue(timetable.serves(rome));
+            assertFalse(timetable.serves(nc.getCity("Bari")));
+            assertEquals(2, timetable.getProblems().size()); // Atlantis and trip 5 going back in time
+
+            ConnectionScan scan = new ConnectionScan(timetable);
+            Journey early = scan.earliestArrival(milan, rome, Timetable.parseTime("5:30"));
+            assertEquals("Milan -> Bologna -> Florence -> Rome", early.toString());
+            assertEquals(2, early.getTransferCount());
+            assertEquals("06:00 Milan -> 07:00 Bologna (R3)", early.getLegs().get(0).toString());
+            assertEquals(Timetable.parseTime("9:30"), early.getArrivalTime());
+
+            Journey direct = scan.earliestArrival(milan, rome, Timetable.parseTime("6:01"));
+            assertEquals("Milan -> Bologna -> Florence -> Rome", direct.toString());
+            assertEquals(0, direct.getTransferCount());
+            assertEquals("FR 9501", direct.getLegs().get(0).getTrip());
+            assertEquals(Timetable.parseTime("11:20"), direct.getArrivalTime());
+            assertNull(scan.earliestArrival(milan, rome, Timetable.parseTime("8:01")));
+            assertNull(scan.earliestArrival(rome, milan, 0));
+
+            ConnectionScan.Profile profile = scan.profile(milan, rome, 0, Timetable.parseTime("24:00"));
+            assertEquals("06:00 -> 09:30, 08:00 -> 11:20", profile.toString());
+            assertEquals(Timetable.parseTime("11:20"), profile.earliestArrival(Timetable.parseTime("6:01")));
+            assertEquals(Integer.MAX_VALUE, profile.earliestArrival(Timetable.parseTime("8:01")));
+            assertEquals(1, scan.profile(milan, rome, Timetable.parseTime("7:00"), Timetable.parseTime("24:00")).size());
+
+            assertThrows(IllegalArgumentException.class, () -> scan.earliestArrival(milan, nc.getCity("Bari"), 0));
+            assertThrows(NullPointerException.class, () -> scan.earliestArrival(null, rome, 0));
+        }
+        finally {
+            for (String file : new String[] {"stops.txt", "trips.txt", "stop_times.txt", "transfers.txt"})
+                java.nio.file.Files.deleteIfExists(feed.resolve(file));
+            java.nio.file.Files.deleteIfExists(feed);
+        }
+    }
+
+    /**
+     * Checks that Raptor groups trips into routes and finds the journeys
+     * that trade transfers for arrival time, for one departure and a range
+     */
+    @Test
+    public void raptorTester() throws java.io.IOException {
+        java.nio.file.Path feed = java.nio.file.Files.createTempDirectory("feed");
+        try {
+            java.nio.file.Files.write(feed.resolve("stops.txt"), ("stop_id,stop_name\n"
+                    + "MI,Milan\nBO,Bologna\nFI,Florence\nRM,Rome\n").getBytes());
+            java.nio.file.Files.write(feed.resolve("trips.txt"), "trip_id\nIC1\nIC2\nIC3\nR1\nFR\n".getBytes());
+            java.nio.file.Files.write(feed.resolve("stop_times.txt"), ("trip_id,arrival_time,departure_time,stop_id,stop_sequence\n"
+                    + "IC1,7:00,7:00,MI,1\nIC1,8:30,8:30,BO,2\nIC1,9:40,9:40,FI,3\nIC1,11:30,11:30,RM,4\n"
+                    + "IC2,9:00,9:00,MI,1\nIC2,10:30,10:30,BO,2\nIC2,11:40,11:40,FI,3\nIC2,13:30,13:30,RM,4\n"
+                    + "IC3,7:30,7:30,MI,1\nIC3,8:20,8:20,BO,2\nIC3,9:00,9:00,FI,3\nIC3,10:30,10:30,RM,4\n"
+                    + "R1,6:00,6:00,MI,1\nR1,7:00,7:00,BO,2\n"
+                    + "FR,7:10,7:10,BO,1\nFR,9:10,9:10,RM,2\n").getBytes());
+
+            TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+            City milan = nc.getCity("Milan");
+            City rome = nc.getCity("Rome");
+            Raptor raptor = new Raptor(Timetable.load(feed, nc));
+            assertEquals(4, raptor.getRouteCount()); // IC3 overtakes IC1, so it runs on a route of its own
+
+            List<Journey> journeys = raptor.journeys(milan, rome, Timetable.parseTime("5:00"));
+            assertEquals(2, journeys.size());
+            assertEquals("Milan -> Bologna -> Florence -> Rome", journeys.get(0).toString());
+            assertEquals(0, journeys.get(0).getTransferCount());
+            assertEquals(Timetable.parseTime("10:30"), journeys.get(0).getArrivalTime());
+            assertEquals("Milan -> Bologna -> Rome", journeys.get(1).toString());
+            assertEquals(1, journeys.get(1).getTransferCount());
+            assertEquals(Timetable.parseTime("9:10"), journeys.get(1).getArrivalTime());
+
+            assertEquals(1, raptor.journeys(milan, rome, Timetable.parseTime("5:00"), 0).size());
+            assertEquals(1, raptor.journeys(milan, rome, Timetable.parseTime("6:30")).size());
+            assertTrue(raptor.journeys(milan, rome, Timetable.parseTime("9:01")).isEmpty());
+
+            // IC1 leaves before IC3 and arrives after it, so it is not worth taking
+            List<Journey> range = raptor.rangeJourneys(milan, rome, 0, Timetable.parseTime("24:00"), 3, false);
+            assertEquals(3, range.size());
+            assertEquals(Timetable.parseTime("6:00"), range.get(0).getDepartureTime());
+            assertEquals(Timetable.parseTime("7:30"), range.get(1).getDepartureTime());
+            assertEquals(Timetable.parseTime("9:00"), range.get(2).getDepartureTime());
+            assertEquals(range, raptor.rangeJourneys(milan, rome, 0, Timetable.parseTime("24:00"), 3, true));
+            assertEquals(1, raptor.rangeJourneys(milan, rome, Timetable.parseTime("7:31"), Timetable.parseTime("9:00"), 3, true).size());
+
+            assertThrows(IllegalArgumentException.class, () -> raptor.journeys(milan, rome, 0, -1));
+            assertThrows(IllegalArgumentException.class, () -> raptor.journeys(milan, milan, 0));
+        }
+        finally {
+            for (String file : new String[] {"stops.txt", "trips.txt", "stop_times.txt"})
+                java.nio.file.Files.deleteIfExists(feed.resolve(file));
+            java.nio.file.Files.deleteIfExists(feed);
+        }
+    }
+
+    /**
+     * Checks that removing and reweighting edges keeps both directions
+     * of a railroad consistent, and that removing a City removes exactly
+     * the edges that touch it
+     */
+    @Test
+    public void reverseAdjacencyTester() {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        City milan = nc.getCity("Milan");
+        City genoa = nc.getCity("Genoa");
+        City florence = nc.getCity("Florence");
+        int edges = nc.getEdgeCount();
+
+        // a weight update applies both ways
+        assertTrue(nc.insertEdge(milan, genoa, 99));
+        assertEquals(99, nc.getWeight(genoa, milan));
+        assertFalse(nc.insertEdge(genoa, milan, 99));
+        assertEquals(edges, nc.getEdgeCount());
+
+        // so does a removal
+        assertTrue(nc.removeEdge(genoa, milan));
+        assertFalse(nc.containsEdge(milan, genoa));
+        assertFalse(nc.removeEdge(milan, genoa));
+        assertEquals(edges - 1, nc.getEdgeCount());
+
+        int[] removedEdges = new int[1];
+        GraphListener<City> listener = new GraphListener<City>() {
+            public void vertexInserted(City data) { }
+            public void vertexRemoved(City data) { }
+            public void edgeChanged(City source, City target, int oldWeight, int newWeight) {
+                assertTrue(source == florence || target == florence);
+                if (newWeight == ShortestPathSearch.INFINITY) removedEdges[0]++;
+            }
+        };
+        nc.addGraphListener(listener);
+        int degree = 0;
+        for (City other : allCities(nc))
+            if (nc.containsEdge(florence, other)) degree++;
+        assertTrue(nc.removeVertex(florence));
+        nc.removeGraphListener(listener);
+        assertEquals(2 * degree, removedEdges[0]);
+        assertEquals(edges - 1 - degree, nc.getEdgeCount());
+        for (City other : allCities(nc))
+            assertFalse(nc.containsEdge(other, florence));
+        assertNull(nc.getCity("Florence"));
+
+        // a second City with the same name takes over the name when the first is removed
+        City otherGenoa = new City("Genoa", "Liguria", 1);
+        nc.insertVertex(otherGenoa);
+        assertSame(genoa, nc.getCity("Genoa"));
+        nc.removeVertex(genoa);
+        assertSame(otherGenoa, nc.getCity("genoa"));
+    }
+
+    /**
+     * Checks that an OffHeapGraph, in a direct buffer or mapped from a
+     * snapshot, holds the same network and routes like the graph it came from
+     */
+    @Test
+    public void offHeapGraphTester() throws java.io.IOException {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("railnetwork", ".snapshot");
+        try {
+            NetworkSnapshot.write(nc, file);
+            OffHeapGraph direct = OffHeapGraph.allocate(nc);
+            OffHeapGraph mapped = OffHeapGraph.map(file);
+            assertFalse(direct.isMapped());
+            assertTrue(mapped.isMapped());
+            assertEquals(java.nio.file.Files.size(file), mapped.getOffHeapBytes());
+
+            for (OffHeapGraph graph : List.of(direct, mapped)) {
+                assertEquals(nc.getVertexCount(), graph.getVertexCount());
+                assertEquals(nc.getEdgeCount(), graph.getEdgeCount());
+                City milan = graph.getCity("MILAN");
+                assertEquals(milan, nc.getCity("Milan"));
+                int v = graph.indexOf(milan);
+                assertEquals(milan.getLat(), graph.getLatitude(v));
+                assertEquals(milan.getPop(), graph.getPopulation(v));
+                for (City end : allCities(nc)) {
+                    assertEquals(nc.getPathCost(milan, end), graph.getPathCost(milan, end));
+                    List<City> path = graph.shortestPath(milan, end);
+                    int cost = 0;
+                    for (int i = 1; i < path.size(); i++) cost += graph.getWeight(path.get(i - 1), path.get(i));
+                    assertEquals(graph.getPathCost(milan, end), cost);
+                }
+                assertThrows(UnsupportedOperationException.class, ()-> { graph.removeVertex(milan); });
+                assertThrows(NoSuchElementException.class, ()-> { graph.getPathCost(milan, new City("Atlantis")); });
+            }
+
+            java.nio.file.Files.write(file, new byte[] {1, 2, 3, 4}, java.nio.file.StandardOpenOption.APPEND);
+            assertThrows(java.io.IOException.class, ()-> { OffHeapGraph.map(file); });
+        }
+        finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Checks that the partition overlay finds routes as short as Dijkstra's
+     * algorithm, before and after slow orders and closures, and that a
+     * weight change only recustomizes the cells around it
+     */
+    @Test
+    public void customizableRoutePlannerTester() {
+        TrainSelector<City> nc = new TrainSelector<City>().graphSetup();
+        CustomizableRoutePlanner crp = new CustomizableRoutePlanner(nc);
+        assertTrue(crp.getLevelCount() >= 2);
+        int cells = 0;
+        for (int level = 0; level < crp.getLevelCount(); level++) cells += crp.getCellCount(level);
+        assertEquals(0, crp.customize());
+
+        City milan = nc.getCity("Milan");
+        City rome = nc.getCity("Rome");
+        City florence = nc.getCity("Florence");
+        for (int round = 0; round < 3; round++) {
+            if (round == 1) {
+                // a slow order between two Cities of Tuscany
+                nc.insertEdge(florence, nc.getCity("Pisa"), 500);
+                int recustomized = crp.customize();
+                assertTrue(recustomized > 0 && recustomized < cells);
+            }
+            if (round == 2) nc.removeEdge(milan, nc.shortestPath(milan, rome).get(1)); // closure, left to the next query
+            for (City start : allCities(nc)) {
+                for (City end : allCities(nc)) {
+                    int cost = costOrInfinity(nc, start, end);
+                    if (cost == ShortestPathSearch.INFINITY) {
+                        assertThrows(NoSuchElementException.class, ()-> { crp.getPathCost(start, end); });
+                        continue;
+                    }
+                    assertEquals(cost, crp.getPathCost(start, end));
+                    List<City> path = crp.shortestPath(start, end);
+                    assertEquals(start, path.get(0));
+                    assertEquals(end, path.get(path.size() - 1));
+                    int sum = 0;
+                    for (int i = 1; i < path.size(); i++) sum += nc.getWeight(path.get(i - 1), path.get(i));
+                    assertEquals(cost, sum);
+                }
+            }
+        }
+
+        // removing a City changes the shape of the network, so the partition is rebuilt
+        City turin = nc.getCity("Turin");
+        nc.removeVertex(florence);
+        assertThrows(NoSuchElementException.class, ()-> { crp.getPathCost(florence, rome); });
+        assertEquals(costOrInfinity(nc, turin, rome), crp.getPathCost(turin, rome));
+        crp.close();
+    }
+
     // public TrainSelector<City> graphSetup() {
     //     TrainSelector<City> cities = new TrainSelector<>();
 